@@ -0,0 +1,62 @@
+package benchmark;
+
+import com.alibaba.dts.formats.avro.Record;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.AvroDeserializer;
+import recordprocessor.RecordPool;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialize a wide MySQL row with the original path and with the reuse mode of AvroDeserializer.
+ * [fresh] is the original code, a new decoder and a new record graph for every row.
+ * [reuseDecoder] is the default AvroDeserializer, only the decoder is reused.
+ * [reuseRecord] is stream.processor.reuseRecord=true, a record is given back to the pool after the row is consumed.
+ * Run with: java -jar target/benchmarks.jar AvroDeserializeBenchmark -prof gc
+ * gc.alloc.rate.norm of gc profiler is the bytes allocated per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AvroDeserializeBenchmark {
+
+    @Param({"fresh", "reuseDecoder", "reuseRecord"})
+    public String mode;
+
+    @Param({"20", "100"})
+    public int columnNum;
+
+    private byte[] payload;
+    private SpecificDatumReader<Record> reader;
+    private AvroDeserializer deserializer;
+    private RecordPool recordPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = RecordPayloads.serialize(RecordPayloads.mysqlWideRow(1, columnNum));
+        reader = new SpecificDatumReader<>(Record.class);
+        recordPool = "reuseRecord".equals(mode) ? new RecordPool(4) : null;
+        deserializer = new AvroDeserializer(recordPool);
+    }
+
+    @Benchmark
+    public Record deserialize() throws IOException {
+        if ("fresh".equals(mode)) {
+            Decoder decoder = DecoderFactory.get().binaryDecoder(payload, null);
+            return reader.read(null, decoder);
+        }
+        Record record = deserializer.deserialize(payload);
+        if (null != recordPool) {
+            // listener finished
+            recordPool.release(record);
+        }
+        return record;
+    }
+}
@@ -0,0 +1,34 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Same as the JMH main but the gc profiler is always on, so every benchmark also reports bytes allocated per op
+ * (gc.alloc.rate.norm).
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams()
+                || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.parent(commandLineOptions);
+        boolean hasGCProfiler = false;
+        for (ProfilerConfig profilerConfig : commandLineOptions.getProfilers()) {
+            hasGCProfiler |= GCProfiler.class.getName().equals(profilerConfig.getKlass()) || "gc".equals(profilerConfig.getKlass());
+        }
+        if (!hasGCProfiler) {
+            optionsBuilder.addProfiler(GCProfiler.class);
+        }
+        Options options = optionsBuilder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import common.Checkpoint;
+import common.Util;
+import metastore.LocalFileMetaStore;
+import metastore.MappedMetaStore;
+import metastore.MetaStore;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commits per second of a local checkpoint store, a commit stores the checkpoint of one of [partitionNum] partitions.
+ * [mappedSync] is stream.checkpoint.localStore=mapped, the slot is synced to disk before commit returns.
+ * [mapped] is the same store without sync, only written to page cache.
+ * [logSync] is LocalFileMetaStore with fsyncIntervalMS 0, the log is appended and synced before commit returns.
+ * [log] is LocalFileMetaStore synced every 1000 ms as configured by default, but appended by the caller.
+ * Run with: java -jar target/benchmarks.jar CheckpointStoreBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CheckpointStoreBenchmark {
+    private static final String FILE_NAME = "checkpointStoreBenchmark";
+
+    @Param({"mappedSync", "mapped", "logSync", "log"})
+    public String store;
+
+    @Param({"8"})
+    public int partitionNum;
+
+    private MetaStore<Checkpoint> metaStore;
+    private TopicPartition[] topicPartitions;
+    private long offset = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Util.deleteFile(FILE_NAME);
+        switch (store) {
+            case "mappedSync":
+                metaStore = new MappedMetaStore(FILE_NAME, 64, true);
+                break;
+            case "mapped":
+                metaStore = new MappedMetaStore(FILE_NAME, 64, false);
+                break;
+            case "logSync":
+                metaStore = new LocalFileMetaStore(FILE_NAME, false, 0, 1024 * 1024);
+                break;
+            default:
+                metaStore = new LocalFileMetaStore(FILE_NAME, false, 1000, 1024 * 1024);
+        }
+        topicPartitions = new TopicPartition[partitionNum];
+        for (int i = 0; i < partitionNum; i++) {
+            topicPartitions[i] = new TopicPartition("benchmark", i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ((Closeable) metaStore).close();
+        Util.deleteFile(FILE_NAME);
+    }
+
+    @Benchmark
+    public Object commit() {
+        offset++;
+        TopicPartition topicPartition = topicPartitions[(int) (offset % partitionNum)];
+        return metaStore.serializeTo(Collections.singletonMap(topicPartition,
+                new Checkpoint(topicPartition, offset / 1000, offset, String.valueOf(offset / 1000))), "benchmark");
+    }
+}
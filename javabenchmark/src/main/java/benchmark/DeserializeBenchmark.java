@@ -0,0 +1,37 @@
+package benchmark;
+
+import com.alibaba.dts.formats.avro.Record;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.AvroDeserializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialize every payload kind with the default AvroDeserializer.
+ * Run with: java -jar target/benchmarks.jar DeserializeBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DeserializeBenchmark {
+
+    @Param({"mysqlWide", "oracleLob", "pgArrayJsonb", "ddl", "heartbeat"})
+    public String kind;
+
+    private byte[] payload;
+    private AvroDeserializer deserializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = RecordPayloads.serialize(RecordPayloads.payload(kind, 1));
+        deserializer = new AvroDeserializer();
+    }
+
+    @Benchmark
+    public Record deserialize() {
+        return deserializer.deserialize(payload);
+    }
+}
@@ -0,0 +1,129 @@
+package benchmark;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Record;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import recordprocessor.AvroDeserializer;
+import recordprocessor.FieldConverter;
+import recordprocessor.FieldValueBuffer;
+import recordprocessor.RowPlan;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert every column of the before and after image of a row with the field converter of its db type,
+ * one op is one whole row.
+ * [convert] allocates a FieldValue for each value, [convertIntoBuffer] encodes into one reused FieldValueBuffer.
+ * The text variants also decode each value to characters, by FieldValue.toString or into one reused StringBuilder.
+ * [convertRowPlan] encodes the same values through the RowPlan of the table, built once at setup.
+ * Run with: java -jar target/benchmarks.jar FieldConvertBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldConvertBenchmark {
+
+    @Param({"mysqlWide", "oracleLob", "pgArrayJsonb"})
+    public String kind;
+
+    private FieldConverter fieldConverter;
+    private RowPlan rowPlan;
+    private RowPlan.ColumnVisitor lengthSum;
+    private long visitedBytes;
+    private List<Field> fields;
+    private List<Object> beforeImages;
+    private List<Object> afterImages;
+    private final FieldValueBuffer buffer = new FieldValueBuffer();
+    private final StringBuilder text = new StringBuilder();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Record record = new AvroDeserializer().deserialize(RecordPayloads.serialize(RecordPayloads.payload(kind, 1)));
+        fieldConverter = FieldConverter.getConverter(RecordPayloads.dbType(kind), null);
+        fields = (List<Field>) record.getFields();
+        beforeImages = (List<Object>) record.getBeforeImages();
+        afterImages = (List<Object>) record.getAfterImages();
+        rowPlan = fieldConverter.buildRowPlan(fields);
+        lengthSum = (column, value) -> visitedBytes += value.length();
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Object before = beforeImages.get(i);
+            if (null != before) {
+                blackhole.consume(fieldConverter.convert(field, before));
+            }
+            Object after = afterImages.get(i);
+            if (null != after) {
+                blackhole.consume(fieldConverter.convert(field, after));
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertIntoBuffer(Blackhole blackhole) {
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Object before = beforeImages.get(i);
+            if (null != before) {
+                fieldConverter.convert(field, before, buffer);
+                blackhole.consume(buffer.length());
+            }
+            Object after = afterImages.get(i);
+            if (null != after) {
+                fieldConverter.convert(field, after, buffer);
+                blackhole.consume(buffer.length());
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertToText(Blackhole blackhole) {
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Object before = beforeImages.get(i);
+            if (null != before) {
+                blackhole.consume(fieldConverter.convert(field, before).toString());
+            }
+            Object after = afterImages.get(i);
+            if (null != after) {
+                blackhole.consume(fieldConverter.convert(field, after).toString());
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertIntoBufferToText(Blackhole blackhole) {
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            Object before = beforeImages.get(i);
+            if (null != before) {
+                fieldConverter.convert(field, before, buffer);
+                text.setLength(0);
+                buffer.appendTo(text);
+                blackhole.consume(text.length());
+            }
+            Object after = afterImages.get(i);
+            if (null != after) {
+                fieldConverter.convert(field, after, buffer);
+                text.setLength(0);
+                buffer.appendTo(text);
+                blackhole.consume(text.length());
+            }
+        }
+    }
+
+    @Benchmark
+    public void convertRowPlan(Blackhole blackhole) {
+        rowPlan.convertRow(beforeImages, buffer, lengthSum);
+        rowPlan.convertRow(afterImages, buffer, lengthSum);
+        blackhole.consume(visitedBytes);
+    }
+}
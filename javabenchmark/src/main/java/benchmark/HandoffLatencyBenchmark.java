@@ -0,0 +1,112 @@
+package benchmark;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.HandoffQueue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static common.Util.sleepMS;
+
+/**
+ * End to end latency of handing one record from generator thread to processor thread, for each wait strategy.
+ * [sleepPoll] is the original peek and sleep(5) loop of EtlRecordProcessor, kept as baseline.
+ * [gapMicros] is the idle time before each record, which lets a parking consumer really fall asleep.
+ * Run with: java -jar target/benchmarks.jar HandoffLatencyBenchmark
+ * p50/p99 are reported in the percentile section of sample time mode.
+ * Spinning strategies need a dedicated core for the processor thread, results on a machine with less than 2 cores are meaningless.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandoffLatencyBenchmark {
+
+    @Param({"blocking", "spinThenPark", "busySpin", "sleepPoll"})
+    public String strategy;
+
+    @Param({"0", "1000"})
+    public long gapMicros;
+
+    private final ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("benchmark", 0, 0, null, new byte[64]);
+    private HandoffQueue handoffQueue;
+    private LinkedBlockingQueue<ConsumerRecord> legacyQueue;
+    private Thread consumer;
+    private volatile boolean existed;
+    private volatile long consumed;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        existed = false;
+        consumed = 0;
+        sent = 0;
+        if ("sleepPoll".equals(strategy)) {
+            legacyQueue = new LinkedBlockingQueue<>(512);
+            consumer = new Thread(this::legacyConsume);
+        } else {
+            handoffQueue = new HandoffQueue(512, 0, HandoffQueue.WaitStrategy.parse(strategy));
+            consumer = new Thread(this::consume);
+        }
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        existed = true;
+        consumer.join(10000);
+    }
+
+    @Setup(Level.Invocation)
+    public void idleGap() {
+        if (gapMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(gapMicros));
+        }
+    }
+
+    @Benchmark
+    public long handoff() throws InterruptedException {
+        long expected = ++sent;
+        if (null != handoffQueue) {
+            handoffQueue.offer(Collections.singletonList(record), 1000, TimeUnit.MILLISECONDS);
+        } else {
+            legacyQueue.offer(record, 1000, TimeUnit.MILLISECONDS);
+        }
+        while (consumed < expected) {
+            // yield so that spinning consumer is not starved on small machines
+            Thread.yield();
+        }
+        return expected;
+    }
+
+    private void consume() {
+        try {
+            while (!existed) {
+                List<ConsumerRecord<byte[], byte[]>> batch = handoffQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (null != batch) {
+                    consumed += batch.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void legacyConsume() {
+        while (!existed) {
+            while (null == legacyQueue.peek() && !existed) {
+                sleepMS(5);
+            }
+            if (null != legacyQueue.poll()) {
+                consumed++;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package benchmark;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.HandoffQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of handing records from generator thread to processor thread.
+ * [perRecord] is the original LinkedBlockingQueue(512) which is offered once per record, kept as baseline,
+ * other values are the batch size used with HandoffQueue.
+ * Run with: java -jar target/benchmarks.jar HandoffThroughputBenchmark
+ * Score is records handed over per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandoffThroughputBenchmark {
+    private static final int RECORDS_PER_INVOCATION = 1024;
+
+    @Param({"perRecord", "16", "256"})
+    public String batchSize;
+
+    private final ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("benchmark", 0, 0, null, new byte[64]);
+    private HandoffQueue handoffQueue;
+    private LinkedBlockingQueue<ConsumerRecord> legacyQueue;
+    private int batchRecordNum;
+    private Thread consumer;
+    private volatile boolean existed;
+    private volatile long consumed;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        existed = false;
+        consumed = 0;
+        sent = 0;
+        if ("perRecord".equals(batchSize)) {
+            legacyQueue = new LinkedBlockingQueue<>(512);
+            consumer = new Thread(this::legacyConsume);
+        } else {
+            batchRecordNum = Integer.valueOf(batchSize);
+            handoffQueue = new HandoffQueue(4096, 0, HandoffQueue.WaitStrategy.BLOCKING);
+            consumer = new Thread(this::consume);
+        }
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        existed = true;
+        consumer.join(10000);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS_PER_INVOCATION)
+    public long handoff() throws InterruptedException {
+        if (null != legacyQueue) {
+            for (int i = 0; i < RECORDS_PER_INVOCATION; i++) {
+                while (!legacyQueue.offer(record, 1000, TimeUnit.MILLISECONDS)) {
+                }
+            }
+        } else {
+            for (int i = 0; i < RECORDS_PER_INVOCATION; i += batchRecordNum) {
+                List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(batchRecordNum);
+                for (int j = 0; j < batchRecordNum; j++) {
+                    batch.add(record);
+                }
+                while (!handoffQueue.offer(batch, 1000, TimeUnit.MILLISECONDS)) {
+                }
+            }
+        }
+        sent += RECORDS_PER_INVOCATION;
+        // wait for drain so that the score is end to end
+        while (consumed < sent) {
+            Thread.yield();
+        }
+        return sent;
+    }
+
+    private void consume() {
+        try {
+            while (!existed) {
+                List<ConsumerRecord<byte[], byte[]>> batch = handoffQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (null != batch) {
+                    consumed += batch.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void legacyConsume() {
+        try {
+            while (!existed) {
+                if (null != legacyQueue.poll(100, TimeUnit.MILLISECONDS)) {
+                    consumed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
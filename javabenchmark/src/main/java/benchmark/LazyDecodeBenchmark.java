@@ -0,0 +1,56 @@
+package benchmark;
+
+import com.alibaba.dts.formats.avro.Record;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.AvroDeserializer;
+import recordprocessor.ColumnProjection;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a 100 column MySQL update for a listener that reads only a few things of the record.
+ * [eager] is the default AvroDeserializer, [lazy] is stream.processor.lazyDecode without projection,
+ * [lazyProjected] is lazy decode with a projection of 2 columns on the table.
+ * [headerOnly] reads only objectName and operation, like a listener that drops most tables,
+ * [afterImages] reads fields and after images.
+ * Run with: java -jar target/benchmarks.jar LazyDecodeBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LazyDecodeBenchmark {
+
+    @Param({"eager", "lazy", "lazyProjected"})
+    public String mode;
+
+    private byte[] payload;
+    private AvroDeserializer deserializer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Record record = RecordPayloads.payload("mysqlWide", 1);
+        payload = RecordPayloads.serialize(record);
+        ColumnProjection projection = new ColumnProjection();
+        if ("lazyProjected".equals(mode)) {
+            projection.register(record.getObjectName(), Arrays.asList("col_0", "col_1"));
+        }
+        deserializer = "eager".equals(mode) ? new AvroDeserializer() : new AvroDeserializer(null, projection);
+    }
+
+    @Benchmark
+    public Object headerOnly() {
+        Record record = deserializer.deserialize(payload);
+        return record.getObjectName().length() + record.getOperation().ordinal();
+    }
+
+    @Benchmark
+    public Object afterImages() {
+        Record record = deserializer.deserialize(payload);
+        record.getFields();
+        return record.getAfterImages();
+    }
+}
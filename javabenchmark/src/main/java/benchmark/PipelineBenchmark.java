@@ -0,0 +1,93 @@
+package benchmark;
+
+import common.Context;
+import common.RecordListener;
+import common.UserRecord;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.EtlRecordProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static recordgenerator.Names.*;
+
+/**
+ * Records go through the whole EtlRecordProcessor: handoff queue, deserialize, (shard), listener and commit.
+ * Each invocation hands [BATCH_SIZE] records to the processor the way RecordGenerator does and waits until
+ * the listener has consumed all of them, the score is records per second.
+ * Records are decoded on processor and shard threads, so gc.alloc.rate.norm (benchmark thread only) misses most
+ * of the allocation, look at gc.alloc.rate of the whole process instead.
+ * Run with: java -jar target/benchmarks.jar PipelineBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"mysqlWide", "oracleLob", "pgArrayJsonb"})
+    public String kind;
+
+    @Param({"1", "4"})
+    public String threads;
+
+    private Context context;
+    private EtlRecordProcessor recordProcessor;
+    private WorkThread processorThread;
+    private byte[][] payloads;
+    private final AtomicLong consumed = new AtomicLong(0);
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payloads = new byte[BATCH_SIZE][];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            payloads[i] = RecordPayloads.serialize(RecordPayloads.payload(kind, i));
+        }
+        Properties properties = new Properties();
+        properties.setProperty(PROCESSOR_THREAD_NUM, threads);
+        context = new Context();
+        recordProcessor = new EtlRecordProcessor(null, context, properties);
+        recordProcessor.registerRecordListener("benchmark", new RecordListener() {
+            @Override
+            public void consume(UserRecord record) {
+                record.commit(String.valueOf(record.getRecord().getSourceTimestamp()));
+                consumed.incrementAndGet();
+            }
+        });
+        context.setRecordProcessor(recordProcessor);
+        processorThread = new WorkThread(recordProcessor);
+        processorThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processorThread.stop();
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long pipeline() {
+        List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new ConsumerRecord<>("benchmark", 0, sent + i, null, payloads[i]));
+            recordProcessor.getMemoryBudget().acquire(payloads[i].length);
+        }
+        while (!recordProcessor.offer(1000, TimeUnit.MILLISECONDS, batch)) {
+        }
+        sent += BATCH_SIZE;
+        while (consumed.get() < sent) {
+            Thread.yield();
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,208 @@
+package benchmark;
+
+import com.alibaba.dts.formats.avro.BinaryObject;
+import com.alibaba.dts.formats.avro.DateTime;
+import com.alibaba.dts.formats.avro.Decimal;
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import com.alibaba.dts.formats.avro.TextObject;
+import com.alibaba.dts.formats.avro.TimestampWithTimeZone;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generate serialized records shaped like what dStore produces, so that benchmarks run without a kafka.
+ * Payload kinds:
+ * mysqlWide: update of a 100 columns MySQL table
+ * oracleLob: update of an Oracle table with a 64KB CLOB and a 64KB BLOB
+ * pgArrayJsonb: insert of a PostgreSQL table with array, json and jsonb columns
+ * ddl: MySQL alter table
+ * heartbeat: heartbeat record without any column
+ */
+public class RecordPayloads {
+    public static final String[] KINDS = {"mysqlWide", "oracleLob", "pgArrayJsonb", "ddl", "heartbeat"};
+    private static final SpecificDatumWriter<Record> WRITER = new SpecificDatumWriter<>(Record.class);
+    private static final int TABLE_NUM = 16;
+
+    public static Record payload(String kind, long id) {
+        switch (kind) {
+            case "mysqlWide":
+                return mysqlWideRow(id, 100);
+            case "oracleLob":
+                return oracleLobRow(id, 64 * 1024);
+            case "pgArrayJsonb":
+                return postgresqlRow(id);
+            case "ddl":
+                return ddl(id);
+            case "heartbeat":
+                return heartbeat(id);
+            default:
+                throw new RuntimeException("RecordPayloads: unknown payload kind [" + kind + "]");
+        }
+    }
+
+    // the db type used to pick a field converter for the payload kind
+    public static String dbType(String kind) {
+        switch (kind) {
+            case "oracleLob":
+                return "oracle";
+            case "pgArrayJsonb":
+                return "postgresql";
+            default:
+                return "mysql";
+        }
+    }
+
+    public static byte[] serialize(Record record) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+            WRITER.write(record, encoder);
+            encoder.flush();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("RecordPayloads: serialize record failed cause " + e.getMessage(), e);
+        }
+    }
+
+    private static Record.Builder newRecord(long id, SourceType sourceType, String sourceVersion, Operation operation, String objectName) {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("pk_uk_info", "{\"PRIMARY\":[\"col_0\"]}");
+        tags.put("readerThroughoutTime", String.valueOf(id));
+        return Record.newBuilder()
+                .setVersion(1)
+                .setId(id)
+                .setSourceTimestamp(1560977122L + id)
+                .setSourcePosition("1234567@mysql-bin.000123")
+                .setSafeSourcePosition("1234000@mysql-bin.000123")
+                .setSourceTxid(String.valueOf(id / 10))
+                .setSource(new Source(sourceType, sourceVersion))
+                .setOperation(operation)
+                .setObjectName(objectName)
+                .setTags(tags);
+    }
+
+    /**
+     * MySQL update of a table with [columnNum] columns, columns cycle through int, varchar, decimal, datetime and double
+     */
+    public static Record mysqlWideRow(long id, int columnNum) {
+        List<Field> fields = new ArrayList<>(columnNum);
+        List<Object> before = new ArrayList<>(columnNum);
+        List<Object> after = new ArrayList<>(columnNum);
+        for (int i = 0; i < columnNum; i++) {
+            switch (i % 5) {
+                case 0:
+                    fields.add(new Field("col_" + i, 3));
+                    before.add(new com.alibaba.dts.formats.avro.Integer(32, String.valueOf(id * 31 + i)));
+                    after.add(new com.alibaba.dts.formats.avro.Integer(32, String.valueOf(id * 31 + i)));
+                    break;
+                case 1:
+                    fields.add(new Field("col_" + i, 253));
+                    before.add(new com.alibaba.dts.formats.avro.Character("utf8mb4", ByteBuffer.wrap(("value before " + id + " of column " + i).getBytes(UTF_8))));
+                    after.add(new com.alibaba.dts.formats.avro.Character("utf8mb4", ByteBuffer.wrap(("value after " + id + " of column " + i).getBytes(UTF_8))));
+                    break;
+                case 2:
+                    fields.add(new Field("col_" + i, 246));
+                    before.add(new Decimal("12345.6789", 10, 4));
+                    after.add(new Decimal("12346.0001", 10, 4));
+                    break;
+                case 3:
+                    fields.add(new Field("col_" + i, 12));
+                    before.add(new DateTime(2019, 6, 20, 10, 25, 22, 123456));
+                    after.add(new DateTime(2019, 6, 20, 10, 25, 23, 0));
+                    break;
+                default:
+                    fields.add(new Field("col_" + i, 5));
+                    before.add(new com.alibaba.dts.formats.avro.Float(3.1415926, 10, 7));
+                    after.add(new com.alibaba.dts.formats.avro.Float(2.7182818, 10, 7));
+                    break;
+            }
+        }
+        return newRecord(id, SourceType.MySQL, "5.7.26", Operation.UPDATE, "benchmark_db.wide_table_" + id % TABLE_NUM)
+                .setFields(fields)
+                .setBeforeImages(before)
+                .setAfterImages(after)
+                .build();
+    }
+
+    /**
+     * Oracle update with NUMBER, VARCHAR2, DATE, TIMESTAMP, CLOB and BLOB columns, Oracle keeps nanoseconds in millis
+     */
+    public static Record oracleLobRow(long id, int lobSize) {
+        byte[] clob = new byte[lobSize];
+        Arrays.fill(clob, (byte) 'x');
+        byte[] blob = new byte[lobSize];
+        for (int i = 0; i < lobSize; i++) {
+            blob[i] = (byte) (i * 31 + id);
+        }
+        List<Field> fields = Arrays.asList(new Field("ID", 2), new Field("NAME", 1), new Field("CREATED", 12),
+                new Field("UPDATED", 180), new Field("CONTENT", 112), new Field("ATTACHMENT", 113));
+        List<Object> before = Arrays.asList(
+                new Decimal(String.valueOf(id), 38, 0),
+                new com.alibaba.dts.formats.avro.Character("utf8", ByteBuffer.wrap(("name " + id).getBytes(UTF_8))),
+                new DateTime(2019, 6, 20, 10, 25, 22, null),
+                new DateTime(2019, 6, 20, 10, 25, 22, 123456789),
+                new com.alibaba.dts.formats.avro.Character("utf8", ByteBuffer.wrap(clob)),
+                new BinaryObject("BLOB", ByteBuffer.wrap(blob)));
+        List<Object> after = new ArrayList<>(before);
+        after.set(3, new DateTime(2019, 6, 20, 10, 25, 23, 987654321));
+        return newRecord(id, SourceType.Oracle, "11.2.0.4", Operation.UPDATE, "BENCHMARK.LOB_TABLE_" + id % TABLE_NUM)
+                .setFields(fields)
+                .setBeforeImages(before)
+                .setAfterImages(after)
+                .build();
+    }
+
+    /**
+     * PostgreSQL insert with int4, text, numeric, timestamptz, int4[], text[], json and jsonb columns
+     */
+    public static Record postgresqlRow(long id) {
+        String json = "{\"id\":" + id + ",\"tags\":[\"a\",\"b\",\"c\"],\"profile\":{\"name\":\"user " + id + "\",\"score\":98.5,\"active\":true}}";
+        List<Field> fields = Arrays.asList(new Field("id", 23), new Field("title", 25), new Field("price", 1700),
+                new Field("created_at", 1184), new Field("scores", 1007), new Field("labels", 1009),
+                new Field("payload", 114), new Field("document", 3802));
+        List<Object> after = Arrays.asList(
+                new com.alibaba.dts.formats.avro.Integer(32, String.valueOf(id)),
+                new com.alibaba.dts.formats.avro.Character("UTF8", ByteBuffer.wrap(("title of row " + id).getBytes(UTF_8))),
+                new Decimal("1999.99", 10, 2),
+                new TimestampWithTimeZone(new DateTime(2019, 6, 20, 10, 25, 22, 123456), "+08:00"),
+                new TextObject("_int4", "{1,2,3,4,5,6,7,8,9,10}"),
+                new TextObject("_text", "{alpha,beta,gamma,delta}"),
+                new TextObject("json", json),
+                new BinaryObject("jsonb", ByteBuffer.wrap(json.getBytes(UTF_8))));
+        List<Object> before = new ArrayList<>(after.size());
+        for (int i = 0; i < after.size(); i++) {
+            before.add(null);
+        }
+        return newRecord(id, SourceType.PostgreSQL, "10.5", Operation.INSERT, "benchmark_db.public.json_table_" + id % TABLE_NUM)
+                .setFields(fields)
+                .setBeforeImages(before)
+                .setAfterImages(after)
+                .build();
+    }
+
+    public static Record ddl(long id) {
+        return newRecord(id, SourceType.MySQL, "5.7.26", Operation.DDL, "benchmark_db.wide_table_" + id % TABLE_NUM)
+                .setAfterImages("ALTER TABLE `benchmark_db`.`wide_table_" + id % TABLE_NUM + "` ADD COLUMN `extra_" + id + "` varchar(64) DEFAULT NULL")
+                .build();
+    }
+
+    public static Record heartbeat(long id) {
+        return newRecord(id, SourceType.MySQL, "5.7.26", Operation.HEARTBEAT, null).build();
+    }
+}
@@ -0,0 +1,38 @@
+package benchmark;
+
+import boot.RecordPrinter;
+import com.alibaba.dts.formats.avro.Record;
+import org.openjdk.jmh.annotations.*;
+import recordprocessor.AvroDeserializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordPrinter.recordToString of every payload kind, which is what DefaultRecordListener does for each record.
+ * Run with: java -jar target/benchmarks.jar RecordPrinterBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordPrinterBenchmark {
+
+    @Param({"mysqlWide", "oracleLob", "pgArrayJsonb", "ddl", "heartbeat"})
+    public String kind;
+
+    private Record record;
+    private RecordPrinter recordPrinter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        record = new AvroDeserializer().deserialize(RecordPayloads.serialize(RecordPayloads.payload(kind, 1)));
+        recordPrinter = new RecordPrinter(RecordPayloads.dbType(kind));
+    }
+
+    @Benchmark
+    public String recordToString() {
+        return recordPrinter.recordToString(record);
+    }
+}
@@ -59,6 +59,7 @@ public class Boot {
         for (WorkThread workThread : startStream) {
             workThread.stop();
         }
+        swallowErrorClose(context);
 
     }
 
@@ -120,7 +121,7 @@ public class Boot {
             public void commit(TopicPartition tp, long timestamp, long offset, String metadata) {
                 recordGenerator.setToCommitCheckpoint(new Checkpoint(tp, timestamp, offset, metadata));
             }
-        }, context);
+        }, context, properties);
         context.setRecordProcessor(etlRecordProcessor);
         return etlRecordProcessor;
     }
@@ -1,14 +1,14 @@
 package boot;
 
-import com.alibaba.dts.formats.avro.Field;
 import com.alibaba.dts.formats.avro.Record;
-import common.FieldEntryHolder;
+import common.TableSchema;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordprocessor.FieldConverter;
+import recordprocessor.RowPlan;
+import recordprocessor.SchemaRegistry;
 
-import java.util.Iterator;
 import java.util.List;
 
 import static common.Util.uncompressionObjectName;
@@ -19,9 +19,12 @@ import static common.Util.uncompressionObjectName;
 public class RecordPrinter {
     private static final Logger log = LoggerFactory.getLogger(RecordPrinter.class);
     private FieldConverter fieldConverter;
+    // column names and converters are resolved once per table schema instead of per row
+    private SchemaRegistry schemaRegistry;
 
     public RecordPrinter(String dbType) {
         fieldConverter = FieldConverter.getConverter(dbType, null);
+        schemaRegistry = new SchemaRegistry(fieldConverter);
     }
 
 
@@ -29,16 +32,16 @@ public class RecordPrinter {
         StringBuilder stringBuilder = new StringBuilder(256);
         switch (record.getOperation()) {
             case DDL: {
+                schemaRegistry.invalidate(record.getObjectName());
                 appendRecordGeneralInfo(record, stringBuilder);
                 String ddl = (String)record.getAfterImages();
                 stringBuilder.append("DDL [").append(ddl).append("]");
                 break;
             }
             default: {
-                List<Field> fields = (List<Field>) record.getFields();
-                FieldEntryHolder[] fieldArray = getFieldEntryHolder(record);
+                TableSchema tableSchema = schemaRegistry.lookup(record);
                 appendRecordGeneralInfo(record, stringBuilder);
-                appendFields(fields, fieldArray[0], fieldArray[1], stringBuilder);
+                appendFields(tableSchema, imagesOf(record.getBeforeImages()), imagesOf(record.getAfterImages()), stringBuilder);
                 break;
             }
         }
@@ -47,37 +50,36 @@ public class RecordPrinter {
     }
 
 
-    private FieldEntryHolder[] getFieldEntryHolder(Record record) {
-        // this is a simple impl, may exist unhandled situation
-        FieldEntryHolder[] fieldArray = new FieldEntryHolder[2];
-
-            fieldArray[0] = new FieldEntryHolder((List<Object>) record.getBeforeImages());
-            fieldArray[1] = new FieldEntryHolder((List<Object>) record.getAfterImages());
-
-        return fieldArray;
+    // this is a simple impl, may exist unhandled situation
+    private static List<Object> imagesOf(Object images) {
+        return images instanceof List ? (List<Object>) images : null;
     }
 
-    private void appendFields(List<Field> fields, FieldEntryHolder before, FieldEntryHolder after, StringBuilder stringBuilder) {
-        if (null != fields) {
-            Iterator<Field> fieldIterator = fields.iterator();
-            while (fieldIterator.hasNext() && before.hasNext() && after.hasNext()) {
-                Field field = fieldIterator.next();
-                Object toPrintBefore = before.take();
-                Object toPrintAfter = after.take();
-                appendField(field, toPrintBefore, toPrintAfter, stringBuilder);
+    private void appendFields(TableSchema tableSchema, List<Object> before, List<Object> after, StringBuilder stringBuilder) {
+        if (null != tableSchema) {
+            int columnNum = tableSchema.size();
+            if (null != before) {
+                columnNum = Math.min(columnNum, before.size());
+            }
+            if (null != after) {
+                columnNum = Math.min(columnNum, after.size());
+            }
+            RowPlan rowPlan = tableSchema.getRowPlan();
+            for (int i = 0; i < columnNum; i++) {
+                appendField(rowPlan, i, null == before ? null : before.get(i), null == after ? null : after.get(i), stringBuilder);
             }
         }
     }
 
 
 
-    private void appendField(Field field, Object beforeImage, Object afterImage, StringBuilder stringBuilder) {
-        stringBuilder.append("Field [").append(field.getName()).append("]");
+    private void appendField(RowPlan rowPlan, int column, Object beforeImage, Object afterImage, StringBuilder stringBuilder) {
+        stringBuilder.append("Field [").append(rowPlan.getFields().get(column).getName()).append("]");
         if (null != beforeImage) {
-            stringBuilder.append("Before [").append(fieldConverter.convert(field, beforeImage).toString()).append("]");
+            stringBuilder.append("Before [").append(rowPlan.convert(column, beforeImage).toString()).append("]");
         }
         if (null != afterImage) {
-            stringBuilder.append("After [").append(fieldConverter.convert(field, afterImage).toString()).append("]");
+            stringBuilder.append("After [").append(rowPlan.convert(column, afterImage).toString()).append("]");
         }
         stringBuilder.append("\n");
     }
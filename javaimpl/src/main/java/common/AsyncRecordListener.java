@@ -0,0 +1,23 @@
+package common;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Listener handing records to an async client, the checkpoint passes a record only after the returned stage completes,
+ * and only after all records before it completed as well, so stages may complete in any order.
+ * At most [stream.processor.maxInFlight] records of a partition are in flight, the processor waits for completions beyond that.
+ * A stage completed exceptionally stops the processor, the record and those after it are consumed again after restart.
+ * Records given to consumeAsync are never reused before the stage completes.
+ */
+public interface AsyncRecordListener extends RecordListener {
+
+    // the stage completes with the checkpoint info of the record, null for its source timestamp
+    CompletionStage<String> consumeAsync(UserRecord record);
+
+    // used in batch and transaction commit mode, wait for the record and commit it
+    @Override
+    default void consume(UserRecord record) {
+        String info = consumeAsync(record).toCompletableFuture().join();
+        record.commit(null == info ? String.valueOf(record.getRecord().getSourceTimestamp()) : info);
+    }
+}
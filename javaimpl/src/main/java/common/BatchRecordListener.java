@@ -0,0 +1,20 @@
+package common;
+
+import java.util.Collections;
+
+/**
+ * Listener consuming records in batches, registered like a RecordListener.
+ * Batches are bounded by [stream.processor.batch.maxRecords], [stream.processor.batch.maxBytes] and
+ * [stream.processor.batch.lingerMS]. With [stream.processor.commitMode=transaction] a batch is one whole transaction,
+ * and committing it is the only way to advance the checkpoint. With more than one processor thread every batch holds one record.
+ */
+public interface BatchRecordListener extends RecordListener {
+
+    // records should not be touched after return
+    void consume(UserRecordBatch batch);
+
+    @Override
+    default void consume(UserRecord record) {
+        consume(new UserRecordBatch(Collections.singletonList(record), 0));
+    }
+}
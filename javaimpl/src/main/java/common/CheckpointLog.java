@@ -0,0 +1,359 @@
+package common;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static common.Util.require;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append only checkpoint log in a memory mapped file, storing a checkpoint is one fixed width record appended to the log.
+ * Every (group, topic partition) is defined once by a key record, checkpoint records refer to it by key id.
+ * Every record ends with the crc32 of its bytes, replay stops at the first zero or broken record, so a torn append is dropped.
+ * When the log reaches the end of the mapped file, it is compacted to the latest checkpoint of every key in a new file,
+ * which replaces the log by rename. Appends are durable after force(). Not thread safe.
+ */
+public class CheckpointLog implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointLog.class);
+    private static final int MAGIC = 0x44545343;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte TYPE_KEY = 1;
+    // info is the timestamp string, or null
+    private static final byte TYPE_CHECKPOINT = 2;
+    private static final byte TYPE_CHECKPOINT_WITH_INFO = 3;
+    private static final byte INFO_TIMESTAMP = 0;
+    private static final byte INFO_NULL = 1;
+    private static final int CHECKPOINT_RECORD_SIZE = 32;
+
+    private final String fileName;
+    private final long compactBytes;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(256);
+    private final Map<String, Map<TopicPartition, Integer>> keyIds = new HashMap<>();
+    private final Map<String, Map<TopicPartition, Checkpoint>> checkpoints = new HashMap<>();
+    private int nextKeyId = 0;
+    private RandomAccessFile file;
+    private MappedByteBuffer mapped;
+    private boolean dirty = false;
+    private long compactCount = 0;
+
+    /**
+     * @param compactBytes size of the mapped file, the log is compacted when it is full
+     */
+    public CheckpointLog(String fileName, long compactBytes) {
+        this.fileName = fileName;
+        this.compactBytes = Math.max(compactBytes, 4096);
+        File logFile = new File(fileName);
+        if (logFile.exists() && logFile.length() > 0) {
+            require(isCheckpointLog(fileName), "CheckpointLog: " + fileName + " is not a checkpoint log");
+            open(logFile);
+            replay();
+        } else {
+            rewrite(this.compactBytes);
+        }
+    }
+
+    // true if the file is absent, empty or starts with the log magic
+    public static boolean isCheckpointLog(String fileName) {
+        File logFile = new File(fileName);
+        if (!logFile.exists() || logFile.length() == 0) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        } catch (IOException e) {
+            throw new RuntimeException("CheckpointLog: read " + fileName + " failed cause " + e.getMessage(), e);
+        }
+    }
+
+    // latest checkpoint of every partition by group, owned by the log
+    public Map<String, Map<TopicPartition, Checkpoint>> getCheckpoints() {
+        return checkpoints;
+    }
+
+    public void append(String group, Map<TopicPartition, Checkpoint> values) {
+        for (Map.Entry<TopicPartition, Checkpoint> entry : values.entrySet()) {
+            append(group, entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void append(String group, TopicPartition topicPartition, Checkpoint checkpoint) {
+        Integer keyId = keyIds.getOrDefault(group, Collections.emptyMap()).get(topicPartition);
+        int keySize = null == keyId ? keyRecordSize(group, topicPartition) : 0;
+        byte infoType = infoType(checkpoint);
+        int checkpointSize = infoType < 0 ? infoRecordSize(checkpoint) : CHECKPOINT_RECORD_SIZE;
+        if (mapped.remaining() < keySize + checkpointSize) {
+            checkpoints.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, checkpoint);
+            compact();
+            return;
+        }
+        if (null == keyId) {
+            keyId = nextKeyId++;
+            keyIds.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, keyId);
+            writeKey(mapped, keyId, group, topicPartition);
+        }
+        writeCheckpoint(mapped, keyId, checkpoint, infoType);
+        checkpoints.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, checkpoint);
+        dirty = true;
+    }
+
+    // flush appended records to disk
+    public void force() {
+        if (dirty) {
+            mapped.force();
+            dirty = false;
+        }
+    }
+
+    public int position() {
+        return mapped.position();
+    }
+
+    public long getCompactCount() {
+        return compactCount;
+    }
+
+    // write the latest checkpoints to a new file, the mapped size grows if they take more than half of it
+    public void compact() {
+        long liveBytes = HEADER_SIZE;
+        for (Map.Entry<String, Map<TopicPartition, Checkpoint>> group : checkpoints.entrySet()) {
+            for (Map.Entry<TopicPartition, Checkpoint> entry : group.getValue().entrySet()) {
+                byte infoType = infoType(entry.getValue());
+                liveBytes += keyRecordSize(group.getKey(), entry.getKey())
+                        + (infoType < 0 ? infoRecordSize(entry.getValue()) : CHECKPOINT_RECORD_SIZE);
+            }
+        }
+        rewrite(Math.max(compactBytes, liveBytes * 2));
+        compactCount++;
+        log.info("CheckpointLog: compact {} to [{}] bytes", fileName, mapped.position());
+    }
+
+    @Override
+    public void close() {
+        if (null != mapped) {
+            force();
+        }
+        swallowClose();
+    }
+
+    private void open(File logFile) {
+        try {
+            file = new RandomAccessFile(logFile, "rw");
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(file.length(), compactBytes));
+        } catch (IOException e) {
+            throw new RuntimeException("CheckpointLog: map " + fileName + " failed cause " + e.getMessage(), e);
+        }
+    }
+
+    private void replay() {
+        if (mapped.getInt(0) != MAGIC || mapped.getShort(4) != VERSION) {
+            throw new RuntimeException("CheckpointLog: " + fileName + " has unknown header");
+        }
+        Map<Integer, String> groups = new HashMap<>();
+        Map<Integer, TopicPartition> topicPartitions = new HashMap<>();
+        int position = HEADER_SIZE;
+        boolean broken = false;
+        while (position < mapped.capacity()) {
+            byte type = mapped.get(position);
+            if (type == 0) {
+                break;
+            }
+            int size = recordSizeAt(position, type);
+            if (size <= 0 || position + size > mapped.capacity() || !checkCrc(position, size)) {
+                broken = true;
+                break;
+            }
+            int keyId = mapped.getInt(position + 4);
+            if (type == TYPE_KEY) {
+                int groupLength = mapped.getShort(position + 8) & 0xFFFF;
+                int topicLength = mapped.getShort(position + 10) & 0xFFFF;
+                groups.put(keyId, readString(position + 16, groupLength));
+                topicPartitions.put(keyId, new TopicPartition(readString(position + 16 + groupLength, topicLength), mapped.getInt(position + 12)));
+                keyIds.computeIfAbsent(groups.get(keyId), k -> new HashMap<>()).put(topicPartitions.get(keyId), keyId);
+                nextKeyId = Math.max(nextKeyId, keyId + 1);
+            } else {
+                TopicPartition topicPartition = topicPartitions.get(keyId);
+                if (null == topicPartition) {
+                    broken = true;
+                    break;
+                }
+                long offset = mapped.getLong(position + 8);
+                long timestamp = mapped.getLong(position + 16);
+                String info;
+                if (type == TYPE_CHECKPOINT_WITH_INFO) {
+                    info = readString(position + 28, mapped.getInt(position + 24));
+                } else {
+                    info = mapped.get(position + 1) == INFO_NULL ? null : String.valueOf(timestamp);
+                }
+                checkpoints.computeIfAbsent(groups.get(keyId), k -> new HashMap<>())
+                        .put(topicPartition, new Checkpoint(topicPartition, timestamp, offset, info));
+            }
+            position += size;
+        }
+        if (broken) {
+            // drop the torn record, so that the next append is not followed by its remains
+            log.warn("CheckpointLog: {} is broken at [{}], records after it are dropped", fileName, position);
+            for (int i = position; i < mapped.capacity(); i++) {
+                mapped.put(i, (byte) 0);
+            }
+        }
+        mapped.position(position);
+    }
+
+    // size of the record at position, -1 if it is not a valid record type
+    private int recordSizeAt(int position, byte type) {
+        switch (type) {
+            case TYPE_KEY:
+                return position + 16 > mapped.capacity() ? -1
+                        : 16 + (mapped.getShort(position + 8) & 0xFFFF) + (mapped.getShort(position + 10) & 0xFFFF) + 4;
+            case TYPE_CHECKPOINT:
+                return CHECKPOINT_RECORD_SIZE;
+            case TYPE_CHECKPOINT_WITH_INFO:
+                return position + 28 > mapped.capacity() ? -1 : 28 + mapped.getInt(position + 24) + 4;
+            default:
+                return -1;
+        }
+    }
+
+    private boolean checkCrc(int position, int size) {
+        ByteBuffer record = mapped.duplicate();
+        record.limit(position + size - 4).position(position);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue() == mapped.getInt(position + size - 4);
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mapped.get(position + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    // write all checkpoints to a new file of given size and replace the log with it
+    private void rewrite(long size) {
+        File tmpFile = new File(fileName + ".tmp");
+        try {
+            Files.deleteIfExists(tmpFile.toPath());
+            keyIds.clear();
+            nextKeyId = 0;
+            try (RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw")) {
+                MappedByteBuffer tmpMapped = tmp.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                tmpMapped.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+                for (Map.Entry<String, Map<TopicPartition, Checkpoint>> group : checkpoints.entrySet()) {
+                    Map<TopicPartition, Integer> groupKeyIds = new HashMap<>();
+                    keyIds.put(group.getKey(), groupKeyIds);
+                    for (Map.Entry<TopicPartition, Checkpoint> entry : group.getValue().entrySet()) {
+                        int keyId = nextKeyId++;
+                        groupKeyIds.put(entry.getKey(), keyId);
+                        writeKey(tmpMapped, keyId, group.getKey(), entry.getKey());
+                        writeCheckpoint(tmpMapped, keyId, entry.getValue(), infoType(entry.getValue()));
+                    }
+                }
+                tmpMapped.force();
+            }
+            swallowClose();
+            // the old mapping is released when it is garbage collected
+            Files.move(tmpFile.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("CheckpointLog: rewrite " + fileName + " failed cause " + e.getMessage(), e);
+        }
+        open(new File(fileName));
+        int position = HEADER_SIZE;
+        while (position < mapped.capacity() && mapped.get(position) != 0) {
+            position += recordSizeAt(position, mapped.get(position));
+        }
+        mapped.position(position);
+        dirty = false;
+    }
+
+    private static byte infoType(Checkpoint checkpoint) {
+        if (null == checkpoint.getInfo()) {
+            return INFO_NULL;
+        }
+        return checkpoint.getInfo().equals(String.valueOf(checkpoint.getTimeStamp())) ? INFO_TIMESTAMP : -1;
+    }
+
+    private static int keyRecordSize(String group, TopicPartition topicPartition) {
+        return 16 + group.getBytes(UTF_8).length + topicPartition.topic().getBytes(UTF_8).length + 4;
+    }
+
+    private static int infoRecordSize(Checkpoint checkpoint) {
+        return 28 + checkpoint.getInfo().getBytes(UTF_8).length + 4;
+    }
+
+    // type(1) pad(3) keyId(4) groupLength(2) topicLength(2) partition(4) group topic crc(4)
+    private void writeKey(ByteBuffer target, int keyId, String group, TopicPartition topicPartition) {
+        byte[] groupBytes = group.getBytes(UTF_8);
+        byte[] topicBytes = topicPartition.topic().getBytes(UTF_8);
+        ByteBuffer record = recordBuffer(16 + groupBytes.length + topicBytes.length + 4);
+        record.put(TYPE_KEY).put((byte) 0).putShort((short) 0).putInt(keyId)
+                .putShort((short) groupBytes.length).putShort((short) topicBytes.length).putInt(topicPartition.partition())
+                .put(groupBytes).put(topicBytes);
+        putWithCrc(target, record);
+    }
+
+    // type(1) infoType(1) pad(2) keyId(4) offset(8) timestamp(8) pad(4) crc(4)
+    // or with info: type(1) pad(3) keyId(4) offset(8) timestamp(8) infoLength(4) info crc(4)
+    private void writeCheckpoint(ByteBuffer target, int keyId, Checkpoint checkpoint, byte infoType) {
+        ByteBuffer record;
+        if (infoType < 0) {
+            byte[] info = checkpoint.getInfo().getBytes(UTF_8);
+            record = recordBuffer(28 + info.length + 4);
+            record.put(TYPE_CHECKPOINT_WITH_INFO).put((byte) 0).putShort((short) 0).putInt(keyId)
+                    .putLong(checkpoint.getOffset()).putLong(checkpoint.getTimeStamp()).putInt(info.length).put(info);
+        } else {
+            record = recordBuffer(CHECKPOINT_RECORD_SIZE);
+            record.put(TYPE_CHECKPOINT).put(infoType).putShort((short) 0).putInt(keyId)
+                    .putLong(checkpoint.getOffset()).putLong(checkpoint.getTimeStamp()).putInt(0);
+        }
+        putWithCrc(target, record);
+    }
+
+    private ByteBuffer recordBuffer(int size) {
+        if (recordBuffer.capacity() < size) {
+            recordBuffer = ByteBuffer.allocate(size);
+        }
+        recordBuffer.clear();
+        return recordBuffer;
+    }
+
+    // the type byte is written last, so that a record is invisible to replay until it is complete
+    private void putWithCrc(ByteBuffer target, ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        int start = target.position();
+        target.position(start + 1);
+        target.put(record.array(), 1, record.position() - 1);
+        target.put(start, record.array()[0]);
+    }
+
+    private void swallowClose() {
+        if (null != file) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                log.warn("CheckpointLog: close " + fileName + " failed cause " + e.getMessage());
+            }
+            file = null;
+        }
+    }
+}
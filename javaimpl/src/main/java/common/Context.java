@@ -1,14 +1,26 @@
 package common;
 
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.utils.Time;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordgenerator.RecordGenerator;
 import recordprocessor.EtlRecordProcessor;
 
-public class Context {
+import java.io.Closeable;
+import java.util.Collections;
+
+public class Context implements Closeable {
+    public static final String METRICS_JMX_PREFIX = "dts.subscribe";
     private static final Logger log = LoggerFactory.getLogger(Context.class);
     private RecordGenerator streamSource;
     private EtlRecordProcessor recordProcessor;
+    // gauges and sensors of generator and processor, all exported by jmx
+    private final Metrics metrics = new Metrics(new MetricConfig(),
+            Collections.<MetricsReporter>singletonList(new JmxReporter(METRICS_JMX_PREFIX)), Time.SYSTEM);
     public void setStreamSource(RecordGenerator streamSource) {
         this.streamSource = streamSource;
     }
@@ -21,4 +33,12 @@ public class Context {
         this.recordProcessor = recordProcessor;
     }
 
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        metrics.close();
+    }
 }
@@ -0,0 +1,59 @@
+package common;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static common.Util.require;
+
+/**
+ * Account the bytes of record values that are fetched from kafka but not yet consumed by listener.
+ * Bytes are acquired by RecordGenerator right after poll and released by EtlRecordProcessor after the record is processed,
+ * so records waiting in any queue between them are all counted.
+ * The budget is exhausted when used bytes reach [maxBytes], and the consumer can resume fetching
+ * after used bytes drop to [resumeBytes]. [maxBytes] <= 0 means no budget.
+ */
+public class MemoryBudget {
+    private final long maxBytes;
+    private final long resumeBytes;
+    private final AtomicLong usedBytes = new AtomicLong(0);
+
+    public MemoryBudget(long maxBytes, long resumeBytes) {
+        require(maxBytes <= 0 || (resumeBytes >= 0 && resumeBytes <= maxBytes),
+                "MemoryBudget: resume bytes [" + resumeBytes + "] should be in [0, " + maxBytes + "]");
+        this.maxBytes = maxBytes;
+        this.resumeBytes = resumeBytes;
+    }
+
+    public void acquire(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    public boolean isExhausted() {
+        return maxBytes > 0 && usedBytes.get() >= maxBytes;
+    }
+
+    public boolean canResume() {
+        return maxBytes <= 0 || usedBytes.get() <= resumeBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public static long valueBytes(ConsumerRecord<byte[], byte[]> record) {
+        return null == record.value() ? 0 : record.value().length;
+    }
+}
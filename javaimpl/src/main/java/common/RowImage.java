@@ -0,0 +1,242 @@
+package common;
+
+import com.alibaba.dts.formats.avro.BinaryGeometry;
+import com.alibaba.dts.formats.avro.BinaryObject;
+import com.alibaba.dts.formats.avro.DateTime;
+import com.alibaba.dts.formats.avro.Decimal;
+import com.alibaba.dts.formats.avro.Float;
+import com.alibaba.dts.formats.avro.SourceType;
+import com.alibaba.dts.formats.avro.TextGeometry;
+import com.alibaba.dts.formats.avro.TextObject;
+import com.alibaba.dts.formats.avro.Timestamp;
+import com.alibaba.dts.formats.avro.TimestampWithTimeZone;
+
+import recordprocessor.FieldValueBuffer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static common.Util.toByteArray;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Typed read access to the before or after image of a record, values are read from the avro value objects directly
+ * instead of being formatted to text by FieldConverter and parsed again.
+ * Columns are addressed by index in record fields, or by name through the cached TableSchema.
+ * A getter throws if the column holds a value of an incompatible type, check isNull first for nullable columns.
+ */
+public class RowImage {
+    private static final Map<String, ZoneId> ZONES = new ConcurrentHashMap<>();
+
+    private final TableSchema tableSchema;
+    private final List<Object> values;
+    // Oracle DateTime carries nanoseconds, others carry microseconds
+    private final boolean nanoFraction;
+
+    public RowImage(TableSchema tableSchema, List<Object> values, SourceType sourceType) {
+        this.tableSchema = tableSchema;
+        this.values = values;
+        this.nanoFraction = sourceType == SourceType.Oracle;
+    }
+
+    public TableSchema getTableSchema() {
+        return tableSchema;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public int indexOf(String column) {
+        int ret = tableSchema.indexOf(column);
+        if (ret < 0) {
+            throw new RuntimeException("RowImage: column [" + column + "] not found in " + tableSchema.getObjectName());
+        }
+        return ret;
+    }
+
+    // the avro value object, e.g. com.alibaba.dts.formats.avro.Integer
+    public Object getValue(int index) {
+        return values.get(index);
+    }
+
+    public Object getValue(String column) {
+        return getValue(indexOf(column));
+    }
+
+    public boolean isNull(int index) {
+        return null == values.get(index);
+    }
+
+    public boolean isNull(String column) {
+        return isNull(indexOf(column));
+    }
+
+    public long getLong(int index) {
+        Object value = notNull(index);
+        if (value instanceof com.alibaba.dts.formats.avro.Integer) {
+            return Long.parseLong(((com.alibaba.dts.formats.avro.Integer) value).getValue());
+        } else if (value instanceof Decimal) {
+            return new BigDecimal(((Decimal) value).getValue()).longValueExact();
+        } else if (value instanceof Timestamp) {
+            return ((Timestamp) value).getTimestamp();
+        } else if (value instanceof DateTime && isYearOnly((DateTime) value)) {
+            return ((DateTime) value).getYear();
+        }
+        throw unsupported(index, value, "long");
+    }
+
+    public long getLong(String column) {
+        return getLong(indexOf(column));
+    }
+
+    public double getDouble(int index) {
+        Object value = notNull(index);
+        if (value instanceof Float) {
+            return ((Float) value).getValue();
+        } else if (value instanceof com.alibaba.dts.formats.avro.Integer) {
+            return Long.parseLong(((com.alibaba.dts.formats.avro.Integer) value).getValue());
+        } else if (value instanceof Decimal) {
+            return Double.parseDouble(((Decimal) value).getValue());
+        }
+        throw unsupported(index, value, "double");
+    }
+
+    public double getDouble(String column) {
+        return getDouble(indexOf(column));
+    }
+
+    public BigDecimal getBigDecimal(int index) {
+        Object value = values.get(index);
+        if (null == value) {
+            return null;
+        } else if (value instanceof Decimal) {
+            return new BigDecimal(((Decimal) value).getValue());
+        } else if (value instanceof com.alibaba.dts.formats.avro.Integer) {
+            return new BigDecimal(((com.alibaba.dts.formats.avro.Integer) value).getValue());
+        } else if (value instanceof Float) {
+            return BigDecimal.valueOf(((Float) value).getValue());
+        }
+        throw unsupported(index, value, "BigDecimal");
+    }
+
+    public BigDecimal getBigDecimal(String column) {
+        return getBigDecimal(indexOf(column));
+    }
+
+    // raw bytes of character (in its own charset), binary and geometry values, text values are encoded in utf8
+    public byte[] getBytes(int index) {
+        Object value = values.get(index);
+        if (null == value) {
+            return null;
+        } else if (value instanceof com.alibaba.dts.formats.avro.Character) {
+            return toByteArray(((com.alibaba.dts.formats.avro.Character) value).getValue());
+        } else if (value instanceof BinaryObject) {
+            return toByteArray(((BinaryObject) value).getValue());
+        } else if (value instanceof BinaryGeometry) {
+            return toByteArray(((BinaryGeometry) value).getValue());
+        } else if (value instanceof TextObject) {
+            return ((TextObject) value).getValue().getBytes(UTF_8);
+        } else if (value instanceof TextGeometry) {
+            return ((TextGeometry) value).getValue().getBytes(UTF_8);
+        }
+        throw unsupported(index, value, "bytes");
+    }
+
+    public byte[] getBytes(String column) {
+        return getBytes(indexOf(column));
+    }
+
+    public String getString(int index) {
+        Object value = values.get(index);
+        if (null == value) {
+            return null;
+        } else if (value instanceof com.alibaba.dts.formats.avro.Character) {
+            com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) value;
+            return new String(toByteArray(character.getValue()), FieldValueBuffer.charsetOf(character.getCharset()));
+        } else if (value instanceof TextObject) {
+            return ((TextObject) value).getValue();
+        } else if (value instanceof TextGeometry) {
+            return ((TextGeometry) value).getValue();
+        } else if (value instanceof com.alibaba.dts.formats.avro.Integer) {
+            return ((com.alibaba.dts.formats.avro.Integer) value).getValue();
+        } else if (value instanceof Decimal) {
+            return ((Decimal) value).getValue();
+        }
+        throw unsupported(index, value, "String");
+    }
+
+    public String getString(String column) {
+        return getString(indexOf(column));
+    }
+
+    /**
+     * Microseconds since epoch of timestamp, datetime and date values.
+     * Values with time zone are converted with their zone, values without time zone are taken as UTC wall clock.
+     */
+    public long getEpochMicros(int index) {
+        Object value = notNull(index);
+        if (value instanceof Timestamp) {
+            Timestamp timestamp = (Timestamp) value;
+            return timestamp.getTimestamp() * 1000000L + (null == timestamp.getMillis() ? 0 : timestamp.getMillis());
+        } else if (value instanceof DateTime) {
+            return epochMicros((DateTime) value, ZoneOffset.UTC);
+        } else if (value instanceof TimestampWithTimeZone) {
+            TimestampWithTimeZone timestamp = (TimestampWithTimeZone) value;
+            return epochMicros(timestamp.getValue(), zoneOf(timestamp.getTimezone()));
+        }
+        throw unsupported(index, value, "epoch micros");
+    }
+
+    public long getEpochMicros(String column) {
+        return getEpochMicros(indexOf(column));
+    }
+
+    private long epochMicros(DateTime dateTime, ZoneId zone) {
+        if (null == dateTime.getYear() || null == dateTime.getMonth() || null == dateTime.getDay()) {
+            throw new RuntimeException("RowImage: " + dateTime + " is not a point in time");
+        }
+        LocalDateTime localDateTime = LocalDateTime.of(dateTime.getYear(), dateTime.getMonth(), dateTime.getDay(),
+                intOf(dateTime.getHour()), intOf(dateTime.getMinute()), intOf(dateTime.getSecond()));
+        long seconds = zone instanceof ZoneOffset ? localDateTime.toEpochSecond((ZoneOffset) zone) : localDateTime.atZone(zone).toEpochSecond();
+        long fraction = intOf(dateTime.getMillis());
+        return seconds * 1000000L + (nanoFraction ? fraction / 1000 : fraction);
+    }
+
+    private static int intOf(java.lang.Integer value) {
+        return null == value ? 0 : value;
+    }
+
+    private static boolean isYearOnly(DateTime dateTime) {
+        return null != dateTime.getYear() && null == dateTime.getMonth() && null == dateTime.getDay();
+    }
+
+    // time zone is an offset like +08:00 or a region like Asia/Shanghai
+    private static ZoneId zoneOf(String timezone) {
+        ZoneId ret = ZONES.get(timezone);
+        if (null == ret) {
+            ret = ZoneId.of(timezone);
+            ZONES.put(timezone, ret);
+        }
+        return ret;
+    }
+
+    private Object notNull(int index) {
+        Object value = values.get(index);
+        if (null == value) {
+            throw new RuntimeException("RowImage: column [" + tableSchema.getFields().get(index).getName() + "] of "
+                    + tableSchema.getObjectName() + " is null");
+        }
+        return value;
+    }
+
+    private RuntimeException unsupported(int index, Object value, String type) {
+        return new RuntimeException("RowImage: column [" + tableSchema.getFields().get(index).getName() + "] of "
+                + tableSchema.getObjectName() + " is " + value.getClass().getSimpleName() + ", can not be read as " + type);
+    }
+}
@@ -0,0 +1,69 @@
+package common;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Record;
+import recordprocessor.RowPlan;
+import recordprocessor.SchemaRegistry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columns of a table and the position of each column in record images, built and cached by SchemaRegistry.
+ * The Field objects and column names are owned by the schema, they are not the ones of the record it was built from.
+ */
+public class TableSchema {
+    private final String objectName;
+    private final long fingerprint;
+    private final List<Field> fields;
+    private final Map<String, Integer> columnIndexes;
+    // null if no FieldConverter supports the source of the table
+    private final RowPlan rowPlan;
+
+    public TableSchema(String objectName, long fingerprint, List<Field> fields, RowPlan rowPlan) {
+        this.objectName = objectName;
+        this.fingerprint = fingerprint;
+        this.fields = Collections.unmodifiableList(fields);
+        this.columnIndexes = new HashMap<>(fields.size() * 2);
+        for (int i = 0; i < fields.size(); i++) {
+            columnIndexes.put(fields.get(i).getName(), i);
+        }
+        this.rowPlan = rowPlan;
+    }
+
+    /**
+     * @return schema of the table the record belongs to from the shared registry, null if the record carries no column (ddl, begin, commit...)
+     */
+    public static TableSchema of(Record record) {
+        return SchemaRegistry.shared().lookup(record);
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    // -1 if the table has no such column
+    public int indexOf(String column) {
+        Integer ret = columnIndexes.get(column);
+        return null == ret ? -1 : ret;
+    }
+
+    // plan converting the rows of the table for its source, null if the source has no FieldConverter
+    public RowPlan getRowPlan() {
+        return rowPlan;
+    }
+}
@@ -0,0 +1,26 @@
+package common;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories of work threads, virtual threads are available when built by the jdk21 profile and run on JDK 21+.
+ */
+public class ThreadFactories {
+    private static final String VIRTUAL_THREAD_FACTORY = "common.VirtualThreadFactory";
+
+    private ThreadFactories() {
+    }
+
+    // null if virtual threads are not available
+    public static ThreadFactory virtual(String prefix) {
+        try {
+            return (ThreadFactory) Class.forName(VIRTUAL_THREAD_FACTORY).getConstructor(String.class).newInstance(prefix);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualAvailable() {
+        return null != virtual("probe-");
+    }
+}
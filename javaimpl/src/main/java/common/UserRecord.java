@@ -3,11 +3,16 @@ package common;
 import com.alibaba.dts.formats.avro.Record;
 import org.apache.kafka.common.TopicPartition;
 
+import java.util.List;
+
 public class UserRecord {
     private final TopicPartition topicPartition;
     private final long offset;
     private final Record record;
     private final UserCommitCallBack userCommitCallBack;
+    private TableSchema tableSchema;
+    private RowImage beforeImage;
+    private RowImage afterImage;
 
     public UserRecord(TopicPartition tp, long offset, Record record, UserCommitCallBack userCommitCallBack) {
         this.topicPartition = tp;
@@ -24,6 +29,37 @@ public class UserRecord {
         return record;
     }
 
+    // null if the record carries no column, e.g. ddl
+    public TableSchema getTableSchema() {
+        if (null == tableSchema) {
+            tableSchema = TableSchema.of(record);
+        }
+        return tableSchema;
+    }
+
+    // null if the record has no before image, e.g. insert
+    public RowImage getBeforeImage() {
+        if (null == beforeImage) {
+            beforeImage = toRowImage(record.getBeforeImages());
+        }
+        return beforeImage;
+    }
+
+    // null if the record has no after image, e.g. delete
+    public RowImage getAfterImage() {
+        if (null == afterImage) {
+            afterImage = toRowImage(record.getAfterImages());
+        }
+        return afterImage;
+    }
+
+    private RowImage toRowImage(Object images) {
+        if (!(images instanceof List) || null == getTableSchema()) {
+            return null;
+        }
+        return new RowImage(tableSchema, (List<Object>) images, record.getSource().getSourceType());
+    }
+
     public TopicPartition getTopicPartition() {
         return topicPartition;
     }
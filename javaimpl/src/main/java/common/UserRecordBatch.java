@@ -0,0 +1,34 @@
+package common;
+
+import java.util.List;
+
+/**
+ * Records of one partition handed to a BatchRecordListener together, in offset order.
+ * Committing the batch commits its last record, so the checkpoint covers every record of the batch.
+ */
+public class UserRecordBatch {
+    private final List<UserRecord> records;
+    private final long bytes;
+
+    public UserRecordBatch(List<UserRecord> records, long bytes) {
+        this.records = records;
+        this.bytes = bytes;
+    }
+
+    public List<UserRecord> getRecords() {
+        return records;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    // value bytes of the records as fetched from kafka
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void commit(String metadata) {
+        records.get(records.size() - 1).commit(metadata);
+    }
+}
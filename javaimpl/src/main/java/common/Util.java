@@ -8,6 +8,7 @@ import recordgenerator.ClusterSwitchListener;
 
 import java.io.Closeable;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 
 import static recordgenerator.Names.*;
@@ -22,6 +23,17 @@ public class Util {
         }
     }
 
+    // avro decoder reads bytes into the buffer of a reused record if it is big enough,
+    // so the backing array may be longer than the value, copy only if that happens
+    public static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.limit() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] ret = new byte[buffer.remaining()];
+        buffer.duplicate().get(ret);
+        return ret;
+    }
+
     public static void sleepMS(long value) {
         try {
             Thread.sleep(value);
@@ -1,6 +1,7 @@
 package common;
 
 import java.io.Closeable;
+import java.util.concurrent.ThreadFactory;
 
 import static common.Util.swallowErrorClose;
 
@@ -13,6 +14,11 @@ public class WorkThread<T extends Runnable & Closeable> {
         worker = new Thread(r);
     }
 
+    public WorkThread(T r, ThreadFactory threadFactory) {
+        this.r = r;
+        worker = threadFactory.newThread(r);
+    }
+
     public void start() {
         worker.start();
     }
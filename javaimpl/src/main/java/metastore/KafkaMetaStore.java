@@ -4,6 +4,7 @@ import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetCommitCallback;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.internals.KafkaFutureImpl;
 import org.slf4j.Logger;
@@ -12,6 +13,7 @@ import common.Checkpoint;
 
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
 
@@ -56,6 +58,49 @@ public class KafkaMetaStore implements MetaStore<Checkpoint> {
 
     }
 
+    // offsets of all partitions are committed in one request
+    @Override
+    public KafkaFuture<Void> serializeTo(Map<TopicPartition, Checkpoint> values, String group) {
+        KafkaFutureImpl<Void> ret = new KafkaFutureImpl<>();
+        if (null == kafkaConsumer) {
+            log.warn("KafkaMetaStore: kafka consumer not set, ignore report");
+            ret.complete(null);
+            return ret;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        values.forEach((topicPartition, value) -> offsets.put(topicPartition, new OffsetAndMetadata(value.getOffset(), String.valueOf(value.getTimeStamp()))));
+        kafkaConsumer.commitAsync(offsets, new OffsetCommitCallback() {
+            @Override
+            public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception exception) {
+                if (null != exception) {
+                    log.warn("KafkaMetaStore: Commit offset for group[" + group + "] topicPartitions[" + offsets.keySet() + "] failed cause " + exception.getMessage(), exception);
+                    ret.completeExceptionally(exception);
+                } else {
+                    log.debug("KafkaMetaStore:Commit offset success for group[{}] topicPartitions [{}]", group, offsets.keySet());
+                    ret.complete(null);
+                }
+            }
+        });
+        return ret;
+    }
+
+    // should be called in the thread polling the consumer, e.g. in rebalance listener
+    @Override
+    public void serializeToSync(Map<TopicPartition, Checkpoint> values, String group) {
+        if (null == kafkaConsumer) {
+            log.warn("KafkaMetaStore: kafka consumer not set, ignore report");
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        values.forEach((topicPartition, value) -> offsets.put(topicPartition, new OffsetAndMetadata(value.getOffset(), String.valueOf(value.getTimeStamp()))));
+        try {
+            kafkaConsumer.commitSync(offsets);
+            log.info("KafkaMetaStore: Commit offset success for group[{}] topicPartitions [{}]", group, offsets.keySet());
+        } catch (KafkaException e) {
+            log.warn("KafkaMetaStore: Commit offset for group[" + group + "] topicPartitions[" + offsets.keySet() + "] failed cause " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public Checkpoint deserializeFrom(TopicPartition topicPartition, String group) {
         if (null != kafkaConsumer) {
@@ -3,15 +3,29 @@ package metastore;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import common.Checkpoint;
 import common.AtomicFileStore;
+import common.CheckpointLog;
+import common.WorkThread;
 
+import java.io.Closeable;
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.Future;
 
-public class LocalFileMetaStore implements MetaStore<Checkpoint> {
+/**
+ * Checkpoints of all groups are kept in one CheckpointLog, a store appends the changed checkpoints and the log is synced
+ * to disk every fsyncIntervalMS. Files of the old json format are imported when opened, the json file is kept as [file].json.bak.
+ * In async mode the log is appended by a writer thread, stores made while an append is running are coalesced into the next one,
+ * so caller never waits for disk. Should be closed to sync the last checkpoints.
+ */
+public class LocalFileMetaStore implements MetaStore<Checkpoint>, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(LocalFileMetaStore.class);
     private static final String GROUP_ID_NAME = "groupID";
     private static final String STREAM_CHECKPOINT_NAME = "streamCheckpoint";
     private static final String TOPIC_NAME = "topic";
@@ -30,28 +44,69 @@ public class LocalFileMetaStore implements MetaStore<Checkpoint> {
         }
     }
 
-    private final AtomicFileStore fileStore;
+    private final String fileName;
+    // guarded by writeLock
+    private final CheckpointLog checkpointLog;
+    private final long fsyncIntervalMS;
+    private long lastFsyncMS = System.currentTimeMillis();
+    // guarded by stateLock
     private final Map<String, Map<TopicPartition, Checkpoint>> inMemStore = new HashMap<>();
+    // checkpoints stored but not yet appended, latest of each partition, guarded by stateLock
+    private Map<String, Map<TopicPartition, Checkpoint>> toAppend = new HashMap<>();
+    private final Object stateLock = new Object();
+    // appends are done under writeLock in store order
+    private final Object writeLock = new Object();
+    // version of inMemStore, increased by every store, guarded by stateLock
+    private long version = 0;
+    private long writtenVersion = 0;
+    private final TreeMap<Long, KafkaFutureImpl<Void>> pendingWrites = new TreeMap<>();
+    private boolean closed = false;
+    // null in sync mode
+    private final WorkThread writerThread;
+
     public LocalFileMetaStore(String fileName) {
-        this.fileStore = new AtomicFileStore(fileName);
+        this(fileName, false);
     }
 
-    private String toJson(StoreElement storeElement) {
-        JSONObject jsonObject = new JSONObject();
-        jsonObject.put(GROUP_ID_NAME, storeElement.groupName);
-        JSONArray jsonArray = new JSONArray();
-        storeElement.streamCheckpoint.forEach((tp, checkpoint) -> {
-            JSONObject streamCheckpointJsonObject = new JSONObject();
-            streamCheckpointJsonObject.put(TOPIC_NAME, tp.topic());
-            streamCheckpointJsonObject.put(PARTITION_NAME, tp.partition());
-            streamCheckpointJsonObject.put(OFFSET_NAME, checkpoint.getOffset());
-            streamCheckpointJsonObject.put(TIMESTAMP_NAME, checkpoint.getTimeStamp());
-            streamCheckpointJsonObject.put(INFO_NAME, checkpoint.getInfo());
-            jsonArray.add(streamCheckpointJsonObject);
-        });
+    public LocalFileMetaStore(String fileName, boolean asyncWrite) {
+        this(fileName, asyncWrite, 1000, 1024 * 1024);
+    }
 
-        jsonObject.put(STREAM_CHECKPOINT_NAME, jsonArray);
-        return jsonObject.toJSONString();
+    /**
+     * @param fsyncIntervalMS appended checkpoints are synced to disk at most this late, 0 means sync every append
+     * @param compactBytes the log is compacted when it grows to this size
+     */
+    public LocalFileMetaStore(String fileName, boolean asyncWrite, long fsyncIntervalMS, long compactBytes) {
+        this.fileName = fileName;
+        this.fsyncIntervalMS = fsyncIntervalMS;
+        Map<String, Map<TopicPartition, Checkpoint>> legacy = CheckpointLog.isCheckpointLog(fileName) ? null : loadLegacy();
+        this.checkpointLog = new CheckpointLog(fileName, compactBytes);
+        if (null != legacy) {
+            legacy.forEach(checkpointLog::append);
+            checkpointLog.force();
+        }
+        checkpointLog.getCheckpoints().forEach((k, v) -> inMemStore.put(k, new HashMap<>(v)));
+        if (asyncWrite) {
+            writerThread = new WorkThread(new AsyncWriter());
+            writerThread.start();
+        } else {
+            writerThread = null;
+        }
+    }
+
+    // read checkpoints of the json format, and move the file away for the log
+    private Map<String, Map<TopicPartition, Checkpoint>> loadLegacy() {
+        Map<String, Map<TopicPartition, Checkpoint>> ret = new HashMap<>();
+        for (String line : new AtomicFileStore(fileName).getContent()) {
+            StoreElement storeElement = fromString(line);
+            ret.put(StringUtils.defaultString(storeElement.groupName), storeElement.streamCheckpoint);
+        }
+        File backup = new File(fileName + ".json.bak");
+        if (!new File(fileName).renameTo(backup)) {
+            throw new RuntimeException("LocalFileMetaStore: move json checkpoint file " + fileName + " to " + backup + " failed");
+        }
+        log.info("LocalFileMetaStore: import [{}] groups from json checkpoint file {}, backup to {}", ret.size(), fileName, backup);
+        return ret;
     }
 
     private StoreElement fromString(String jsonString) {
@@ -74,45 +129,136 @@ public class LocalFileMetaStore implements MetaStore<Checkpoint> {
 
     @Override
     public Future<Checkpoint> serializeTo(TopicPartition topicPartition, String groupID, Checkpoint value) {
-        Map<TopicPartition, Checkpoint> topicPartitionCheckpoint = inMemStore.get(groupID);
-        if (null == topicPartitionCheckpoint) {
-            topicPartitionCheckpoint = new HashMap<>();
-        }
-        topicPartitionCheckpoint.put(topicPartition, value);
-        inMemStore.put(groupID, topicPartitionCheckpoint);
-
-        List<String> toSerialize = new LinkedList<>();
-        inMemStore.forEach((k, v) ->{
-            toSerialize.add(toJson(new StoreElement(k, v)));
+        KafkaFutureImpl<Checkpoint> ret = new KafkaFutureImpl<>();
+        serializeTo(Collections.singletonMap(topicPartition, value), groupID).whenComplete((v, e) -> {
+            if (null != e) {
+                ret.completeExceptionally(e);
+            } else {
+                ret.complete(value);
+            }
         });
-        fileStore.updateContent(toSerialize);
-        KafkaFutureImpl ret =  new KafkaFutureImpl<>();
-        ret.complete(value);
         return ret;
     }
 
+    // only the given checkpoints are appended, the future completes after they are appended
     @Override
-    public Checkpoint deserializeFrom(TopicPartition topicPartition, String groupID) {
-        Map<TopicPartition, Checkpoint> tpAndCheckpointMap = inMemStore.get(groupID);
-        if (null != tpAndCheckpointMap) {
-            Checkpoint ret = tpAndCheckpointMap.get(topicPartition);
-            if (null != ret) {
+    public KafkaFuture<Void> serializeTo(Map<TopicPartition, Checkpoint> values, String groupID) {
+        KafkaFutureImpl<Void> ret = new KafkaFutureImpl<>();
+        synchronized (stateLock) {
+            pendingWrites.put(update(values, groupID), ret);
+            if (null != writerThread && !closed) {
+                stateLock.notifyAll();
                 return ret;
-
             }
         }
-        List<String> storedCheckpoint = fileStore.getContent();
-        for (String checkpoint : storedCheckpoint) {
-            StoreElement storeElement = fromString(checkpoint);
-            // add to cache
-            if (!inMemStore.containsKey(storeElement.groupName)) {
-                inMemStore.put(storeElement.groupName, storeElement.streamCheckpoint);
+        writeFile(false);
+        return ret;
+    }
+
+    // return after the checkpoints are synced to disk
+    @Override
+    public void serializeToSync(Map<TopicPartition, Checkpoint> values, String groupID) {
+        synchronized (stateLock) {
+            update(values, groupID);
+        }
+        writeFile(true);
+    }
+
+    // should hold stateLock
+    private long update(Map<TopicPartition, Checkpoint> values, String groupID) {
+        String group = StringUtils.defaultString(groupID);
+        inMemStore.computeIfAbsent(group, k -> new HashMap<>()).putAll(values);
+        toAppend.computeIfAbsent(group, k -> new HashMap<>()).putAll(values);
+        return ++version;
+    }
+
+    // append checkpoints stored since last append, and sync the log if forced or fsyncIntervalMS passed
+    private void writeFile(boolean forceSync) {
+        synchronized (writeLock) {
+            long toWrite;
+            Map<String, Map<TopicPartition, Checkpoint>> values;
+            synchronized (stateLock) {
+                toWrite = version;
+                values = toAppend;
+                toAppend = new HashMap<>();
             }
-            if (StringUtils.equals(storeElement.groupName, groupID)) {
-                return storeElement.streamCheckpoint.get(topicPartition);
+            boolean success = true;
+            try {
+                values.forEach(checkpointLog::append);
+                long now = System.currentTimeMillis();
+                if (forceSync || now - lastFsyncMS >= fsyncIntervalMS) {
+                    checkpointLog.force();
+                    lastFsyncMS = now;
+                }
+            } catch (Exception e) {
+                success = false;
+                log.warn("LocalFileMetaStore: append checkpoints to " + fileName + " failed cause " + e.getMessage(), e);
+            }
+            List<KafkaFutureImpl<Void>> written;
+            synchronized (stateLock) {
+                writtenVersion = Math.max(writtenVersion, toWrite);
+                Map<Long, KafkaFutureImpl<Void>> head = pendingWrites.headMap(toWrite, true);
+                written = new ArrayList<>(head.values());
+                head.clear();
+            }
+            for (KafkaFutureImpl<Void> future : written) {
+                if (success) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(new RuntimeException("LocalFileMetaStore: append checkpoints to " + fileName + " failed"));
+                }
             }
         }
-        return null;
     }
 
+    @Override
+    public Checkpoint deserializeFrom(TopicPartition topicPartition, String groupID) {
+        synchronized (stateLock) {
+            Map<TopicPartition, Checkpoint> tpAndCheckpointMap = inMemStore.get(StringUtils.defaultString(groupID));
+            return null == tpAndCheckpointMap ? null : tpAndCheckpointMap.get(topicPartition);
+        }
+    }
+
+    // append and sync the last checkpoints, then stop the writer thread
+    @Override
+    public void close() {
+        if (null != writerThread) {
+            writerThread.stop();
+        }
+        synchronized (writeLock) {
+            writeFile(true);
+            checkpointLog.close();
+        }
+    }
+
+    private class AsyncWriter implements Runnable, Closeable {
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (stateLock) {
+                    if (version == writtenVersion && !closed) {
+                        try {
+                            // every append is synced if fsyncIntervalMS is 0, so only wait for stores
+                            stateLock.wait(Math.max(fsyncIntervalMS, 0));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                // also syncs appends left unsynced after the interval
+                writeFile(false);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (stateLock) {
+                closed = true;
+                stateLock.notifyAll();
+            }
+        }
+    }
 }
@@ -0,0 +1,294 @@
+package metastore;
+
+import common.Checkpoint;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Checkpoints in a memory mapped file with a fixed slot for every (group, topic partition), a store overwrites the slot in place
+ * and syncs the page to disk, no serialization or file rewrite, for sinks committing after nearly every batch.
+ * Every slot has two copies of the checkpoint with a sequence number, a store writes the older copy, so a torn write
+ * never breaks the last stored checkpoint. Reading takes the valid copy with the greater sequence, the crc of a copy covers its info.
+ * Group and topic should take at most 116 bytes in utf8 together. Info other than the timestamp string is kept inline
+ * for at most 32 bytes, a longer one is truncated at a character boundary.
+ */
+public class MappedMetaStore implements MetaStore<Checkpoint>, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MappedMetaStore.class);
+    private static final int MAGIC = 0x44545346;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 256;
+    // crc(4) partition(4) groupLength(2) topicLength(2) group topic
+    private static final int KEY_SIZE = 128;
+    private static final int MAX_NAME_BYTES = KEY_SIZE - 12;
+    // sequence(8) offset(8) timestamp(8) infoType(1) infoLength(1) pad(2) crc(4) info(32), crc of [0, 28) and info
+    private static final int COPY_SIZE = 64;
+    private static final int MAX_INFO_BYTES = 32;
+    private static final byte INFO_TIMESTAMP = 0;
+    private static final byte INFO_NULL = 1;
+    private static final byte INFO_INLINE = 2;
+
+    private final String fileName;
+    private final int slotNum;
+    private final boolean syncEveryStore;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer mapped;
+    private final CRC32 crc = new CRC32();
+    private final byte[] copyBuffer = new byte[COPY_SIZE];
+    private final Map<String, Map<TopicPartition, Integer>> slots = new HashMap<>();
+    private final Map<String, Map<TopicPartition, Checkpoint>> checkpoints = new HashMap<>();
+    // sequence of the latest copy of every slot
+    private final long[] sequences;
+    private int usedSlotNum = 0;
+    private boolean infoTruncatedLogged = false;
+
+    public MappedMetaStore(String fileName) {
+        this(fileName, 1024, true);
+    }
+
+    /**
+     * @param slotNum max number of (group, topic partition) in the store, not changed once the file is created
+     * @param syncEveryStore if true the page of the slot is synced to disk before store returns
+     */
+    public MappedMetaStore(String fileName, int slotNum, boolean syncEveryStore) {
+        this.fileName = fileName;
+        this.syncEveryStore = syncEveryStore;
+        boolean exists = new File(fileName).length() > 0;
+        try {
+            this.file = new RandomAccessFile(fileName, "rw");
+            if (exists) {
+                file.seek(0);
+                if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+                    throw new RuntimeException("MappedMetaStore: " + fileName + " is not a mapped checkpoint store");
+                }
+                slotNum = file.readInt();
+            }
+            this.slotNum = slotNum;
+            this.mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotNum * SLOT_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException("MappedMetaStore: open " + fileName + " failed cause " + e.getMessage(), e);
+        }
+        this.sequences = new long[slotNum];
+        if (exists) {
+            load();
+        } else {
+            mapped.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slotNum);
+            mapped.force();
+        }
+    }
+
+    private void load() {
+        for (int slot = 0; slot < slotNum; slot++) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            int groupLength = mapped.getShort(base + 8) & 0xFFFF;
+            int topicLength = mapped.getShort(base + 10) & 0xFFFF;
+            if (groupLength + topicLength == 0 && mapped.getInt(base) == 0) {
+                break;
+            }
+            if (groupLength + topicLength > MAX_NAME_BYTES || crcOf(base + 4, 8 + groupLength + topicLength) != mapped.getInt(base)) {
+                // slot is allocated in order, a broken key is the one being allocated when crash
+                log.warn("MappedMetaStore: key of slot [{}] in {} is broken, ignore it and slots after", slot, fileName);
+                break;
+            }
+            String group = readString(base + 12, groupLength);
+            TopicPartition topicPartition = new TopicPartition(readString(base + 12 + groupLength, topicLength), mapped.getInt(base + 4));
+            slots.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, slot);
+            usedSlotNum = slot + 1;
+            Checkpoint checkpoint = null;
+            for (int copy = 0; copy < 2; copy++) {
+                int copyBase = base + KEY_SIZE + copy * COPY_SIZE;
+                long sequence = mapped.getLong(copyBase);
+                int infoLength = mapped.get(copyBase + 25) & 0xFF;
+                if (sequence > sequences[slot] && infoLength <= MAX_INFO_BYTES && copyCrcOf(copyBase, infoLength) == mapped.getInt(copyBase + 28)) {
+                    sequences[slot] = sequence;
+                    checkpoint = readCopy(copyBase, topicPartition);
+                }
+            }
+            if (null != checkpoint) {
+                checkpoints.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, checkpoint);
+            }
+        }
+        log.info("MappedMetaStore: load [{}] slots from {}", usedSlotNum, fileName);
+    }
+
+    private Checkpoint readCopy(int copyBase, TopicPartition topicPartition) {
+        long offset = mapped.getLong(copyBase + 8);
+        long timestamp = mapped.getLong(copyBase + 16);
+        byte infoType = mapped.get(copyBase + 24);
+        String info;
+        if (infoType == INFO_INLINE) {
+            info = readString(copyBase + 32, mapped.get(copyBase + 25) & 0xFF);
+        } else {
+            info = infoType == INFO_NULL ? null : String.valueOf(timestamp);
+        }
+        return new Checkpoint(topicPartition, timestamp, offset, info);
+    }
+
+    @Override
+    public synchronized Future<Checkpoint> serializeTo(TopicPartition topicPartition, String group, Checkpoint value) {
+        write(StringUtils.defaultString(group), topicPartition, value);
+        if (syncEveryStore) {
+            mapped.force();
+        }
+        KafkaFutureImpl<Checkpoint> ret = new KafkaFutureImpl<>();
+        ret.complete(value);
+        return ret;
+    }
+
+    // all slots are written before one sync
+    @Override
+    public synchronized KafkaFuture<Void> serializeTo(Map<TopicPartition, Checkpoint> values, String group) {
+        String groupName = StringUtils.defaultString(group);
+        values.forEach((topicPartition, value) -> write(groupName, topicPartition, value));
+        if (syncEveryStore) {
+            mapped.force();
+        }
+        return KafkaFuture.completedFuture(null);
+    }
+
+    @Override
+    public synchronized void serializeToSync(Map<TopicPartition, Checkpoint> values, String group) {
+        String groupName = StringUtils.defaultString(group);
+        values.forEach((topicPartition, value) -> write(groupName, topicPartition, value));
+        mapped.force();
+    }
+
+    @Override
+    public synchronized Checkpoint deserializeFrom(TopicPartition topicPartition, String group) {
+        Map<TopicPartition, Checkpoint> groupCheckpoints = checkpoints.get(StringUtils.defaultString(group));
+        return null == groupCheckpoints ? null : groupCheckpoints.get(topicPartition);
+    }
+
+    @Override
+    public synchronized void close() {
+        mapped.force();
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("MappedMetaStore: close " + fileName + " failed cause " + e.getMessage());
+        }
+    }
+
+    private void write(String group, TopicPartition topicPartition, Checkpoint value) {
+        int slot = slotOf(group, topicPartition);
+        byte[] info = null;
+        byte infoType = null == value.getInfo() ? INFO_NULL
+                : value.getInfo().equals(String.valueOf(value.getTimeStamp())) ? INFO_TIMESTAMP : INFO_INLINE;
+        if (infoType == INFO_INLINE) {
+            info = truncateInfo(value);
+        }
+        long sequence = sequences[slot] + 1;
+        // the older copy is overwritten
+        int copyBase = HEADER_SIZE + slot * SLOT_SIZE + KEY_SIZE + (int) (sequence & 1) * COPY_SIZE;
+        ByteBuffer copy = ByteBuffer.wrap(copyBuffer);
+        copy.putLong(sequence).putLong(value.getOffset()).putLong(value.getTimeStamp())
+                .put(infoType).put((byte) (null == info ? 0 : info.length)).putShort((short) 0);
+        crc.reset();
+        crc.update(copyBuffer, 0, 28);
+        if (null != info) {
+            crc.update(info);
+        }
+        copy.putInt((int) crc.getValue());
+        if (null != info) {
+            copy.put(info);
+        }
+        for (int i = 0; i < copy.position(); i++) {
+            mapped.put(copyBase + i, copyBuffer[i]);
+        }
+        sequences[slot] = sequence;
+        checkpoints.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, value);
+    }
+
+    // utf8 of info, cut to MAX_INFO_BYTES without splitting a character, the commit still succeeds
+    private byte[] truncateInfo(Checkpoint value) {
+        byte[] info = value.getInfo().getBytes(UTF_8);
+        if (info.length <= MAX_INFO_BYTES) {
+            return info;
+        }
+        int length = MAX_INFO_BYTES;
+        while (length > 0 && (info[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        if (!infoTruncatedLogged) {
+            infoTruncatedLogged = true;
+            log.warn("MappedMetaStore: info of {} is longer than {} bytes, info is truncated in {}", value, MAX_INFO_BYTES, fileName);
+        }
+        return Arrays.copyOf(info, length);
+    }
+
+    private int slotOf(String group, TopicPartition topicPartition) {
+        Integer ret = slots.getOrDefault(group, Collections.emptyMap()).get(topicPartition);
+        if (null != ret) {
+            return ret;
+        }
+        byte[] groupBytes = group.getBytes(UTF_8);
+        byte[] topicBytes = topicPartition.topic().getBytes(UTF_8);
+        if (groupBytes.length + topicBytes.length > MAX_NAME_BYTES) {
+            throw new RuntimeException("MappedMetaStore: group [" + group + "] and topic [" + topicPartition.topic()
+                    + "] are longer than " + MAX_NAME_BYTES + " bytes");
+        }
+        if (usedSlotNum >= slotNum) {
+            throw new RuntimeException("MappedMetaStore: all [" + slotNum + "] slots of " + fileName + " are used");
+        }
+        int slot = usedSlotNum++;
+        int base = HEADER_SIZE + slot * SLOT_SIZE;
+        mapped.putInt(base + 4, topicPartition.partition());
+        mapped.putShort(base + 8, (short) groupBytes.length);
+        mapped.putShort(base + 10, (short) topicBytes.length);
+        for (int i = 0; i < groupBytes.length; i++) {
+            mapped.put(base + 12 + i, groupBytes[i]);
+        }
+        for (int i = 0; i < topicBytes.length; i++) {
+            mapped.put(base + 12 + groupBytes.length + i, topicBytes[i]);
+        }
+        mapped.putInt(base, crcOf(base + 4, 8 + groupBytes.length + topicBytes.length));
+        slots.computeIfAbsent(group, k -> new HashMap<>()).put(topicPartition, slot);
+        return slot;
+    }
+
+    private int copyCrcOf(int copyBase, int infoLength) {
+        ByteBuffer bytes = mapped.duplicate();
+        bytes.limit(copyBase + 28).position(copyBase);
+        crc.reset();
+        crc.update(bytes);
+        bytes.limit(copyBase + 32 + infoLength).position(copyBase + 32);
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private int crcOf(int position, int length) {
+        ByteBuffer bytes = mapped.duplicate();
+        bytes.limit(position + length).position(position);
+        crc.reset();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mapped.get(position + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
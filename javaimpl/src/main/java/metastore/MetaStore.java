@@ -1,10 +1,23 @@
 package metastore;
 
+import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.TopicPartition;
 
+import java.util.Map;
 import java.util.concurrent.Future;
 
 public interface MetaStore<V> {
     Future<V> serializeTo(TopicPartition topicPartition, String group, V value);
     V deserializeFrom(TopicPartition topicPartition, String group);
+
+    // store values of several partitions, stores should override it to persist them in one write and complete the future after persisted
+    default KafkaFuture<Void> serializeTo(Map<TopicPartition, V> values, String group) {
+        values.forEach((topicPartition, value) -> serializeTo(topicPartition, group, value));
+        return KafkaFuture.completedFuture(null);
+    }
+
+    // store values of several partitions and return after they are persisted
+    default void serializeToSync(Map<TopicPartition, V> values, String group) {
+        serializeTo(values, group);
+    }
 }
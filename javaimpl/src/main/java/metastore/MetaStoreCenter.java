@@ -1,37 +1,194 @@
 package metastore;
 
+import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import common.Checkpoint;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Dispatch checkpoints to all registered stores, safe to be called by several threads.
+ * Checkpoints of a partition are handed to stores in call order under the lock of its stripe, so commits of partitions
+ * in different stripes run in parallel. A store registered again with the same name replaces the old one and keeps its stats.
+ * Commit count, failures and latency from dispatch to persisted are kept for every store.
+ */
 public class MetaStoreCenter {
     private static final Logger log = LoggerFactory.getLogger(MetaStoreCenter.class);
-    private final Map<String, MetaStore<Checkpoint>> registeredStore = new HashMap<>();
+    private static final String METRICS_GROUP = "checkpoint-store";
+    private final Map<String, StoreEntry> registeredStore = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+    // null if metrics are not reported
+    private final Metrics metrics;
+
     public MetaStoreCenter() {
+        this(null, 16);
+    }
 
+    /**
+     * @param metrics per store metrics are registered to it if not null
+     * @param stripeNum number of partition locks
+     */
+    public MetaStoreCenter(Metrics metrics, int stripeNum) {
+        this.metrics = metrics;
+        this.stripes = new ReentrantLock[Math.max(1, stripeNum)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
     }
 
     public void registerStore(String name, MetaStore metaStore) {
         log.info("MetaStoreCenter: register metaStore {}", name);
-        registeredStore.put(name, metaStore);
+        registeredStore.compute(name, (k, old) -> new StoreEntry(name, metaStore, null == old ? new StoreStats(name) : old.stats));
     }
 
     public void store(TopicPartition topicPartition, String group, Checkpoint value) {
-        registeredStore.values().forEach(v -> {
-            v.serializeTo(topicPartition, group, value);
-        });
+        store(Collections.singletonMap(topicPartition, value), group);
+    }
+
+    // checkpoints of several partitions, each store persists them in one write, the future completes after all stores persisted them
+    public KafkaFuture<Void> store(Map<TopicPartition, Checkpoint> checkpoints, String group) {
+        List<ReentrantLock> locks = lockStripes(checkpoints.keySet());
+        try {
+            List<KafkaFuture<Void>> futures = new ArrayList<>();
+            for (StoreEntry entry : registeredStore.values()) {
+                futures.add(entry.serializeTo(checkpoints, group));
+            }
+            return futures.isEmpty() ? KafkaFuture.completedFuture(null) : KafkaFuture.allOf(futures.toArray(new KafkaFuture[0]));
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
+    }
+
+    // used when partitions are revoked, checkpoints are persisted by all stores when return
+    public void storeSync(Map<TopicPartition, Checkpoint> checkpoints, String group) {
+        List<ReentrantLock> locks = lockStripes(checkpoints.keySet());
+        try {
+            for (StoreEntry entry : registeredStore.values()) {
+                entry.serializeToSync(checkpoints, group);
+            }
+        } finally {
+            locks.forEach(ReentrantLock::unlock);
+        }
     }
 
     public Checkpoint seek(String storeName, TopicPartition tp, String group) {
-        MetaStore<Checkpoint> metaStore = registeredStore.get(storeName);
-        if (null != metaStore) {
-            return metaStore.deserializeFrom(tp, group);
+        StoreEntry entry = registeredStore.get(storeName);
+        if (null != entry) {
+            return entry.metaStore.deserializeFrom(tp, group);
         } else {
             return null;
         }
     }
+
+    // stats of registered stores by name
+    public Map<String, StoreStats> getStoreStats() {
+        Map<String, StoreStats> ret = new LinkedHashMap<>();
+        registeredStore.forEach((name, entry) -> ret.put(name, entry.stats));
+        return ret;
+    }
+
+    // locks are taken in stripe order, so two multi partition commits never wait for each other
+    private List<ReentrantLock> lockStripes(Iterable<TopicPartition> topicPartitions) {
+        TreeMap<Integer, ReentrantLock> toLock = new TreeMap<>();
+        for (TopicPartition topicPartition : topicPartitions) {
+            int index = (topicPartition.hashCode() & Integer.MAX_VALUE) % stripes.length;
+            toLock.put(index, stripes[index]);
+        }
+        List<ReentrantLock> ret = new ArrayList<>(toLock.values());
+        ret.forEach(ReentrantLock::lock);
+        return ret;
+    }
+
+    private static class StoreEntry {
+        final String name;
+        final MetaStore<Checkpoint> metaStore;
+        final StoreStats stats;
+
+        StoreEntry(String name, MetaStore<Checkpoint> metaStore, StoreStats stats) {
+            this.name = name;
+            this.metaStore = metaStore;
+            this.stats = stats;
+        }
+
+        KafkaFuture<Void> serializeTo(Map<TopicPartition, Checkpoint> checkpoints, String group) {
+            long startMS = System.currentTimeMillis();
+            KafkaFuture<Void> future;
+            try {
+                future = metaStore.serializeTo(checkpoints, group);
+            } catch (Exception e) {
+                log.warn("MetaStoreCenter: store checkpoints to " + name + " failed cause " + e.getMessage(), e);
+                stats.onCompleted(startMS, false);
+                KafkaFutureImpl<Void> failed = new KafkaFutureImpl<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            future.whenComplete((v, e) -> stats.onCompleted(startMS, null == e));
+            return future;
+        }
+
+        void serializeToSync(Map<TopicPartition, Checkpoint> checkpoints, String group) {
+            long startMS = System.currentTimeMillis();
+            boolean success = false;
+            try {
+                metaStore.serializeToSync(checkpoints, group);
+                success = true;
+            } finally {
+                stats.onCompleted(startMS, success);
+            }
+        }
+    }
+
+    public class StoreStats {
+        private final AtomicLong commitCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final Sensor latencySensor;
+
+        private StoreStats(String name) {
+            if (null == metrics) {
+                latencySensor = null;
+                return;
+            }
+            Map<String, String> tags = Collections.singletonMap("store", name);
+            metrics.addMetric(metrics.metricName("commits-total", METRICS_GROUP, "commits finished by store", tags),
+                    (config, now) -> commitCount.get());
+            metrics.addMetric(metrics.metricName("commit-failed-total", METRICS_GROUP, "commits failed by store", tags),
+                    (config, now) -> failedCount.get());
+            latencySensor = metrics.sensor("checkpoint-store-latency-" + name);
+            latencySensor.add(metrics.metricName("commit-latency-avg-ms", METRICS_GROUP, "average time for store to persist a commit", tags), new Avg());
+            latencySensor.add(metrics.metricName("commit-latency-max-ms", METRICS_GROUP, "max time for store to persist a commit", tags), new Max());
+        }
+
+        private void onCompleted(long startMS, boolean success) {
+            commitCount.incrementAndGet();
+            if (!success) {
+                failedCount.incrementAndGet();
+            }
+            if (null != latencySensor) {
+                latencySensor.record(System.currentTimeMillis() - startMS);
+            }
+        }
+
+        public long getCommitCount() {
+            return commitCount.get();
+        }
+
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+    }
 }
@@ -12,7 +12,6 @@ import common.Checkpoint;
 
 import java.io.Closeable;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import static recordgenerator.Names.*;
@@ -31,13 +30,68 @@ public abstract class ConsumerWrap implements Closeable {
     // this can delay offset commit until the record is really consumed by business logic which can strongly defend the data loss.
     public abstract void subscribeTopic(TopicPartition topicPartition, Supplier<Checkpoint> streamCheckpoint);
 
+    // assign all given partitions at once and seek each of them by its checkpoint
+    public void assignTopics(Map<TopicPartition, Checkpoint> checkpoints) {
+        if (checkpoints.size() != 1) {
+            throw new RuntimeException("ConsumerWrap: " + getClass().getSimpleName() + " can only assign one partition");
+        }
+        Map.Entry<TopicPartition, Checkpoint> entry = checkpoints.entrySet().iterator().next();
+        assignTopic(entry.getKey(), entry.getValue());
+    }
+
+    // subscribe all given topics in consumer group, rebalanceListener is called in poll when partitions move between consumers
+    public void subscribeTopics(Collection<String> topics, RebalanceListener rebalanceListener) {
+        throw new RuntimeException("ConsumerWrap: " + getClass().getSimpleName() + " does not support subscribe with rebalance listener");
+    }
+
+    /**
+     * Called in the thread calling poll, so the consumer can be used to commit offsets and seek.
+     */
+    public interface RebalanceListener {
+        // partitions are taken away after return, records of them should be finished and committed before
+        void onPartitionsRevoked(Collection<TopicPartition> partitions);
+
+        // fetch position of the partitions should be set before return
+        void onPartitionsAssigned(Collection<TopicPartition> partitions);
+    }
+
 
     public abstract ConsumerRecords<byte[], byte[]> poll();
 
+    // poll with the given timeout instead of the configured one
+    public ConsumerRecords<byte[], byte[]> poll(long timeoutMS) {
+        return poll();
+    }
+
     public abstract KafkaConsumer getRawConsumer();
 
+    // stop fetching from given partitions, poll should still be called while paused so that consumer stays alive in group
+    public void pause(Collection<TopicPartition> partitions) {
+        getRawConsumer().pause(partitions);
+    }
+
+    public void resume(Collection<TopicPartition> partitions) {
+        getRawConsumer().resume(partitions);
+    }
+
+    public Set<TopicPartition> assignment() {
+        return getRawConsumer().assignment();
+    }
+
+    public Map<TopicPartition, Long> endOffsets(Collection<TopicPartition> partitions) {
+        return getRawConsumer().endOffsets(partitions);
+    }
+
+    public long position(TopicPartition topicPartition) {
+        return getRawConsumer().position(topicPartition);
+    }
+
+    // next record fetched from the partition is the one at offset
+    public void seek(TopicPartition topicPartition, long offset) {
+        getRawConsumer().seek(topicPartition, offset);
+    }
+
     public static class DefaultConsumerWrap extends ConsumerWrap {
-        private AtomicBoolean firstStart = new AtomicBoolean(true);
         private KafkaConsumer<byte[], byte[]> consumer;
         private final long poolTimeOut;
 
@@ -68,41 +122,75 @@ public abstract class ConsumerWrap implements Closeable {
 
         @Override
         public void assignTopic(TopicPartition topicPartition, Checkpoint checkpoint) {
-            consumer.assign(Arrays.asList(topicPartition));
-            log.info("RecordGenerator:  assigned for {} with checkpoint {}", topicPartition, checkpoint);
-            setFetchOffsetByTimestamp(topicPartition, checkpoint);
+            assignTopics(Collections.singletonMap(topicPartition, checkpoint));
         }
 
+        @Override
+        public void assignTopics(Map<TopicPartition, Checkpoint> checkpoints) {
+            consumer.assign(checkpoints.keySet());
+            // look up offsets of all partitions in one request
+            Map<TopicPartition, Long> timestamps = new HashMap<>();
+            checkpoints.forEach((tp, checkpoint) -> timestamps.put(tp, checkpoint.getTimeStamp()));
+            Map<TopicPartition, OffsetAndTimestamp> remoteOffsets = consumer.offsetsForTimes(timestamps);
+            for (Map.Entry<TopicPartition, Checkpoint> entry : checkpoints.entrySet()) {
+                OffsetAndTimestamp toSet = remoteOffsets.get(entry.getKey());
+                if (null == toSet) {
+                    throw new RuntimeException("RecordGenerator:seek timestamp for topic [" + entry.getKey() + "] with timestamp [" + entry.getValue().getTimeStamp() + "] failed");
+                }
+                consumer.seek(entry.getKey(), toSet.offset());
+                log.info("RecordGenerator:  assigned for {} with checkpoint {}", entry.getKey(), entry.getValue());
+            }
+        }
 
-        //Not test, please not use this function
+
+        // partition is seeked by the checkpoint the first time it is assigned, later it continues from the committed group offset
         @Override
         public void subscribeTopic(TopicPartition topicPartition, Supplier<Checkpoint> streamCheckpoint) {
-            consumer.subscribe(Arrays.asList(topicPartition.topic()), new ConsumerRebalanceListener() {
+            Set<TopicPartition> seekedPartitions = new HashSet<>();
+            subscribeTopics(Arrays.asList(topicPartition.topic()), new RebalanceListener() {
                 @Override
                 public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
-                    log.info("RecordGenerator: partition revoked for [{}]", StringUtils.join(partitions, ","));
                 }
 
                 @Override
                 public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-                    log.info("RecordGenerator: partition assigned for [{}]", StringUtils.join(partitions, ","));
-                    if (partitions.contains(topicPartition)) {
-                        if (firstStart.compareAndSet(true, false)) {
+                    for (TopicPartition tp : partitions) {
+                        if (seekedPartitions.add(tp)) {
                             Checkpoint toSet = streamCheckpoint.get();
-                            setFetchOffsetByTimestamp(topicPartition, toSet);
-                            log.info("RecordGenerator:  subscribe for [{}] with checkpoint [{}] first start", topicPartition, toSet);
-                        } else {
-                            log.info("RecordGenerator:  subscribe for [{}]  reassign, do nothing", topicPartition);
+                            setFetchOffsetByTimestamp(tp, toSet);
+                            log.info("RecordGenerator:  subscribe for [{}] with checkpoint [{}] first start", tp, toSet);
                         }
                     }
                 }
             });
         }
 
+        @Override
+        public void subscribeTopics(Collection<String> topics, RebalanceListener rebalanceListener) {
+            consumer.subscribe(topics, new ConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    log.info("RecordGenerator: partition revoked for [{}]", StringUtils.join(partitions, ","));
+                    rebalanceListener.onPartitionsRevoked(partitions);
+                }
+
+                @Override
+                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                    log.info("RecordGenerator: partition assigned for [{}]", StringUtils.join(partitions, ","));
+                    rebalanceListener.onPartitionsAssigned(partitions);
+                }
+            });
+        }
+
         public ConsumerRecords<byte[], byte[]> poll() {
             return consumer.poll(poolTimeOut);
         }
 
+        @Override
+        public ConsumerRecords<byte[], byte[]> poll(long timeoutMS) {
+            return consumer.poll(timeoutMS);
+        }
+
         @Override
         public KafkaConsumer getRawConsumer() {
             return consumer;
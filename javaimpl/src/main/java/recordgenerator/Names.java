@@ -6,6 +6,44 @@ public class Names {
     public static final String TRY_BACK_TIME_MS = "stream.tryBackTimeMS";
     public static final String RETRY_TIME_OUT = "stream.errorRetryTimeOut";
     public static final String POLL_TIME_OUT = "stream.pool.timeout";
+    public static final String POLL_ADAPTIVE = "stream.poll.adaptive";
+    public static final String POLL_MIN_TIME_OUT_MS = "stream.poll.minTimeoutMS";
+    public static final String POLL_PREFETCH_MS = "stream.poll.prefetchMS";
+    // record processor control
+    public static final String PROCESSOR_THREAD_NUM = "stream.processor.threads";
+    public static final String PROCESSOR_SHARD_BY = "stream.processor.shardBy";
+    public static final String PROCESSOR_SHARD_QUEUE_SIZE = "stream.processor.shardQueueSize";
+    public static final String PROCESSOR_MAX_IN_FLIGHT = "stream.processor.maxInFlight";
+    public static final String PROCESSOR_HANDOFF = "stream.processor.handoff";
+    public static final String PROCESSOR_QUEUE_MAX_RECORDS = "stream.processor.queue.maxRecords";
+    public static final String PROCESSOR_QUEUE_MAX_BYTES = "stream.processor.queue.maxBytes";
+    public static final String PROCESSOR_QUEUE_BATCH_SIZE = "stream.processor.queue.batchSize";
+    public static final String PROCESSOR_REUSE_RECORD = "stream.processor.reuseRecord";
+    public static final String PROCESSOR_LAZY_DECODE = "stream.processor.lazyDecode";
+    public static final String PROCESSOR_PROJECTION_PREFIX = "stream.processor.projection.";
+    public static final String PROCESSOR_COMMIT_MODE = "stream.processor.commitMode";
+    public static final String PROCESSOR_TRANSACTION_MAX_RECORDS = "stream.processor.transaction.maxRecords";
+    public static final String PROCESSOR_BATCH_MAX_RECORDS = "stream.processor.batch.maxRecords";
+    public static final String PROCESSOR_BATCH_MAX_BYTES = "stream.processor.batch.maxBytes";
+    public static final String PROCESSOR_BATCH_LINGER_MS = "stream.processor.batch.lingerMS";
+    public static final String PROCESSOR_LISTENER_FAN_OUT = "stream.processor.listenerFanOut";
+    public static final String PROCESSOR_LISTENER_QUEUE_SIZE = "stream.processor.listenerQueueSize";
+    public static final String PROCESSOR_THREAD_MODE = "stream.processor.threadMode";
+    public static final String FILTER_INCLUDE_TABLES = "stream.filter.includeTables";
+    public static final String FILTER_EXCLUDE_TABLES = "stream.filter.excludeTables";
+    public static final String FILTER_EXCLUDE_OPERATIONS = "stream.filter.excludeOperations";
+    public static final String PROCESSOR_MAX_BUFFERED_BYTES = "stream.processor.maxBufferedBytes";
+    public static final String PROCESSOR_RESUME_BUFFERED_BYTES = "stream.processor.resumeBufferedBytes";
+    public static final String PARTITION_MAX_PENDING_BATCHES = "stream.partition.maxPendingBatches";
+    public static final String OFFER_MAX_BLOCK_MS = "stream.offer.maxBlockMS";
+    public static final String PARTITION_LAG_REFRESH_MS = "stream.partition.lagRefreshMS";
+    public static final String REBALANCE_DRAIN_TIMEOUT_MS = "stream.rebalance.drainTimeoutMS";
+    public static final String COMMIT_INTERVAL_MS = "stream.commit.intervalMS";
+    public static final String COMMIT_MAX_RECORDS = "stream.commit.maxRecords";
+    public static final String CHECKPOINT_FSYNC_INTERVAL_MS = "stream.checkpoint.fsyncIntervalMS";
+    public static final String CHECKPOINT_COMPACT_BYTES = "stream.checkpoint.compactBytes";
+    public static final String CHECKPOINT_LOCAL_STORE = "stream.checkpoint.localStore";
+    public static final String CHECKPOINT_MAPPED_SLOTS = "stream.checkpoint.mappedSlots";
     // general name
     public static final String KAFKA_TOPIC = "kafkaTopic";
     public static final String KAFKA_BROKER_URL_NAME = "broker";
@@ -0,0 +1,110 @@
+package recordgenerator;
+
+/**
+ * Tune poll timeout and prefetch depth of RecordGenerator by how fast processor drains records.
+ * While catching up (a poll returns a full batch, or partitions lag behind counting records polled but not yet offered), each partition may prefetch the records
+ * processor drains in [prefetchMS], between 1 and [maxPendingBatches] batches, and poll waits at most [minTimeoutMS].
+ * The depth is halved while processor queue is nearly full, records prefetched then would only wait longer.
+ * When caught up, a partition keeps one batch pending, and poll timeout doubles after every empty poll up to [maxTimeoutMS],
+ * it drops back to [minTimeoutMS] as soon as records arrive or checkpoints wait to be committed by poll thread.
+ * Not thread safe, used by generator thread, getters may be read by metrics.
+ */
+public class PollController {
+    private static final long RATE_WINDOW_MS = 1000;
+    private static final double FULL_OCCUPANCY = 0.9;
+    private final long minTimeoutMS;
+    private final long maxTimeoutMS;
+    private final int maxPendingBatches;
+    private final int batchSize;
+    private final long prefetchMS;
+    private volatile long pollTimeoutMS;
+    private volatile int pendingBatchLimit;
+    // records drained by processor per second, moving average of rate windows
+    private volatile double drainRate = 0;
+    private volatile boolean catchingUp = false;
+    // records not yet fetched of all partitions, last refreshed from broker
+    private long lag = 0;
+    private long windowStartMS = -1;
+    private long windowStartQueued = 0;
+    private long windowOffered = 0;
+
+    public PollController(long minTimeoutMS, long maxTimeoutMS, int maxPendingBatches, int batchSize, long prefetchMS) {
+        this.minTimeoutMS = minTimeoutMS;
+        this.maxTimeoutMS = Math.max(minTimeoutMS, maxTimeoutMS);
+        this.maxPendingBatches = Math.max(1, maxPendingBatches);
+        this.batchSize = Math.max(1, batchSize);
+        this.prefetchMS = prefetchMS;
+        this.pollTimeoutMS = minTimeoutMS;
+        this.pendingBatchLimit = this.maxPendingBatches;
+    }
+
+    /**
+     * @param pendingRecords     records polled before but not yet offered to processor, poll does not wait while there are any,
+     *                           so a poll returning few records then does not mean partitions caught up
+     * @param checkpointsWaiting true if checkpoints are to be committed, kafka commits also complete in poll
+     */
+    public void onPoll(int recordNum, long pendingRecords, boolean checkpointsWaiting) {
+        catchingUp = recordNum >= batchSize || lag + pendingRecords >= batchSize;
+        if (recordNum > 0 || catchingUp || checkpointsWaiting) {
+            pollTimeoutMS = minTimeoutMS;
+        } else {
+            pollTimeoutMS = Math.min(maxTimeoutMS, Math.max(1, pollTimeoutMS) * 2);
+        }
+    }
+
+    public void onOffered(int recordNum) {
+        windowOffered += recordNum;
+    }
+
+    public void setLag(long lag) {
+        this.lag = lag;
+    }
+
+    /**
+     * Called every round, drain rate is measured every second from records offered and processor queue growth.
+     */
+    public void update(long nowMS, long queuedRecords, double queueOccupancy, int partitionNum) {
+        if (windowStartMS < 0) {
+            windowStartMS = nowMS;
+            windowStartQueued = queuedRecords;
+            return;
+        }
+        if (nowMS - windowStartMS < RATE_WINDOW_MS) {
+            return;
+        }
+        long drained = Math.max(0, windowOffered - (queuedRecords - windowStartQueued));
+        double rate = drained * 1000.0 / (nowMS - windowStartMS);
+        drainRate = drainRate == 0 ? rate : (drainRate + rate) / 2;
+        windowStartMS = nowMS;
+        windowStartQueued = queuedRecords;
+        windowOffered = 0;
+
+        if (!catchingUp) {
+            pendingBatchLimit = 1;
+            return;
+        }
+        long target = (long) Math.ceil(drainRate * prefetchMS / 1000 / batchSize / Math.max(1, partitionNum));
+        int limit = (int) Math.max(1, Math.min(maxPendingBatches, target));
+        if (queueOccupancy >= FULL_OCCUPANCY) {
+            limit = Math.max(1, Math.min(limit, pendingBatchLimit / 2));
+        }
+        pendingBatchLimit = limit;
+    }
+
+    public long getPollTimeoutMS() {
+        return pollTimeoutMS;
+    }
+
+    // batches a partition may keep pending before it is paused
+    public int getPendingBatchLimit() {
+        return pendingBatchLimit;
+    }
+
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+    public boolean isCatchingUp() {
+        return catchingUp;
+    }
+}
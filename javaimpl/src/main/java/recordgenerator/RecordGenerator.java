@@ -4,17 +4,44 @@ import metastore.KafkaMetaStore;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordprocessor.EtlRecordProcessor;
+import recordprocessor.RecordFilter;
+import recordprocessor.RecordHeader;
+import recordprocessor.SkippedRecords;
 import metastore.LocalFileMetaStore;
+import metastore.MappedMetaStore;
+import metastore.MetaStore;
 import metastore.MetaStoreCenter;
 import common.Checkpoint;
 import common.Context;
+import common.MemoryBudget;
 
 import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -22,38 +49,136 @@ import static recordgenerator.Names.*;
 import static common.Util.sleepMS;
 import static common.Util.swallowErrorClose;
 
+/**
+ * Fetch records of all configured topic partitions with one consumer and hand them to record processor.
+ * Polled records are kept in a queue of each partition and handed over round robin, a partition whose queue grows
+ * over [stream.partition.maxPendingBatches] is paused alone, so a hot partition can not starve the others.
+ * A full processor queue is waited at most [stream.offer.maxBlockMS] before the next poll, so the consumer stays alive
+ * and prefetches the next batches of other partitions while the current ones are handed over.
+ * With [stream.poll.adaptive], poll timeout and the pending batches of a partition are tuned by PollController.
+ * Checkpoints are committed per partition, a new commit is not started until the last one is persisted by all stores,
+ * checkpoints set meanwhile are coalesced to the latest one of each partition.
+ * In subscribe mode, records of a revoked partition are drained and its checkpoint is committed synchronously before
+ * the partition moves to another consumer, and an assigned partition starts from the freshest of local and kafka checkpoint.
+ */
 public class RecordGenerator implements Runnable, Closeable {
     private static final Logger log = LoggerFactory.getLogger(RecordGenerator.class);
+    private static final String METRICS_GROUP = "record-generator";
     private static final String LOCAL_FILE_STORE_NAME = "localCheckpointStore";
+    private static final String LOCAL_MAPPED_STORE_NAME = "localCheckpointSlots";
     private static final String KAFKA_STORE_NAME = "kafkaCheckpointStore";
     private final Properties properties;
     private final int tryTime;
     private final Context context;
-    private final TopicPartition topicPartition;
+    // partitions to assign in assign mode, their topics are subscribed in subscribe mode
+    private final List<TopicPartition> topicPartitions;
     private final String groupID;
     private final ConsumerWrapFactory consumerWrapFactory;
     private final Checkpoint initialCheckpoint;
-    private volatile Checkpoint toCommitCheckpoint = null;
-    private final MetaStoreCenter metaStoreCenter = new MetaStoreCenter();
+    private final Map<TopicPartition, Checkpoint> toCommitCheckpoints = new ConcurrentHashMap<>();
+    private final MetaStoreCenter metaStoreCenter;
+    private final MetaStore<Checkpoint> localMetaStore;
+    // commit started but not yet persisted by all stores
+    private KafkaFuture<Void> commitInFlight = null;
+    private volatile long coalescedCount = 0;
+    private volatile long commitFailedCount = 0;
+    private Sensor commitLatencySensor;
     private final AtomicBoolean useCheckpointConfig;
     private final ConsumerSubscribeMode subscribeMode;
     private final long tryBackTimeMS;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final long lagRefreshIntervalMS;
+    private final long drainTimeoutMS;
+    private long lastLagRefreshMS = 0;
+    private final RecordFilter recordFilter;
+    private volatile long filteredCount = 0;
+    // records polled but not yet handed to processor, by partition in the order partitions are first seen
+    private final Map<TopicPartition, PartitionState> partitionStates = new ConcurrentHashMap<>();
+    private final List<PartitionState> offerOrder = new ArrayList<>();
+    private int nextOfferIndex = 0;
+    private int pendingBatchNum = 0;
+    private final long maxOfferBlockMS;
+    // 0 if the last offer succeeded
+    private long offerBlockedSinceMS = 0;
+    private volatile long offerBlockedTotalNS = 0;
+    private Sensor pollLatencySensor;
+    private Sensor pollRecordsSensor;
+    // null if poll is not adaptive
+    private final PollController pollController;
+    private volatile boolean paused = false;
+    private volatile long pauseStartMS = 0;
+    private volatile long pausedTotalMS = 0;
     private volatile boolean existed;
 
     public RecordGenerator(Properties properties, Context context, Checkpoint initialCheckpoint, ConsumerWrapFactory consumerWrapFactory) {
         this.properties = properties;
         this.tryTime = Integer.valueOf(properties.getProperty(TRY_TIME, "150"));
         this.tryBackTimeMS = Long.valueOf(properties.getProperty(TRY_BACK_TIME_MS, "10000"));
+        this.batchSize = Integer.valueOf(properties.getProperty(PROCESSOR_QUEUE_BATCH_SIZE, "256"));
+        this.maxPendingBatches = Integer.valueOf(properties.getProperty(PARTITION_MAX_PENDING_BATCHES, "4"));
+        this.lagRefreshIntervalMS = Long.valueOf(properties.getProperty(PARTITION_LAG_REFRESH_MS, "10000"));
+        this.drainTimeoutMS = Long.valueOf(properties.getProperty(REBALANCE_DRAIN_TIMEOUT_MS, "30000"));
+        this.maxOfferBlockMS = Long.valueOf(properties.getProperty(OFFER_MAX_BLOCK_MS, "100"));
+        this.pollController = StringUtils.equalsIgnoreCase("true", properties.getProperty(POLL_ADAPTIVE, "false"))
+                ? new PollController(Long.valueOf(properties.getProperty(POLL_MIN_TIME_OUT_MS, "10")),
+                Long.valueOf(properties.getProperty(POLL_TIME_OUT, "500")), maxPendingBatches, batchSize,
+                Long.valueOf(properties.getProperty(POLL_PREFETCH_MS, "1000")))
+                : null;
+        this.recordFilter = RecordFilter.fromProperties(properties);
         this.context = context;
         this.consumerWrapFactory = consumerWrapFactory;
         this.initialCheckpoint = initialCheckpoint;
-        this.topicPartition = new TopicPartition(properties.getProperty(KAFKA_TOPIC), 0);
+        this.topicPartitions = parseTopicPartitions(properties.getProperty(KAFKA_TOPIC));
         this.groupID = properties.getProperty(GROUP_NAME);
         this.subscribeMode = parseConsumerSubscribeMode(properties.getProperty(SUBSCRIBE_MODE_NAME, "assign"));
         this.useCheckpointConfig = new AtomicBoolean(StringUtils.equalsIgnoreCase(properties.getProperty(USE_CONFIG_CHECKPOINT_NAME), "true"));
         existed = false;
-        metaStoreCenter.registerStore(composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID), new LocalFileMetaStore(composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID)));
-        log.info("RecordGenerator: try time [" + tryTime + "], try backTimeMS [" + tryBackTimeMS + "]");
+        this.metaStoreCenter = new MetaStoreCenter(null == context ? null : context.getMetrics(), 16);
+        this.localMetaStore = createLocalMetaStore(properties, groupID);
+        metaStoreCenter.registerStore(composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID), localMetaStore);
+        registerMetrics();
+        log.info("RecordGenerator: try time [" + tryTime + "], try backTimeMS [" + tryBackTimeMS + "], topic partitions [" + StringUtils.join(topicPartitions, ",") + "]");
+    }
+
+    // a mapped store is synced in place by every commit, a log store is written by its own thread, never by poll thread
+    private MetaStore<Checkpoint> createLocalMetaStore(Properties properties, String groupID) {
+        String type = properties.getProperty(CHECKPOINT_LOCAL_STORE, "log");
+        if (StringUtils.equalsIgnoreCase(type, "mapped")) {
+            return new MappedMetaStore(composeLocalFileStoreName(LOCAL_MAPPED_STORE_NAME, groupID),
+                    Integer.valueOf(properties.getProperty(CHECKPOINT_MAPPED_SLOTS, "1024")), true);
+        }
+        if (!StringUtils.equalsIgnoreCase(type, "log")) {
+            throw new RuntimeException("RecordGenerator: unknown local checkpoint store " + type + ", should be log or mapped");
+        }
+        return new LocalFileMetaStore(composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID), true,
+                Long.valueOf(properties.getProperty(CHECKPOINT_FSYNC_INTERVAL_MS, "1000")),
+                Long.valueOf(properties.getProperty(CHECKPOINT_COMPACT_BYTES, "1048576")));
+    }
+
+    /**
+     * Comma separated topics, [topic:partition] for a given partition of the topic, partition 0 if omitted.
+     * e.g. topicA,topicB:0,topicB:1
+     */
+    public static List<TopicPartition> parseTopicPartitions(String value) {
+        Set<TopicPartition> ret = new LinkedHashSet<>();
+        for (String topicAndPartition : StringUtils.split(StringUtils.defaultString(value), ',')) {
+            topicAndPartition = topicAndPartition.trim();
+            if (topicAndPartition.isEmpty()) {
+                continue;
+            }
+            int index = topicAndPartition.lastIndexOf(':');
+            try {
+                ret.add(index < 0 ? new TopicPartition(topicAndPartition, 0)
+                        : new TopicPartition(topicAndPartition.substring(0, index), Integer.parseInt(topicAndPartition.substring(index + 1))));
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("RecordGenerator: invalid topic partition [" + topicAndPartition + "]");
+            }
+        }
+        if (ret.isEmpty()) {
+            throw new RuntimeException("RecordGenerator: no topic to consume in [" + value + "]");
+        }
+        return new ArrayList<>(ret);
     }
 
     private String composeLocalFileStoreName(String prefix, String sid) {
@@ -74,23 +199,68 @@ public class RecordGenerator implements Runnable, Closeable {
             EtlRecordProcessor recordProcessor = context.getRecordProcessor();
             try {
                 kafkaConsumerWrap = getConsumerWrap(message);
+                MemoryBudget memoryBudget = recordProcessor.getMemoryBudget();
                 while (!existed) {
                     // kafka consumer is not threadsafe, so if you want commit checkpoint to kafka, commit it in same thread
-                    mayCommitCheckpoint();
-                    ConsumerRecords<byte[], byte[]> records = kafkaConsumerWrap.poll();
-                    for (ConsumerRecord<byte[], byte[]> record : records) {
-                        int offerTryCount = 0;
-                        if (record.value() == null || record.value().length <= 2) {
-                            // dStore may generate special mock record to push up consumer offset for next fetchRequest if all data is filtered
-                            continue;
-                        }
-                        while (!recordProcessor.offer(1000, TimeUnit.MILLISECONDS, record) && !existed) {
-                            if (++offerTryCount % 10 == 0) {
-                                log.info("RecordGenerator: offer record has failed for a period (10s) [ " + record + "]");
+                    mayCommitCheckpoint(kafkaConsumerWrap);
+                    offerPendingBatches(recordProcessor);
+                    if (null != pollController) {
+                        pollController.update(System.currentTimeMillis(), recordProcessor.getQueuedRecords(),
+                                recordProcessor.getQueueOccupancy(), offerOrder.size());
+                    }
+                    mayPauseOrResume(kafkaConsumerWrap, memoryBudget);
+                    mayRefreshLag(kafkaConsumerWrap);
+                    // processor is full if batches are still pending, the offer of next round waits for it instead of poll
+                    long pollStartNS = System.nanoTime();
+                    ConsumerRecords<byte[], byte[]> records = pendingBatchNum > 0 ? kafkaConsumerWrap.poll(0)
+                            : null != pollController ? kafkaConsumerWrap.poll(pollController.getPollTimeoutMS()) : kafkaConsumerWrap.poll();
+                    recordPoll(pollStartNS, records.count());
+                    if (null != pollController) {
+                        pollController.onPoll(records.count(), pendingRecordNum(),
+                                !toCommitCheckpoints.isEmpty() || (null != commitInFlight && !commitInFlight.isDone()));
+                    }
+                    for (TopicPartition topicPartition : records.partitions()) {
+                        PartitionState partitionState = getPartitionState(topicPartition);
+                        List<ConsumerRecord<byte[], byte[]>> partitionRecords = records.records(topicPartition);
+                        List<ConsumerRecord<byte[], byte[]>> batch = new ArrayList<>(Math.min(batchSize, partitionRecords.size()));
+                        // the last record dropped by filter since the last accepted one, -1 if none
+                        long skippedOffset = -1;
+                        long skippedTimestamp = 0;
+                        for (ConsumerRecord<byte[], byte[]> record : partitionRecords) {
+                            partitionState.fetchedOffset = record.offset() + 1;
+                            if (record.value() == null || record.value().length <= 2) {
+                                // dStore may generate special mock record to push up consumer offset for next fetchRequest if all data is filtered
+                                continue;
+                            }
+                            // drop records no listener wants before they are deserialized or take room in queue
+                            if (recordFilter.isEnabled()) {
+                                RecordHeader header = RecordHeader.parse(record.value());
+                                if (!recordFilter.accept(header.getObjectName(), header.getOperation())) {
+                                    filteredCount++;
+                                    skippedOffset = record.offset();
+                                    skippedTimestamp = header.getSourceTimestamp();
+                                    continue;
+                                }
+                            }
+                            skippedOffset = -1;
+                            memoryBudget.acquire(MemoryBudget.valueBytes(record));
+                            batch.add(record);
+                            partitionState.acceptedOffset = record.offset();
+                            if (batch.size() >= batchSize) {
+                                addPendingBatch(partitionState, batch);
+                                batch = new ArrayList<>(batchSize);
                             }
                         }
+                        // records accepted later commit over the dropped ones, otherwise they are skipped by a marker
+                        if (skippedOffset >= 0) {
+                            batch.add(new SkippedRecords(topicPartition.topic(), topicPartition.partition(), skippedOffset,
+                                    skippedTimestamp, partitionState.acceptedOffset));
+                        }
+                        if (!batch.isEmpty()) {
+                            addPendingBatch(partitionState, batch);
+                        }
                     }
-
+                    mayPauseBackloggedPartitions(kafkaConsumerWrap);
                 }
             } catch (Throwable e) {
                 if (isErrorRecoverable(e) && haveTryTime++ < tryTime) {
@@ -102,52 +272,368 @@ public class RecordGenerator implements Runnable, Closeable {
                     this.existed = true;
                 }
             } finally {
+                if (existed && null != kafkaConsumerWrap) {
+                    flushCheckpoints(kafkaConsumerWrap);
+                }
+                commitInFlight = null;
                 swallowErrorClose(kafkaConsumerWrap);
+                // the new consumer fetches from checkpoint again, so records not handed to processor can be dropped
+                dropPendingBatches(recordProcessor);
+                endPause();
+            }
+        }
+        swallowErrorClose((Closeable) localMetaStore);
+    }
+
+    // commit the last checkpoints synchronously before consumer is closed
+    private void flushCheckpoints(ConsumerWrap consumerWrap) {
+        try {
+            Map<TopicPartition, Checkpoint> toCommit = takeToCommitCheckpoints(consumerWrap);
+            if (!toCommit.isEmpty()) {
+                metaStoreCenter.storeSync(toCommit, groupID);
+                log.info("RecordGenerator: commit checkpoints [{}] before exit", StringUtils.join(toCommit.values(), ","));
+            }
+        } catch (Exception e) {
+            log.warn("RecordGenerator: commit checkpoints before exit failed cause " + e.getMessage(), e);
+        }
+    }
+
+    private PartitionState getPartitionState(TopicPartition topicPartition) {
+        PartitionState ret = partitionStates.get(topicPartition);
+        if (null == ret) {
+            ret = new PartitionState(topicPartition);
+            partitionStates.put(topicPartition, ret);
+            offerOrder.add(ret);
+            registerPartitionMetrics(ret);
+        }
+        return ret;
+    }
+
+    // forget a revoked partition, its records polled but not handed to processor are fetched again by the new owner
+    private void removePartitionState(TopicPartition topicPartition, EtlRecordProcessor recordProcessor) {
+        PartitionState partitionState = partitionStates.remove(topicPartition);
+        if (null == partitionState) {
+            return;
+        }
+        for (List<ConsumerRecord<byte[], byte[]>> batch : partitionState.pendingBatches) {
+            for (ConsumerRecord<byte[], byte[]> record : batch) {
+                recordProcessor.getMemoryBudget().release(MemoryBudget.valueBytes(record));
+            }
+        }
+        pendingBatchNum -= partitionState.pendingBatches.size();
+        offerOrder.remove(partitionState);
+        nextOfferIndex = 0;
+        if (null != context) {
+            for (MetricName metricName : partitionState.metricNames) {
+                context.getMetrics().removeMetric(metricName);
+            }
+        }
+    }
+
+    private void addPendingBatch(PartitionState partitionState, List<ConsumerRecord<byte[], byte[]>> batch) {
+        partitionState.pendingBatches.addLast(batch);
+        partitionState.pendingRecords += batch.size();
+        pendingBatchNum++;
+    }
+
+    private long pendingRecordNum() {
+        if (0 == pendingBatchNum) {
+            return 0;
+        }
+        long ret = 0;
+        for (PartitionState partitionState : offerOrder) {
+            ret += partitionState.pendingRecords;
+        }
+        return ret;
+    }
+
+    // the next partition with pending batches after the one offered last time
+    private PartitionState nextPendingPartition() {
+        for (int i = 0; i < offerOrder.size(); i++) {
+            PartitionState partitionState = offerOrder.get((nextOfferIndex + i) % offerOrder.size());
+            if (!partitionState.pendingBatches.isEmpty()) {
+                nextOfferIndex = (nextOfferIndex + i + 1) % offerOrder.size();
+                return partitionState;
+            }
+        }
+        return null;
+    }
+
+    // hand pending batches to processor round robin by partition, batches of one partition in order.
+    // the batch is owned by processor after offered so never reuse it.
+    // wait at most [maxOfferBlockMS] in a round so that poll is still called in time while processor is slow
+    private void offerPendingBatches(EtlRecordProcessor recordProcessor) {
+        long startMS = System.currentTimeMillis();
+        PartitionState partitionState = null;
+        while (pendingBatchNum > 0 && !existed) {
+            if (null == partitionState) {
+                partitionState = nextPendingPartition();
+            }
+            List<ConsumerRecord<byte[], byte[]>> batch = partitionState.pendingBatches.peekFirst();
+            long offerStartNS = System.nanoTime();
+            boolean offered = recordProcessor.offer(Math.max(0, startMS + maxOfferBlockMS - System.currentTimeMillis()), TimeUnit.MILLISECONDS, batch);
+            offerBlockedTotalNS += System.nanoTime() - offerStartNS;
+            if (offered) {
+                if (null != pollController) {
+                    pollController.onOffered(batch.size());
+                }
+                partitionState.pendingBatches.pollFirst();
+                partitionState.pendingRecords -= batch.size();
+                pendingBatchNum--;
+                partitionState = null;
+                offerBlockedSinceMS = 0;
+                continue;
+            }
+            long now = System.currentTimeMillis();
+            if (0 == offerBlockedSinceMS) {
+                offerBlockedSinceMS = now;
+            } else if (now - offerBlockedSinceMS >= 10000) {
+                log.info("RecordGenerator: offer [" + batch.size() + "] records has failed for a period (10s), first record [ " + batch.get(0) + "]");
+                offerBlockedSinceMS = now;
+            }
+            return;
+        }
+    }
+
+    private void recordPoll(long pollStartNS, int recordNum) {
+        if (null != pollLatencySensor) {
+            pollLatencySensor.record((System.nanoTime() - pollStartNS) / 1000000.0);
+            pollRecordsSensor.record(recordNum);
+        }
+    }
+
+    private void dropPendingBatches(EtlRecordProcessor recordProcessor) {
+        for (PartitionState partitionState : offerOrder) {
+            for (List<ConsumerRecord<byte[], byte[]>> batch : partitionState.pendingBatches) {
+                for (ConsumerRecord<byte[], byte[]> record : batch) {
+                    recordProcessor.getMemoryBudget().release(MemoryBudget.valueBytes(record));
+                }
+            }
+            partitionState.pendingBatches.clear();
+            partitionState.pendingRecords = 0;
+            partitionState.backlogPaused = false;
+            partitionState.fetchedOffset = -1;
+        }
+        pendingBatchNum = 0;
+        offerBlockedSinceMS = 0;
+    }
+
+    // pause a partition whose pending batches exceed the limit, resume it after half of them are handed to processor
+    private void mayPauseBackloggedPartitions(ConsumerWrap consumerWrap) {
+        int maxPendingBatches = null == pollController ? this.maxPendingBatches : pollController.getPendingBatchLimit();
+        List<TopicPartition> toPause = new ArrayList<>();
+        List<TopicPartition> toResume = new ArrayList<>();
+        Set<TopicPartition> assignment = consumerWrap.assignment();
+        for (PartitionState partitionState : offerOrder) {
+            if (!assignment.contains(partitionState.topicPartition)) {
+                continue;
+            }
+            int pending = partitionState.pendingBatches.size();
+            if (!partitionState.backlogPaused && pending > maxPendingBatches) {
+                partitionState.backlogPaused = true;
+                toPause.add(partitionState.topicPartition);
+            } else if (partitionState.backlogPaused && pending <= maxPendingBatches / 2) {
+                partitionState.backlogPaused = false;
+                toResume.add(partitionState.topicPartition);
             }
         }
+        if (!toPause.isEmpty()) {
+            log.debug("RecordGenerator: pause backlogged partitions [{}]", StringUtils.join(toPause, ","));
+            consumerWrap.pause(toPause);
+        }
+        if (!toResume.isEmpty() && !paused) {
+            consumerWrap.resume(toResume);
+        }
+    }
+
+    // pause all assigned partitions when buffered bytes exceed the budget, resume them after buffered bytes drain.
+    // pause is reapplied in every round because partitions newly assigned by rebalance are not paused
+    private void mayPauseOrResume(ConsumerWrap consumerWrap, MemoryBudget memoryBudget) {
+        boolean shouldPause = paused ? !memoryBudget.canResume() : memoryBudget.isExhausted();
+        if (shouldPause) {
+            if (!paused) {
+                pauseStartMS = System.currentTimeMillis();
+                paused = true;
+                log.info("RecordGenerator: buffered bytes [{}] exceed budget [{}], pause partitions [{}]",
+                        memoryBudget.getUsedBytes(), memoryBudget.getMaxBytes(), StringUtils.join(consumerWrap.assignment(), ","));
+            }
+            consumerWrap.pause(consumerWrap.assignment());
+        } else if (paused) {
+            // backlogged partitions stay paused until their batches are handed over
+            Set<TopicPartition> toResume = new HashSet<>(consumerWrap.assignment());
+            for (PartitionState partitionState : offerOrder) {
+                if (partitionState.backlogPaused) {
+                    toResume.remove(partitionState.topicPartition);
+                }
+            }
+            consumerWrap.resume(toResume);
+            long pausedMS = endPause();
+            log.info("RecordGenerator: buffered bytes drain to [{}], resume partitions after paused [{}] ms",
+                    memoryBudget.getUsedBytes(), pausedMS);
+        }
+    }
+
+    private long endPause() {
+        if (!paused) {
+            return 0;
+        }
+        long pausedMS = System.currentTimeMillis() - pauseStartMS;
+        pausedTotalMS += pausedMS;
+        paused = false;
+        return pausedMS;
+    }
+
+    // log end offsets are fetched from broker every [stream.partition.lagRefreshMS]
+    private void mayRefreshLag(ConsumerWrap consumerWrap) {
+        long now = System.currentTimeMillis();
+        if (lagRefreshIntervalMS <= 0 || now - lastLagRefreshMS < lagRefreshIntervalMS) {
+            return;
+        }
+        lastLagRefreshMS = now;
+        try {
+            Set<TopicPartition> assignment = consumerWrap.assignment();
+            if (assignment.isEmpty()) {
+                return;
+            }
+            Map<TopicPartition, Long> endOffsets = consumerWrap.endOffsets(assignment);
+            long lag = 0;
+            for (TopicPartition topicPartition : assignment) {
+                PartitionState partitionState = getPartitionState(topicPartition);
+                Long endOffset = endOffsets.get(topicPartition);
+                if (null != endOffset) {
+                    partitionState.endOffset = endOffset;
+                }
+                if (partitionState.fetchedOffset < 0) {
+                    partitionState.fetchedOffset = consumerWrap.position(topicPartition);
+                }
+                if (partitionState.endOffset >= 0) {
+                    lag += Math.max(0, partitionState.endOffset - partitionState.fetchedOffset);
+                }
+            }
+            if (null != pollController) {
+                pollController.setLag(lag);
+            }
+        } catch (Exception e) {
+            log.warn("RecordGenerator: refresh partition lag failed cause " + e.getMessage());
+        }
+    }
+
+    private void registerMetrics() {
+        if (null == context) {
+            return;
+        }
+        Metrics metrics = context.getMetrics();
+        metrics.addMetric(metrics.metricName("paused", METRICS_GROUP,
+                "1 if partitions are paused because buffered bytes exceed the budget"), (config, now) -> paused ? 1 : 0);
+        metrics.addMetric(metrics.metricName("pause-time-total-ms", METRICS_GROUP,
+                "total time partitions are paused"), (config, now) -> pausedTotalMS + (paused ? now - pauseStartMS : 0));
+        metrics.addMetric(metrics.metricName("offer-blocked-time-total-ms", METRICS_GROUP,
+                "total time generator waits for room in processor queue"), (config, now) -> offerBlockedTotalNS / 1000000);
+        pollLatencySensor = metrics.sensor("generator-poll-latency");
+        pollLatencySensor.add(metrics.metricName("poll-latency-avg-ms", METRICS_GROUP, "average time of a poll"), new Avg());
+        pollLatencySensor.add(metrics.metricName("poll-latency-max-ms", METRICS_GROUP, "max time of a poll"), new Max());
+        pollRecordsSensor = metrics.sensor("generator-poll-records");
+        pollRecordsSensor.add(metrics.metricName("poll-records-avg", METRICS_GROUP, "average records returned by a poll"), new Avg());
+        pollRecordsSensor.add(metrics.metricName("poll-records-max", METRICS_GROUP, "max records returned by a poll"), new Max());
+        if (null != pollController) {
+            metrics.addMetric(metrics.metricName("poll-timeout-ms", METRICS_GROUP,
+                    "poll timeout chosen by adaptive poll"), (config, now) -> pollController.getPollTimeoutMS());
+            metrics.addMetric(metrics.metricName("pending-batch-limit", METRICS_GROUP,
+                    "batches a partition may keep pending before paused, chosen by adaptive poll"), (config, now) -> pollController.getPendingBatchLimit());
+            metrics.addMetric(metrics.metricName("drain-rate", METRICS_GROUP,
+                    "records drained by processor per second, measured by adaptive poll"), (config, now) -> pollController.getDrainRate());
+            metrics.addMetric(metrics.metricName("catching-up", METRICS_GROUP,
+                    "1 if adaptive poll sees partitions behind"), (config, now) -> pollController.isCatchingUp() ? 1 : 0);
+        }
+        metrics.addMetric(metrics.metricName("filtered-records-total", METRICS_GROUP,
+                "records dropped by stream.filter before deserialization"), (config, now) -> filteredCount);
+        metrics.addMetric(metrics.metricName("checkpoints-coalesced-total", METRICS_GROUP,
+                "checkpoints replaced by a later one of the same partition before committed"), (config, now) -> coalescedCount);
+        metrics.addMetric(metrics.metricName("commit-failed-total", METRICS_GROUP,
+                "commits failed by any checkpoint store"), (config, now) -> commitFailedCount);
+        // time from a commit started to persisted by all stores, kafka commit completes in a later poll
+        commitLatencySensor = metrics.sensor("checkpoint-commit-latency");
+        commitLatencySensor.add(metrics.metricName("commit-latency-avg-ms", METRICS_GROUP, "average commit latency"), new Avg());
+        commitLatencySensor.add(metrics.metricName("commit-latency-max-ms", METRICS_GROUP, "max commit latency"), new Max());
+        commitLatencySensor.add(new Percentiles(4000, 10000, Percentiles.BucketSizing.LINEAR,
+                new Percentile(metrics.metricName("commit-latency-p50-ms", METRICS_GROUP, "median commit latency"), 50),
+                new Percentile(metrics.metricName("commit-latency-p99-ms", METRICS_GROUP, "99th percentile commit latency"), 99)));
+    }
+
+    // lag gauges of a partition, tagged by topic and partition, NaN until the log end offset is known
+    private void registerPartitionMetrics(PartitionState partitionState) {
+        if (null == context) {
+            return;
+        }
+        Metrics metrics = context.getMetrics();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("topic", partitionState.topicPartition.topic());
+        tags.put("partition", String.valueOf(partitionState.topicPartition.partition()));
+        List<MetricName> metricNames = partitionState.metricNames;
+        metricNames.add(metrics.metricName("records-lag", METRICS_GROUP, "records in partition not yet fetched", tags));
+        metrics.addMetric(metricNames.get(0),
+                (config, now) -> partitionState.endOffset < 0 || partitionState.fetchedOffset < 0 ? Double.NaN
+                        : Math.max(0, partitionState.endOffset - partitionState.fetchedOffset));
+        metricNames.add(metrics.metricName("commit-lag", METRICS_GROUP, "records in partition after the last committed record", tags));
+        metrics.addMetric(metricNames.get(1),
+                (config, now) -> partitionState.endOffset < 0 || partitionState.committedOffset < 0 ? Double.NaN
+                        : Math.max(0, partitionState.endOffset - 1 - partitionState.committedOffset));
+        metricNames.add(metrics.metricName("pending-records", METRICS_GROUP, "records of partition polled but not yet handed to processor", tags));
+        metrics.addMetric(metricNames.get(2), (config, now) -> partitionState.pendingRecords);
+        metricNames.add(metrics.metricName("backlog-paused", METRICS_GROUP, "1 if partition is paused because too many of its records are pending", tags));
+        metrics.addMetric(metricNames.get(3), (config, now) -> partitionState.backlogPaused ? 1 : 0);
+    }
 
+    private void mayCommitCheckpoint(ConsumerWrap consumerWrap) {
+        if (toCommitCheckpoints.isEmpty() || (null != commitInFlight && !commitInFlight.isDone())) {
+            return;
+        }
+        commitCheckpoints(takeToCommitCheckpoints(consumerWrap));
     }
 
-    private void mayCommitCheckpoint() {
-        if (null != toCommitCheckpoint) {
-            commitCheckpoint(toCommitCheckpoint.getTopicPartition(), toCommitCheckpoint);
-            toCommitCheckpoint = null;
+    private Map<TopicPartition, Checkpoint> takeToCommitCheckpoints(ConsumerWrap consumerWrap) {
+        // in subscribe mode, never overwrite the checkpoint of a partition owned by another consumer now
+        Set<TopicPartition> assignment = subscribeMode == ConsumerSubscribeMode.SUBSCRIBE ? consumerWrap.assignment() : null;
+        Map<TopicPartition, Checkpoint> ret = new HashMap<>();
+        for (TopicPartition topicPartition : toCommitCheckpoints.keySet()) {
+            Checkpoint checkpoint = toCommitCheckpoints.remove(topicPartition);
+            if (null != checkpoint && (null == assignment || assignment.contains(topicPartition))) {
+                ret.put(topicPartition, checkpoint);
+            }
         }
+        return ret;
     }
 
+    // only the latest checkpoint of each partition is committed, should be called by one thread
     public void setToCommitCheckpoint(Checkpoint committedCheckpoint) {
-        this.toCommitCheckpoint = committedCheckpoint;
+        if (null != committedCheckpoint.getTopicPartition()
+                && null != toCommitCheckpoints.put(committedCheckpoint.getTopicPartition(), committedCheckpoint)) {
+            coalescedCount++;
+        }
     }
 
     private ConsumerWrap getConsumerWrap(String message) {
         ConsumerWrap kafkaConsumerWrap = getConsumerWrap();
-        Checkpoint checkpoint = null;
         metaStoreCenter.registerStore(KAFKA_STORE_NAME, new KafkaMetaStore(kafkaConsumerWrap.getRawConsumer()));
-        if (useCheckpointConfig.compareAndSet(true, false)) {
-            log.info("RecordGenerator: force use initial checkpoint [{}] to start", checkpoint);
-            checkpoint = initialCheckpoint;
-        } else {
-            checkpoint = getCheckpoint();
-            if (null == checkpoint || Checkpoint.INVALID_STREAM_CHECKPOINT == checkpoint) {
-                checkpoint = initialCheckpoint;
-                log.info("RecordGenerator: use initial checkpoint [{}] to start", checkpoint);
-            } else {
-                log.info("RecordGenerator: load checkpoint from checkpoint store success, current checkpoint [{}]", checkpoint);
-            }
+        boolean forceInitialCheckpoint = useCheckpointConfig.compareAndSet(true, false);
+        if (forceInitialCheckpoint) {
+            log.info("RecordGenerator: force use initial checkpoint [{}] to start", initialCheckpoint);
         }
         switch (subscribeMode) {
             case SUBSCRIBE: {
-                kafkaConsumerWrap.subscribeTopic(topicPartition, () -> {
-                    Checkpoint ret = metaStoreCenter.seek(KAFKA_STORE_NAME, topicPartition, groupID);
-                    if (null == ret) {
-                        ret = initialCheckpoint;
-                    }
-                    return ret;
-                });
+                Set<String> topics = new LinkedHashSet<>();
+                for (TopicPartition topicPartition : topicPartitions) {
+                    topics.add(topicPartition.topic());
+                }
+                kafkaConsumerWrap.subscribeTopics(topics, new PartitionHandoff(kafkaConsumerWrap, forceInitialCheckpoint));
                 break;
             }
             case ASSIGN:{
-                kafkaConsumerWrap.assignTopic(topicPartition, checkpoint);
+                Map<TopicPartition, Checkpoint> checkpoints = new LinkedHashMap<>();
+                for (TopicPartition topicPartition : topicPartitions) {
+                    checkpoints.put(topicPartition, forceInitialCheckpoint ? initialCheckpoint : getCheckpoint(topicPartition));
+                }
+                kafkaConsumerWrap.assignTopics(checkpoints);
                 break;
             }
             default: {
@@ -155,24 +641,63 @@ public class RecordGenerator implements Runnable, Closeable {
             }
         }
 
-        log.info("RecordGenerator:" + message + ", checkpoint " + checkpoint);
+        log.info("RecordGenerator:" + message + ", topic partitions [" + StringUtils.join(topicPartitions, ",") + "]");
         return kafkaConsumerWrap;
     }
 
-    private Checkpoint getCheckpoint() {
+    private Checkpoint getCheckpoint(TopicPartition topicPartition) {
         // use local checkpoint priority
         Checkpoint checkpoint = metaStoreCenter.seek(composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID), topicPartition, groupID);
         if (null == checkpoint) {
             checkpoint = metaStoreCenter.seek(KAFKA_STORE_NAME, topicPartition, groupID);
         }
+        if (null == checkpoint || Checkpoint.INVALID_STREAM_CHECKPOINT == checkpoint) {
+            log.info("RecordGenerator: use initial checkpoint [{}] to start {}", initialCheckpoint, topicPartition);
+            return initialCheckpoint;
+        }
+        log.info("RecordGenerator: load checkpoint from checkpoint store success, current checkpoint [{}]", checkpoint);
         return checkpoint;
+    }
 
+    // the one with greater offset of local and kafka checkpoint, null if neither is valid
+    private Checkpoint getFreshestCheckpoint(TopicPartition topicPartition) {
+        Checkpoint ret = null;
+        for (String storeName : new String[]{composeLocalFileStoreName(LOCAL_FILE_STORE_NAME, groupID), KAFKA_STORE_NAME}) {
+            Checkpoint checkpoint = metaStoreCenter.seek(storeName, topicPartition, groupID);
+            log.info("RecordGenerator: checkpoint of {} in store [{}] is {}", topicPartition, storeName, checkpoint);
+            if (null != checkpoint && checkpoint.getOffset() >= 0 && (null == ret || checkpoint.getOffset() > ret.getOffset())) {
+                ret = checkpoint;
+            }
+        }
+        return ret;
     }
 
     public void commitCheckpoint(TopicPartition topicPartition, Checkpoint checkpoint) {
         if (null != topicPartition && null != checkpoint) {
-            metaStoreCenter.store(topicPartition, groupID, checkpoint);
+            commitCheckpoints(Collections.singletonMap(topicPartition, checkpoint));
+        }
+    }
+
+    // checkpoints of all partitions are written to every store at once
+    private void commitCheckpoints(Map<TopicPartition, Checkpoint> checkpoints) {
+        if (checkpoints.isEmpty()) {
+            return;
         }
+        long startNS = System.nanoTime();
+        commitInFlight = metaStoreCenter.store(checkpoints, groupID);
+        commitInFlight.whenComplete((v, e) -> {
+            if (null != e) {
+                commitFailedCount++;
+            } else if (null != commitLatencySensor) {
+                commitLatencySensor.record((System.nanoTime() - startNS) / 1000000.0);
+            }
+        });
+        checkpoints.forEach((topicPartition, checkpoint) -> {
+            PartitionState partitionState = partitionStates.get(topicPartition);
+            if (null != partitionState) {
+                partitionState.committedOffset = checkpoint.getOffset();
+            }
+        });
     }
 
     private boolean isErrorRecoverable(Throwable e) {
@@ -187,6 +712,76 @@ public class RecordGenerator implements Runnable, Closeable {
         existed = true;
     }
 
+    /**
+     * Partitions move between consumers of the group in rebalance, which is called in poll of generator thread.
+     * Revoked partitions are committed at the checkpoint of the last record processed, and the new owner seeks
+     * right after it, so records are not consumed twice unless drain timeout.
+     * If the initial checkpoint is forced, partitions of the first assignment start from it whatever is stored,
+     * partitions assigned by later rebalances continue from the stored checkpoint left by the previous owner.
+     */
+    private class PartitionHandoff implements ConsumerWrap.RebalanceListener {
+        private final ConsumerWrap consumerWrap;
+        private boolean forceInitialCheckpoint;
+
+        PartitionHandoff(ConsumerWrap consumerWrap, boolean forceInitialCheckpoint) {
+            this.consumerWrap = consumerWrap;
+            this.forceInitialCheckpoint = forceInitialCheckpoint;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            EtlRecordProcessor recordProcessor = context.getRecordProcessor();
+            for (TopicPartition topicPartition : partitions) {
+                removePartitionState(topicPartition, recordProcessor);
+                // checkpoint of the drained records below is the latest
+                toCommitCheckpoints.remove(topicPartition);
+            }
+            long startMS = System.currentTimeMillis();
+            Map<TopicPartition, Checkpoint> checkpoints = recordProcessor.drain(partitions, drainTimeoutMS);
+            if (!checkpoints.isEmpty()) {
+                metaStoreCenter.storeSync(checkpoints, groupID);
+            }
+            log.info("RecordGenerator: drain and commit revoked partitions cost [{}] ms, checkpoints [{}]",
+                    System.currentTimeMillis() - startMS, StringUtils.join(checkpoints.values(), ","));
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            boolean force = forceInitialCheckpoint;
+            forceInitialCheckpoint = false;
+            for (TopicPartition topicPartition : partitions) {
+                Checkpoint checkpoint = force ? null : getFreshestCheckpoint(topicPartition);
+                if (null != checkpoint) {
+                    // checkpoint is the offset of the last record processed
+                    consumerWrap.seek(topicPartition, checkpoint.getOffset() + 1);
+                    log.info("RecordGenerator: assigned {}, seek to offset [{}] after checkpoint {}", topicPartition, checkpoint.getOffset() + 1, checkpoint);
+                } else {
+                    consumerWrap.setFetchOffsetByTimestamp(topicPartition, initialCheckpoint);
+                    log.info("RecordGenerator: assigned {}, use initial checkpoint [{}] to start", topicPartition, initialCheckpoint);
+                }
+            }
+        }
+    }
+
+    private static class PartitionState {
+        final TopicPartition topicPartition;
+        final List<MetricName> metricNames = new ArrayList<>();
+        final Deque<List<ConsumerRecord<byte[], byte[]>>> pendingBatches = new ArrayDeque<>();
+        // written by generator thread, read by metrics
+        volatile long pendingRecords = 0;
+        volatile boolean backlogPaused = false;
+        // offset of the next record to fetch, -1 if unknown
+        volatile long fetchedOffset = -1;
+        // the last record accepted by filter and added to pending batches, -1 if none
+        long acceptedOffset = -1;
+        volatile long committedOffset = -1;
+        volatile long endOffset = -1;
+
+        PartitionState(TopicPartition topicPartition) {
+            this.topicPartition = topicPartition;
+        }
+    }
+
     private static enum ConsumerSubscribeMode {
         ASSIGN,
         SUBSCRIBE,
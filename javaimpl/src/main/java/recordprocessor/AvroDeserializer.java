@@ -1,27 +1,53 @@
 package recordprocessor;
 
 import com.alibaba.dts.formats.avro.Record;
-import org.apache.avro.io.Decoder;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+/**
+ * The decoder is reused between calls, so one deserializer should only be used by one thread.
+ * If a record pool is given, records are read into idle records borrowed from the pool.
+ * If a column projection is given, records are decoded lazily as LazyRecord and the record pool is not used.
+ */
 public class AvroDeserializer {
     private static final Logger log = LoggerFactory.getLogger(AvroDeserializer.class);
 
     private final SpecificDatumReader<Record> reader = new SpecificDatumReader<Record>(com.alibaba.dts.formats.avro.Record.class);
+    private final RecordPool recordPool;
+    private final ColumnProjection lazyProjection;
+    private BinaryDecoder decoder;
 
     public AvroDeserializer() {
+        this(null, null);
+    }
+
+    public AvroDeserializer(RecordPool recordPool) {
+        this(recordPool, null);
+    }
+
+    public AvroDeserializer(RecordPool recordPool, ColumnProjection lazyProjection) {
+        this.recordPool = recordPool;
+        this.lazyProjection = lazyProjection;
     }
 
     public com.alibaba.dts.formats.avro.Record deserialize(byte[] data) {
+        if (null != lazyProjection) {
+            return new LazyRecord(data, lazyProjection);
+        }
+        return deserialize(data, null == recordPool ? null : recordPool.borrow());
+    }
+
+    // read into [reuse] if it is not null, the returned record may be [reuse] itself
+    public com.alibaba.dts.formats.avro.Record deserialize(byte[] data, Record reuse) {
 
-        Decoder decoder = DecoderFactory.get().binaryDecoder(data, null);
+        decoder = DecoderFactory.get().binaryDecoder(data, decoder);
         Record payload = null;
         try {
-            payload = reader.read(null, decoder);
+            payload = reader.read(reuse, decoder);
             return payload;
         }catch (Throwable ex) {
             log.error("AvroDeserializer: deserialize record failed cause " + ex.getMessage(), ex);
@@ -0,0 +1,254 @@
+package recordprocessor;
+
+import common.Checkpoint;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Track records dispatched from one topic partition and compute the checkpoint which is safe to commit.
+ * Records are registered to lanes in offset order, every lane consumes its records sequentially and
+ * commits cumulatively: commit offset X in a lane means all records of that lane with offset <= X are finished.
+ * The completed checkpoint is the watermark, the highest offset that all records before it are finished.
+ * With only one lane the last commit is always the watermark, so dispatched records are not remembered, unless acks are tracked.
+ * A record registered with pending acks (one for each AsyncRecordListener) is finished only after its lane commits it
+ * and all acks arrive, acks may come in any order, the watermark only advances over records finished contiguously.
+ * Records handed to processor and records processed are also counted, so that the partition can be drained before it is revoked.
+ * In transaction commit mode, records of an open transaction are buffered by processor, the partition is drained
+ * once records before the transaction are committed.
+ * Records dropped by filter are skipped as finished records, in sequential mode the skip waits until the record offered
+ * before it is committed.
+ */
+public class CheckpointTracker {
+    private final TopicPartition topicPartition;
+    private final boolean sequential;
+    private final ArrayDeque<Entry> entries;
+    private final ArrayDeque<Entry>[] laneEntries;
+    private Checkpoint completedCheckpoint;
+    private Checkpoint reportedCheckpoint;
+    // sequential mode only, a skip applied once the completed checkpoint reaches pendingSkipAfter
+    private Checkpoint pendingSkip;
+    private long pendingSkipAfter = -1;
+    // written by generator thread only
+    private volatile long offeredNum = 0;
+    private volatile long lastOfferedOffset = -1;
+    private final AtomicLong processedNum = new AtomicLong(0);
+    // written by processor thread only
+    private volatile boolean inTransaction = false;
+    private volatile long bufferedNum = 0;
+    private volatile long boundaryOffset = -1;
+
+    public CheckpointTracker(TopicPartition topicPartition, int laneNum) {
+        this(topicPartition, laneNum, false);
+    }
+
+    /**
+     * @param trackAcks true if records may be registered with pending acks, so records are remembered even with one lane
+     */
+    public CheckpointTracker(TopicPartition topicPartition, int laneNum, boolean trackAcks) {
+        this.topicPartition = topicPartition;
+        this.sequential = laneNum <= 1 && !trackAcks;
+        this.entries = new ArrayDeque<>();
+        this.laneEntries = new ArrayDeque[Math.max(laneNum, 1)];
+        for (int i = 0; i < laneEntries.length; i++) {
+            laneEntries[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * register a record to given lane, should be called in offset order
+     * @return the tracked entry, null if this tracker is sequential
+     */
+    public Entry register(int lane, long offset) {
+        return register(lane, offset, 0);
+    }
+
+    // the record is not finished until ack is called pendingAcks times
+    public synchronized Entry register(int lane, long offset, int pendingAcks) {
+        if (sequential) {
+            return null;
+        }
+        Entry entry = new Entry(offset);
+        entry.pendingAcks = pendingAcks;
+        entries.addLast(entry);
+        laneEntries[lane].addLast(entry);
+        return entry;
+    }
+
+    public synchronized void commit(int lane, long offset, long timestamp, String info) {
+        if (sequential) {
+            completedCheckpoint = new Checkpoint(topicPartition, timestamp, offset, info);
+            maySkip();
+            return;
+        }
+        ArrayDeque<Entry> pending = laneEntries[lane];
+        while (!pending.isEmpty() && pending.peekFirst().offset <= offset) {
+            Entry entry = pending.pollFirst();
+            if (entry.offset == offset) {
+                entry.timestamp = timestamp;
+                entry.info = info;
+            }
+            entry.finished = true;
+        }
+        advance();
+    }
+
+    /**
+     * skip records dropped by filter, offset is the last of them, should be called in offset order like register
+     * @param precedingOffset the last record offered before them, -1 if none
+     */
+    public synchronized void skip(long offset, long timestamp, long precedingOffset) {
+        if (sequential) {
+            pendingSkip = new Checkpoint(topicPartition, timestamp, offset, String.valueOf(timestamp));
+            pendingSkipAfter = precedingOffset;
+            maySkip();
+            return;
+        }
+        Entry entry = new Entry(offset);
+        entry.timestamp = timestamp;
+        entry.finished = true;
+        entries.addLast(entry);
+        advance();
+    }
+
+    private void maySkip() {
+        if (null == pendingSkip) {
+            return;
+        }
+        long completedOffset = null == completedCheckpoint ? -1 : completedCheckpoint.getOffset();
+        if (pendingSkipAfter < 0 || completedOffset >= pendingSkipAfter) {
+            if (completedOffset < pendingSkip.getOffset()) {
+                completedCheckpoint = pendingSkip;
+            }
+            pendingSkip = null;
+        }
+    }
+
+    // an async listener finished the record, info replaces the one given by lane commit if not null
+    public synchronized void ack(Entry entry, String info) {
+        entry.pendingAcks--;
+        if (null != info) {
+            entry.info = info;
+        }
+        if (entry.pendingAcks == 0 && entry.finished) {
+            advance();
+        }
+    }
+
+    private void advance() {
+        Entry last = null;
+        while (!entries.isEmpty() && entries.peekFirst().finished && entries.peekFirst().pendingAcks == 0) {
+            last = entries.pollFirst();
+        }
+        if (null != last) {
+            String info = null == last.info ? String.valueOf(last.timestamp) : last.info;
+            completedCheckpoint = new Checkpoint(topicPartition, last.timestamp, last.offset, info);
+            notifyAll();
+        }
+    }
+
+    public synchronized Checkpoint getCompletedCheckpoint() {
+        return completedCheckpoint;
+    }
+
+    // the completed checkpoint if it changed since last call, so that an unchanged checkpoint is not committed again
+    public synchronized Checkpoint pollNewCheckpoint() {
+        if (completedCheckpoint == reportedCheckpoint) {
+            return null;
+        }
+        reportedCheckpoint = completedCheckpoint;
+        return completedCheckpoint;
+    }
+
+    public synchronized int inFlight() {
+        return entries.size();
+    }
+
+    /**
+     * wait until the number of unfinished records drop below maxInFlight
+     * @return false if timeout
+     */
+    public synchronized boolean awaitInFlightBelow(int maxInFlight, long timeoutMS) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMS;
+        while (entries.size() >= maxInFlight) {
+            long toWait = deadline - System.currentTimeMillis();
+            if (toWait <= 0) {
+                return false;
+            }
+            wait(toWait);
+        }
+        return true;
+    }
+
+    // called after records of this partition are handed to processor
+    public void onOffered(int num, long lastOffset) {
+        offeredNum += num;
+        lastOfferedOffset = lastOffset;
+    }
+
+    // called after all listeners returned for a record
+    public void onProcessed() {
+        processedNum.incrementAndGet();
+    }
+
+    /**
+     * called by processor when records of an open transaction are buffered
+     * @param bufferedNum records of the transaction buffered, they are never processed if the partition is revoked
+     * @param boundaryOffset last offset of the last complete transaction, -1 if none
+     */
+    public void setOpenTransaction(long bufferedNum, long boundaryOffset) {
+        this.bufferedNum = bufferedNum;
+        this.boundaryOffset = boundaryOffset;
+        this.inTransaction = true;
+    }
+
+    public void clearOpenTransaction() {
+        inTransaction = false;
+        bufferedNum = 0;
+    }
+
+    // all records handed to processor are processed, and committed by listeners
+    public boolean isDrained() {
+        if (processedNum.get() + bufferedNum < offeredNum) {
+            return false;
+        }
+        long toCommitOffset = inTransaction ? boundaryOffset : lastOfferedOffset;
+        Checkpoint checkpoint = getCompletedCheckpoint();
+        return toCommitOffset < 0 || (null != checkpoint && checkpoint.getOffset() >= toCommitOffset);
+    }
+
+    // -1 if nothing offered yet
+    public long getLastOfferedOffset() {
+        return lastOfferedOffset;
+    }
+
+    public long getInProcessNum() {
+        return offeredNum - processedNum.get();
+    }
+
+    public TopicPartition getTopicPartition() {
+        return topicPartition;
+    }
+
+    public static class Entry {
+        private final long offset;
+        private volatile long timestamp;
+        private String info;
+        private boolean finished;
+        private int pendingAcks;
+
+        private Entry(long offset) {
+            this.offset = offset;
+        }
+
+        // record timestamp is known after deserialize
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package recordprocessor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Columns needed for each table, keyed by record objectName (db.table, or db.schema.table for PostgreSQL).
+ * Lazy records of a registered table keep only the registered columns in fields and images, the others are skipped
+ * without being decoded. Tables not registered keep all columns.
+ * Columns registered by different listeners for the same table are merged.
+ */
+public class ColumnProjection {
+    private final Map<String, Set<String>> tableColumns = new ConcurrentHashMap<>();
+
+    public void register(String objectName, Collection<String> columns) {
+        tableColumns.compute(objectName, (k, v) -> {
+            Set<String> ret = null == v ? new HashSet<>() : new HashSet<>(v);
+            ret.addAll(columns);
+            return Collections.unmodifiableSet(ret);
+        });
+    }
+
+    // null means all columns are needed
+    public Set<String> getColumns(String objectName) {
+        return null == objectName ? null : tableColumns.get(objectName);
+    }
+
+    public boolean isEmpty() {
+        return tableColumns.isEmpty();
+    }
+}
@@ -1,89 +1,326 @@
 package recordprocessor;
 
 
+import com.alibaba.dts.formats.avro.Operation;
 import com.alibaba.dts.formats.avro.Record;
 import common.*;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordgenerator.OffsetCommitCallBack;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static common.Util.require;
 import static common.Util.sleepMS;
+import static recordgenerator.Names.*;
 
 
 /**
  * This demo show how to resolve avro record deserialize from bytes
  * We will show how to print a column from deserialize record
+ * If [stream.processor.threads] is greater than 1, records are deserialized and consumed by shard workers in parallel,
+ * records of the same table (or row) keep their order, and the committed checkpoint is the watermark of all shards.
+ * If [stream.processor.batch.maxRecords] is greater than 1, records of a partition are batched by count, bytes and linger time,
+ * a BatchRecordListener gets a batch in one call, and other listeners get its records one by one.
+ * If [stream.processor.commitMode] is transaction, a batch is a whole transaction, and the checkpoint only advances
+ * to the end of a transaction.
+ * An AsyncRecordListener acks records by completing stages in any order, the checkpoint advances over contiguous
+ * completions only, and at most [stream.processor.maxInFlight] records of a partition wait for acks.
+ * If [stream.processor.listenerFanOut] is true, every other listener runs on its own thread through a ListenerWorker,
+ * and the checkpoint of a partition is the minimum of the offsets committed by all listeners.
  */
 public class EtlRecordProcessor implements  Runnable, Closeable {
     private static final Logger log = LoggerFactory.getLogger(EtlRecordProcessor.class);
+    private static final String METRICS_GROUP = "record-processor";
     private final OffsetCommitCallBack offsetCommitCallBack;
-    private volatile Checkpoint commitCheckpoint;
     private WorkThread commitThread;
     public boolean offer(long timeOut, TimeUnit timeUnit, ConsumerRecord record) {
+        return offer(timeOut, timeUnit, Collections.singletonList((ConsumerRecord<byte[], byte[]>) record));
+    }
+
+    // records are handed over as a whole batch, only one thread is allowed to offer
+    public boolean offer(long timeOut, TimeUnit timeUnit, List<ConsumerRecord<byte[], byte[]>> records) {
         try {
-            return toProcessRecord.offer(record, timeOut, timeUnit);
+            if (!toProcessRecord.offer(records, timeOut, timeUnit)) {
+                return false;
+            }
+            onOffered(records);
+            return true;
         } catch (Exception e) {
-            log.error("EtlRecordProcessor: offer record failed, record[" + record + "], cause " + e.getMessage(), e);
+            log.error("EtlRecordProcessor: offer records failed, first record[" + records.get(0) + "], cause " + e.getMessage(), e);
             return false;
         }
     }
 
-    private final LinkedBlockingQueue<ConsumerRecord> toProcessRecord;
+    // count offered records by partition, records of a batch mostly come from one partition
+    private void onOffered(List<ConsumerRecord<byte[], byte[]>> records) {
+        int from = 0;
+        for (int i = 1; i <= records.size(); i++) {
+            ConsumerRecord<byte[], byte[]> first = records.get(from);
+            if (i == records.size() || records.get(i).partition() != first.partition() || !records.get(i).topic().equals(first.topic())) {
+                getCheckpointTracker(new TopicPartition(first.topic(), first.partition())).onOffered(i - from, records.get(i - 1).offset());
+                from = i;
+            }
+        }
+    }
+
+    /**
+     * Wait until records of the given partitions handed to processor are processed and committed by listeners,
+     * then forget the partitions. Called by generator before the partitions are revoked.
+     * @return the last completed checkpoint of each partition, partitions without any are absent
+     */
+    public Map<TopicPartition, Checkpoint> drain(Collection<TopicPartition> partitions, long timeoutMS) {
+        long deadline = System.currentTimeMillis() + timeoutMS;
+        Map<TopicPartition, Checkpoint> ret = new HashMap<>();
+        for (TopicPartition topicPartition : partitions) {
+            CheckpointTracker checkpointTracker = checkpointTrackers.get(topicPartition);
+            if (null == checkpointTracker) {
+                continue;
+            }
+            while (!checkpointTracker.isDrained() && !existed && System.currentTimeMillis() < deadline) {
+                sleepMS(1);
+            }
+            if (!checkpointTracker.isDrained()) {
+                log.warn("EtlRecordProcessor: drain {} timeout, [{}] records still in process, they may be consumed again by new owner",
+                        topicPartition, checkpointTracker.getInProcessNum());
+            }
+            checkpointTrackers.remove(topicPartition);
+            removeListenerPartitionMetrics(topicPartition);
+            Checkpoint checkpoint = checkpointTracker.getCompletedCheckpoint();
+            if (null != checkpoint && checkpoint.getOffset() != -1) {
+                ret.put(topicPartition, checkpoint);
+            }
+        }
+        return ret;
+    }
+
+    private final HandoffQueue toProcessRecord;
     private final AvroDeserializer fastDeserializer;
+    // not null in reuse mode, records are given back after all listeners finished
+    private final RecordPool recordPool;
+    private final boolean lazyDecode;
+    private final ColumnProjection columnProjection = new ColumnProjection();
     private final Context context;
     private final Map<String, RecordListener> recordListeners = new HashMap<>();
+    // set while listeners are registered, read by the offering thread when a partition is first seen
+    private volatile int asyncListenerNum = 0;
+    private final boolean listenerFanOut;
+    private final int listenerQueueSize;
+    private final List<WorkThread> listenerThreads = new LinkedList<>();
+    private final List<ListenerWorker> listenerWorkers = new ArrayList<>();
+    // per listener gauges of each partition, removed when the partition is drained
+    private final Map<TopicPartition, List<MetricName>> listenerPartitionMetrics = new ConcurrentHashMap<>();
+    // not null in batch or transaction commit mode, records not yet handed to listeners of each partition
+    private final Map<TopicPartition, RecordBatcher> recordBatchers;
+    private final boolean transactional;
+    private final int batchMaxRecords;
+    private final long batchMaxBytes;
+    private final long batchLingerMS;
+    private final Map<TopicPartition, CheckpointTracker> checkpointTrackers = new ConcurrentHashMap<>();
+    private final int shardNum;
+    private final int maxInFlight;
+    private final RecordSharder recordSharder;
+    private final ShardWorker[] shardWorkers;
+    private final List<WorkThread> shardThreads = new LinkedList<>();
+    private final MemoryBudget memoryBudget;
+    // table schemas handed to listeners by UserRecord.getTableSchema()
+    private final SchemaRegistry schemaRegistry = SchemaRegistry.shared();
+    // commit every commitIntervalMS, or once commitRecords records are processed since last commit
+    private final long commitIntervalMS;
+    private final long commitRecords;
+    private final AtomicLong processedSinceCommit = new AtomicLong(0);
+    private final Object commitSignal = new Object();
+    private boolean commitRequested = false;
 
     private volatile boolean existed = false;
     public EtlRecordProcessor(OffsetCommitCallBack offsetCommitCallBack, Context context) {
+        this(offsetCommitCallBack, context, new Properties());
+    }
+
+    public EtlRecordProcessor(OffsetCommitCallBack offsetCommitCallBack, Context context, Properties properties) {
         this.offsetCommitCallBack = offsetCommitCallBack;
-        this.toProcessRecord = new LinkedBlockingQueue<>(512);
-        fastDeserializer = new AvroDeserializer();
+        this.toProcessRecord = new HandoffQueue(Long.valueOf(properties.getProperty(PROCESSOR_QUEUE_MAX_RECORDS, "4096")),
+                Long.valueOf(properties.getProperty(PROCESSOR_QUEUE_MAX_BYTES, "67108864")),
+                HandoffQueue.WaitStrategy.parse(properties.getProperty(PROCESSOR_HANDOFF, "blocking")));
+        this.lazyDecode = StringUtils.equalsIgnoreCase("true", properties.getProperty(PROCESSOR_LAZY_DECODE, "false"));
+        boolean reuseRecord = StringUtils.equalsIgnoreCase("true", properties.getProperty(PROCESSOR_REUSE_RECORD, "false"));
+        if (lazyDecode && reuseRecord) {
+            log.warn("EtlRecordProcessor: " + PROCESSOR_REUSE_RECORD + " is ignored when " + PROCESSOR_LAZY_DECODE + " is enabled");
+        }
+        this.recordPool = reuseRecord && !lazyDecode
+                ? new RecordPool(Integer.valueOf(properties.getProperty(PROCESSOR_THREAD_NUM, "1")) * 4) : null;
+        loadColumnProjection(properties);
+        fastDeserializer = createDeserializer();
         this.context = context;
-        commitCheckpoint = new Checkpoint(null, -1, -1, "-1");
+        long maxBufferedBytes = Long.valueOf(properties.getProperty(PROCESSOR_MAX_BUFFERED_BYTES, "268435456"));
+        this.memoryBudget = new MemoryBudget(maxBufferedBytes,
+                Long.valueOf(properties.getProperty(PROCESSOR_RESUME_BUFFERED_BYTES, String.valueOf(maxBufferedBytes / 2))));
+        this.shardNum = Integer.valueOf(properties.getProperty(PROCESSOR_THREAD_NUM, "1"));
+        this.maxInFlight = Integer.valueOf(properties.getProperty(PROCESSOR_MAX_IN_FLIGHT, "10000"));
+        this.commitIntervalMS = Long.valueOf(properties.getProperty(COMMIT_INTERVAL_MS, "5000"));
+        this.commitRecords = Long.valueOf(properties.getProperty(COMMIT_MAX_RECORDS, "10000"));
+        require(commitIntervalMS > 0, "EtlRecordProcessor: " + COMMIT_INTERVAL_MS + " should be positive");
+        require(shardNum > 0, "EtlRecordProcessor: " + PROCESSOR_THREAD_NUM + " should be positive");
+        String commitMode = properties.getProperty(PROCESSOR_COMMIT_MODE, "record");
+        require(StringUtils.equalsIgnoreCase(commitMode, "record") || StringUtils.equalsIgnoreCase(commitMode, "transaction"),
+                "EtlRecordProcessor: " + PROCESSOR_COMMIT_MODE + " should be record or transaction");
+        this.transactional = StringUtils.equalsIgnoreCase(commitMode, "transaction");
+        // a transaction spans tables, so it can not be split to shards
+        require(!transactional || shardNum == 1, "EtlRecordProcessor: " + PROCESSOR_THREAD_NUM + " should be 1 in transaction commit mode");
+        if (transactional) {
+            // transactions are grouped by their BEGIN and end records
+            RecordFilter recordFilter = RecordFilter.fromProperties(properties);
+            for (Operation operation : new Operation[]{Operation.BEGIN, Operation.COMMIT, Operation.ROLLBACK, Operation.ABORT}) {
+                require(!recordFilter.excludes(operation), "EtlRecordProcessor: " + FILTER_EXCLUDE_OPERATIONS + " should not exclude "
+                        + operation + " in transaction commit mode");
+            }
+        }
+        this.batchMaxRecords = transactional ? Integer.valueOf(properties.getProperty(PROCESSOR_TRANSACTION_MAX_RECORDS, "10000"))
+                : Integer.valueOf(properties.getProperty(PROCESSOR_BATCH_MAX_RECORDS, "1"));
+        this.batchMaxBytes = Long.valueOf(properties.getProperty(PROCESSOR_BATCH_MAX_BYTES, "1048576"));
+        this.batchLingerMS = Long.valueOf(properties.getProperty(PROCESSOR_BATCH_LINGER_MS, "100"));
+        require(batchLingerMS > 0, "EtlRecordProcessor: " + PROCESSOR_BATCH_LINGER_MS + " should be positive");
+        if (batchMaxRecords > 1 && shardNum > 1) {
+            log.warn("EtlRecordProcessor: " + PROCESSOR_BATCH_MAX_RECORDS + " is ignored when " + PROCESSOR_THREAD_NUM + " is greater than 1");
+        }
+        this.recordBatchers = transactional || (batchMaxRecords > 1 && shardNum == 1) ? new HashMap<>() : null;
+        boolean fanOut = StringUtils.equalsIgnoreCase("true", properties.getProperty(PROCESSOR_LISTENER_FAN_OUT, "false"));
+        // records of a partition should reach a listener worker in offset order
+        if (fanOut && (shardNum > 1 || null != recordBatchers)) {
+            log.warn("EtlRecordProcessor: " + PROCESSOR_LISTENER_FAN_OUT + " is ignored in batch mode or when " + PROCESSOR_THREAD_NUM + " is greater than 1");
+            fanOut = false;
+        }
+        this.listenerFanOut = fanOut;
+        this.listenerQueueSize = Integer.valueOf(properties.getProperty(PROCESSOR_LISTENER_QUEUE_SIZE, "1024"));
+        if (shardNum > 1) {
+            int shardQueueSize = Integer.valueOf(properties.getProperty(PROCESSOR_SHARD_QUEUE_SIZE, "256"));
+            this.recordSharder = new RecordSharder(shardNum, properties.getProperty(PROCESSOR_SHARD_BY, "table"));
+            this.shardWorkers = new ShardWorker[shardNum];
+            ThreadFactory threadFactory = getShardThreadFactory(properties.getProperty(PROCESSOR_THREAD_MODE, "platform"));
+            for (int i = 0; i < shardNum; i++) {
+                shardWorkers[i] = new ShardWorker(i, shardQueueSize, this);
+                shardThreads.add(null == threadFactory ? new WorkThread(shardWorkers[i]) : new WorkThread(shardWorkers[i], threadFactory));
+            }
+            log.info("EtlRecordProcessor: parallel mode with [{}] shards, shard by primary key [{}], virtual threads [{}]",
+                    shardNum, recordSharder.isByPrimaryKey(), null != threadFactory);
+        } else {
+            this.recordSharder = null;
+            this.shardWorkers = null;
+        }
+        registerMetrics();
         commitThread = getCommitThread();
         commitThread.start();
     }
 
+    AvroDeserializer createDeserializer() {
+        return new AvroDeserializer(recordPool, lazyDecode ? columnProjection : null);
+    }
+
+    // stream.processor.projection.dbName.tableName=column1,column2
+    private void loadColumnProjection(Properties properties) {
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(PROCESSOR_PROJECTION_PREFIX)) {
+                registerColumnProjection(name.substring(PROCESSOR_PROJECTION_PREFIX.length()),
+                        Arrays.asList(StringUtils.split(properties.getProperty(name), ", ")));
+            }
+        }
+    }
+
+    private void registerMetrics() {
+        if (null == context) {
+            return;
+        }
+        Metrics metrics = context.getMetrics();
+        metrics.addMetric(metrics.metricName("buffered-bytes", METRICS_GROUP,
+                "value bytes of records fetched but not yet processed"), (config, now) -> memoryBudget.getUsedBytes());
+        metrics.addMetric(metrics.metricName("buffered-bytes-max", METRICS_GROUP,
+                "budget of buffered bytes, consumer is paused when exceeded"), (config, now) -> memoryBudget.getMaxBytes());
+        metrics.addMetric(metrics.metricName("queued-records", METRICS_GROUP,
+                "records waiting in handoff queue"), (config, now) -> toProcessRecord.size());
+        metrics.addMetric(metrics.metricName("queued-bytes", METRICS_GROUP,
+                "value bytes of records waiting in handoff queue"), (config, now) -> toProcessRecord.bufferedBytes());
+        metrics.addMetric(metrics.metricName("schema-cache-tables", METRICS_GROUP,
+                "tables with a cached schema"), (config, now) -> schemaRegistry.size());
+        metrics.addMetric(metrics.metricName("schema-rebuilds-total", METRICS_GROUP,
+                "times a table schema was built because the table was new or its columns changed"), (config, now) -> schemaRegistry.getRebuildCount());
+    }
+
+    // bytes of every record offered should be acquired from this budget, and are released after the record is processed
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    // records offered but not yet taken by processor thread
+    public long getQueuedRecords() {
+        return toProcessRecord.size();
+    }
+
+    public double getQueueOccupancy() {
+        return toProcessRecord.occupancy();
+    }
+
 
     @Override
     public void run() {
+        for (WorkThread shardThread : shardThreads) {
+            shardThread.start();
+        }
+        startListenerThreads();
+        // a linger batch is handed out at most pollTimeoutMS late
+        long pollTimeoutMS = null == recordBatchers || transactional ? 100 : Math.min(100, batchLingerMS);
         while (!existed) {
+            List<ConsumerRecord<byte[], byte[]>> toProcessBatch = null;
             ConsumerRecord<byte[], byte[]> toProcess = null;
             Record record = null;
             int fetchFailedCount = 0;
             try {
-                while (null == (toProcess = toProcessRecord.peek()) && !existed) {
-                    sleepMS(5);
-                    fetchFailedCount++;
-                    if (fetchFailedCount % 1000 == 0) {
+                while (null == (toProcessBatch = toProcessRecord.poll(pollTimeoutMS, TimeUnit.MILLISECONDS)) && !existed) {
+                    maintainBatchers();
+                    fetchFailedCount += pollTimeoutMS;
+                    if (fetchFailedCount % 5000 < pollTimeoutMS) {
                         log.info("EtlRecordProcessor: haven't receive records from generator for  5s");
                     }
                 }
                 if (existed) {
                     return;
                 }
-                fetchFailedCount = 0;
-                final ConsumerRecord<byte[], byte[]> consumerRecord = toProcess;
-                record = fastDeserializer.deserialize(consumerRecord.value());
-                log.debug("EtlRecordProcessor: meet [{}] record type", record.getOperation());
-                for (RecordListener recordListener : recordListeners.values()) {
-                    recordListener.consume(new UserRecord(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), consumerRecord.offset(), record, new UserCommitCallBack() {
-                        @Override
-                        public void commit(TopicPartition tp, Record commitRecord, long offset, String metadata) {
-                            commitCheckpoint = new Checkpoint(tp, commitRecord.getSourceTimestamp(), offset, metadata);
-                        }
-                    }));
+                for (ConsumerRecord<byte[], byte[]> consumerRecord : toProcessBatch) {
+                    toProcess = consumerRecord;
+                    record = null;
+                    if (consumerRecord instanceof SkippedRecords) {
+                        skip((SkippedRecords) consumerRecord);
+                    } else if (null != recordBatchers) {
+                        record = fastDeserializer.deserialize(consumerRecord.value());
+                        processBatched(consumerRecord, record);
+                    } else if (null == shardWorkers) {
+                        record = fastDeserializer.deserialize(consumerRecord.value());
+                        process(consumerRecord, record, 0, registerAsync(consumerRecord));
+                    } else {
+                        dispatch(consumerRecord);
+                    }
                 }
-                toProcessRecord.poll();
+                maintainBatchers();
             } catch (Exception e) {
                 log.error("EtlRecordProcessor: process record failed, raw consumer record [" + toProcess + "], parsed record [" + record + "], cause " + e.getMessage(), e);
                 existed = true;
@@ -91,33 +328,421 @@ public class EtlRecordProcessor implements  Runnable, Closeable {
         }
     }
 
-    // user define how to commit
+    // records dropped by filter finish at once, after the records dispatched before them
+    private void skip(SkippedRecords skippedRecords) {
+        CheckpointTracker checkpointTracker = getCheckpointTracker(new TopicPartition(skippedRecords.topic(), skippedRecords.partition()));
+        checkpointTracker.skip(skippedRecords.offset(), skippedRecords.getSourceTimestamp(), skippedRecords.getPrecedingOffset());
+        checkpointTracker.onProcessed();
+    }
+
+    // dispatch record to shard worker, ddl and update changing primary key are processed alone after all shards become idle
+    private void dispatch(ConsumerRecord<byte[], byte[]> consumerRecord) throws InterruptedException {
+        TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+        CheckpointTracker checkpointTracker = getCheckpointTracker(topicPartition);
+        int waitCount = 0;
+        while (!checkpointTracker.awaitInFlightBelow(maxInFlight, 1000) && !existed) {
+            if (++waitCount % 10 == 0) {
+                log.info("EtlRecordProcessor: [{}] records of {} not committed by listener for a period (10s)", checkpointTracker.inFlight(), topicPartition);
+            }
+        }
+        RecordHeader header = RecordHeader.parse(consumerRecord.value());
+        if (header.getOperation() == Operation.DDL) {
+            processAlone(consumerRecord, checkpointTracker);
+            return;
+        }
+        // shard worker decodes the record, dispatch only decodes the key
+        int shard = recordSharder.shardOf(topicPartition, header, consumerRecord.value());
+        if (shard == RecordSharder.KEY_CHANGED) {
+            processAlone(consumerRecord, checkpointTracker);
+            return;
+        }
+        ShardWorker.Task task = new ShardWorker.Task(consumerRecord, checkpointTracker.register(shard, consumerRecord.offset(), asyncListenerNum));
+        int offerTryCount = 0;
+        while (!shardWorkers[shard].offer(task, 1000, TimeUnit.MILLISECONDS) && !existed) {
+            if (++offerTryCount % 10 == 0) {
+                log.info("EtlRecordProcessor: offer record to shard [{}] has failed for a period (10s)", shard);
+            }
+        }
+    }
+
+    // process on dispatch thread after records before it are processed by all shards
+    private void processAlone(ConsumerRecord<byte[], byte[]> consumerRecord, CheckpointTracker checkpointTracker) {
+        while (!isShardsIdle() && !existed) {
+            sleepMS(1);
+        }
+        Record record = fastDeserializer.deserialize(consumerRecord.value());
+        process(consumerRecord, record, shardNum, checkpointTracker.register(shardNum, consumerRecord.offset(), asyncListenerNum));
+    }
+
+    private boolean isShardsIdle() {
+        for (ShardWorker shardWorker : shardWorkers) {
+            if (!shardWorker.isIdle()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void process(ConsumerRecord<byte[], byte[]> consumerRecord, Record record, int lane, CheckpointTracker.Entry entry) {
+        log.debug("EtlRecordProcessor: meet [{}] record type", record.getOperation());
+        TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+        CheckpointTracker checkpointTracker = getCheckpointTracker(topicPartition);
+        // the record may be reused after listeners return, so never read it when commit is called later
+        long sourceTimestamp = record.getSourceTimestamp();
+        if (null != entry) {
+            entry.setTimestamp(sourceTimestamp);
+        }
+        if (record.getOperation() == Operation.DDL) {
+            schemaRegistry.invalidate(record.getObjectName());
+        }
+        UserCommitCallBack userCommitCallBack = new UserCommitCallBack() {
+            @Override
+            public void commit(TopicPartition tp, Record commitRecord, long offset, String metadata) {
+                checkpointTracker.commit(lane, offset, sourceTimestamp, metadata);
+            }
+        };
+        // with async listeners, budget and pooled record are released after listeners returned and all stages completed
+        AtomicInteger toRelease = null == entry || asyncListenerNum == 0 ? null : new AtomicInteger(asyncListenerNum + 1);
+        try {
+            for (RecordListener recordListener : recordListeners.values()) {
+                UserRecord userRecord = new UserRecord(topicPartition, consumerRecord.offset(), record, userCommitCallBack);
+                if (null != toRelease && recordListener instanceof AsyncRecordListener) {
+                    ((AsyncRecordListener) recordListener).consumeAsync(userRecord).whenComplete((info, e) -> {
+                        if (null != e) {
+                            // never ack a failed record, the checkpoint stays before it
+                            log.error("EtlRecordProcessor: async listener failed on record [" + topicPartition + ":" + consumerRecord.offset()
+                                    + "], cause " + e.getMessage(), e);
+                            onProcessFailed();
+                        } else {
+                            checkpointTracker.ack(entry, info);
+                        }
+                        releaseAsync(toRelease, consumerRecord, record);
+                    });
+                } else if (recordListener instanceof BatchRecordListener) {
+                    ((BatchRecordListener) recordListener).consume(new UserRecordBatch(Collections.singletonList(userRecord),
+                            MemoryBudget.valueBytes(consumerRecord)));
+                } else {
+                    recordListener.consume(userRecord);
+                }
+            }
+            if (null != toRelease && asyncListenerNum == recordListeners.size()) {
+                // no listener commits, the record only waits for acks
+                checkpointTracker.commit(lane, consumerRecord.offset(), sourceTimestamp, null);
+            }
+        } finally {
+            if (null == toRelease) {
+                memoryBudget.release(MemoryBudget.valueBytes(consumerRecord));
+            }
+            checkpointTracker.onProcessed();
+            if (processedSinceCommit.incrementAndGet() == commitRecords) {
+                requestCommit();
+            }
+        }
+        if (null == toRelease) {
+            if (null != recordPool) {
+                recordPool.release(record);
+            }
+        } else {
+            releaseAsync(toRelease, consumerRecord, record);
+        }
+    }
+
+    // the last of listeners returned and stages completed releases the record
+    private void releaseAsync(AtomicInteger toRelease, ConsumerRecord<byte[], byte[]> consumerRecord, Record record) {
+        if (toRelease.decrementAndGet() == 0) {
+            memoryBudget.release(MemoryBudget.valueBytes(consumerRecord));
+            if (null != recordPool) {
+                recordPool.release(record);
+            }
+        }
+    }
+
+    // register the record before it is consumed by async listeners, wait if too many records of the partition are in flight
+    private CheckpointTracker.Entry registerAsync(ConsumerRecord<byte[], byte[]> consumerRecord) throws InterruptedException {
+        if (asyncListenerNum == 0) {
+            return null;
+        }
+        TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+        CheckpointTracker checkpointTracker = getCheckpointTracker(topicPartition);
+        int waitCount = 0;
+        while (!checkpointTracker.awaitInFlightBelow(maxInFlight, 1000) && !existed) {
+            if (++waitCount % 10 == 0) {
+                log.info("EtlRecordProcessor: [{}] records of {} not completed by async listener for a period (10s)", checkpointTracker.inFlight(), topicPartition);
+            }
+        }
+        return checkpointTracker.register(0, consumerRecord.offset(), asyncListenerNum);
+    }
+
+    private void processBatched(ConsumerRecord<byte[], byte[]> consumerRecord, Record record) {
+        TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+        CheckpointTracker checkpointTracker = getCheckpointTracker(topicPartition);
+        RecordBatcher batcher = recordBatchers.get(topicPartition);
+        if (null == batcher || batcher.getCheckpointTracker() != checkpointTracker) {
+            if (null != batcher) {
+                release(batcher.discard());
+            }
+            batcher = new RecordBatcher(checkpointTracker, transactional, batchMaxRecords, batchMaxBytes, batchLingerMS);
+            recordBatchers.put(topicPartition, batcher);
+        }
+        RecordBatcher.Batch batch = batcher.add(consumerRecord, record);
+        if (null != batch) {
+            processBatch(topicPartition, checkpointTracker, batch);
+        }
+    }
+
+    // listeners get the whole batch, and only the commit of its last record moves the checkpoint, never for a part of a transaction
+    private void processBatch(TopicPartition topicPartition, CheckpointTracker checkpointTracker, RecordBatcher.Batch batch) {
+        List<ConsumerRecord<byte[], byte[]>> consumerRecords = batch.getConsumerRecords();
+        List<Record> records = batch.getRecords();
+        long boundaryOffset = batch.getBoundaryOffset();
+        long boundaryTimestamp = records.get(records.size() - 1).getSourceTimestamp();
+        UserCommitCallBack userCommitCallBack = new UserCommitCallBack() {
+            @Override
+            public void commit(TopicPartition tp, Record commitRecord, long offset, String metadata) {
+                if (offset == boundaryOffset) {
+                    checkpointTracker.commit(0, offset, boundaryTimestamp, metadata);
+                }
+            }
+        };
+        for (Record record : records) {
+            if (record.getOperation() == Operation.DDL) {
+                schemaRegistry.invalidate(record.getObjectName());
+            }
+        }
+        try {
+            for (RecordListener recordListener : recordListeners.values()) {
+                List<UserRecord> userRecords = new ArrayList<>(records.size());
+                for (int i = 0; i < records.size(); i++) {
+                    userRecords.add(new UserRecord(topicPartition, consumerRecords.get(i).offset(), records.get(i), userCommitCallBack));
+                }
+                if (recordListener instanceof BatchRecordListener) {
+                    ((BatchRecordListener) recordListener).consume(new UserRecordBatch(userRecords, batch.getBytes()));
+                } else {
+                    userRecords.forEach(recordListener::consume);
+                }
+            }
+        } finally {
+            release(batch);
+            for (int i = 0; i < records.size(); i++) {
+                checkpointTracker.onProcessed();
+            }
+            long processed = processedSinceCommit.getAndAdd(records.size());
+            if (processed < commitRecords && processed + records.size() >= commitRecords) {
+                requestCommit();
+            }
+        }
+    }
+
+    private void release(RecordBatcher.Batch batch) {
+        for (ConsumerRecord<byte[], byte[]> consumerRecord : batch.getConsumerRecords()) {
+            memoryBudget.release(MemoryBudget.valueBytes(consumerRecord));
+        }
+        if (null != recordPool) {
+            batch.getRecords().forEach(recordPool::release);
+        }
+    }
+
+    // hand out batches waited lingerMS, and discard records of partitions drained for revoke,
+    // an open transaction of them is never completed and the new owner consumes it again
+    private void maintainBatchers() {
+        if (null == recordBatchers) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<TopicPartition, RecordBatcher>> iterator = recordBatchers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<TopicPartition, RecordBatcher> entry = iterator.next();
+            RecordBatcher batcher = entry.getValue();
+            if (checkpointTrackers.get(entry.getKey()) != batcher.getCheckpointTracker()) {
+                release(batcher.discard());
+                iterator.remove();
+                continue;
+            }
+            RecordBatcher.Batch batch = batcher.pollExpired(now);
+            if (null != batch) {
+                processBatch(entry.getKey(), batcher.getCheckpointTracker(), batch);
+            }
+        }
+    }
+
+    void onProcessFailed() {
+        existed = true;
+    }
+
+    private CheckpointTracker getCheckpointTracker(TopicPartition topicPartition) {
+        // one lane for every shard, and one more for ddl
+        // in batch mode async listeners are waited by the batch, so only commits are tracked
+        return checkpointTrackers.computeIfAbsent(topicPartition, tp -> {
+            CheckpointTracker ret = new CheckpointTracker(tp, null == shardWorkers ? 1 : shardNum + 1, asyncListenerNum > 0 && null == recordBatchers);
+            registerListenerPartitionMetrics(ret);
+            return ret;
+        });
+    }
+
+    private void requestCommit() {
+        synchronized (commitSignal) {
+            commitRequested = true;
+            commitSignal.notifyAll();
+        }
+    }
+
+    // wait for the commit interval, or a commit requested by record count or close
+    private void awaitCommit() {
+        synchronized (commitSignal) {
+            long deadline = System.currentTimeMillis() + commitIntervalMS;
+            long toWait;
+            while (!commitRequested && (toWait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    commitSignal.wait(toWait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            commitRequested = false;
+        }
+        processedSinceCommit.set(0);
+    }
+
+    // user define how to commit, checkpoints not changed since last commit are skipped
     private void commit() {
         if (null != offsetCommitCallBack) {
-            if (commitCheckpoint.getTopicPartition() != null && commitCheckpoint.getOffset() != -1) {
-                log.info("commit record with checkpoint {}", commitCheckpoint);
-                offsetCommitCallBack.commit(commitCheckpoint.getTopicPartition(), commitCheckpoint.getTimeStamp(),
-                        commitCheckpoint.getOffset(), commitCheckpoint.getInfo());
+            for (CheckpointTracker checkpointTracker : checkpointTrackers.values()) {
+                Checkpoint commitCheckpoint = checkpointTracker.pollNewCheckpoint();
+                if (null != commitCheckpoint && commitCheckpoint.getTopicPartition() != null && commitCheckpoint.getOffset() != -1) {
+                    log.debug("commit record with checkpoint {}", commitCheckpoint);
+                    offsetCommitCallBack.commit(commitCheckpoint.getTopicPartition(), commitCheckpoint.getTimeStamp(),
+                            commitCheckpoint.getOffset(), commitCheckpoint.getInfo());
+                }
             }
         }
     }
 
+    /**
+     * Only take effect in lazy decode mode, records of [objectName] will only contain the given columns,
+     * the projection of all listeners for the same table are merged.
+     */
+    public void registerColumnProjection(String objectName, Collection<String> columns) {
+        require(null != objectName && null != columns, "null value not accepted");
+        columnProjection.register(objectName, columns);
+        log.info("EtlRecordProcessor: register column projection [{}] for [{}]", StringUtils.join(columns, ","), objectName);
+    }
+
+    // wrap every listener which is not async into a worker, so each listener consumes on its own thread
+    private void startListenerThreads() {
+        if (listenerThreads.isEmpty()) {
+            return;
+        }
+        for (WorkThread listenerThread : listenerThreads) {
+            listenerThread.start();
+        }
+        log.info("EtlRecordProcessor: [{}] listeners run on their own threads", listenerThreads.size());
+    }
+
+    private void registerListenerMetrics(ListenerWorker listenerWorker) {
+        if (null == context) {
+            return;
+        }
+        Metrics metrics = context.getMetrics();
+        Map<String, String> tags = Collections.singletonMap("listener", listenerWorker.getName());
+        metrics.addMetric(metrics.metricName("listener-queued-records", METRICS_GROUP,
+                "records waiting in the queue of listener", tags), (config, now) -> listenerWorker.queuedSize());
+        metrics.addMetric(metrics.metricName("listener-committed-records-total", METRICS_GROUP,
+                "records committed by listener", tags), (config, now) -> listenerWorker.getCommittedCount());
+    }
+
+    // offset committed by each listener worker in the partition and how far it is behind the last offered record, NaN before its first commit
+    private void registerListenerPartitionMetrics(CheckpointTracker checkpointTracker) {
+        if (null == context || listenerWorkers.isEmpty()) {
+            return;
+        }
+        Metrics metrics = context.getMetrics();
+        TopicPartition topicPartition = checkpointTracker.getTopicPartition();
+        List<MetricName> metricNames = new ArrayList<>();
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("listener", listenerWorker.getName());
+            tags.put("topic", topicPartition.topic());
+            tags.put("partition", String.valueOf(topicPartition.partition()));
+            MetricName offsetName = metrics.metricName("listener-committed-offset", METRICS_GROUP,
+                    "last offset committed by listener in partition", tags);
+            metrics.addMetric(offsetName, (config, now) -> {
+                long committed = listenerWorker.getCommittedOffset(topicPartition);
+                return committed < 0 ? Double.NaN : committed;
+            });
+            MetricName lagName = metrics.metricName("listener-commit-lag", METRICS_GROUP,
+                    "records of partition offered to processor after the last one committed by listener", tags);
+            metrics.addMetric(lagName, (config, now) -> {
+                long committed = listenerWorker.getCommittedOffset(topicPartition);
+                return committed < 0 ? Double.NaN : Math.max(0, checkpointTracker.getLastOfferedOffset() - committed);
+            });
+            metricNames.add(offsetName);
+            metricNames.add(lagName);
+        }
+        listenerPartitionMetrics.put(topicPartition, metricNames);
+    }
+
+    private void removeListenerPartitionMetrics(TopicPartition topicPartition) {
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            listenerWorker.forget(topicPartition);
+        }
+        List<MetricName> metricNames = listenerPartitionMetrics.remove(topicPartition);
+        if (null != metricNames) {
+            metricNames.forEach(context.getMetrics()::removeMetric);
+        }
+    }
+
+    // listeners should be registered before processor starts
     public void registerRecordListener(String name, RecordListener recordListener) {
         require(null != name && null != recordListener, "null value not accepted");
+        // wrapped here rather than when processor starts, records may be offered before that
+        if (listenerFanOut && !(recordListener instanceof AsyncRecordListener)) {
+            ListenerWorker listenerWorker = new ListenerWorker(name, recordListener, listenerQueueSize);
+            registerListenerMetrics(listenerWorker);
+            listenerWorkers.add(listenerWorker);
+            listenerThreads.add(new WorkThread(listenerWorker));
+            recordListener = listenerWorker;
+        }
         recordListeners.put(name, recordListener);
+        asyncListenerNum = (int) recordListeners.values().stream().filter(v -> v instanceof AsyncRecordListener).count();
     }
 
     public  void close() {
         this.existed = true;
+        // signal all shards before joining them, so stopping thousands of shards takes one poll interval
+        if (null != shardWorkers) {
+            for (ShardWorker shardWorker : shardWorkers) {
+                shardWorker.close();
+            }
+        }
+        for (WorkThread shardThread : shardThreads) {
+            shardThread.stop();
+        }
+        for (WorkThread listenerThread : listenerThreads) {
+            listenerThread.stop();
+        }
+        // wake commit thread to commit the last checkpoints
+        requestCommit();
         commitThread.stop();
     }
 
+    // null for platform threads, a shard blocked in a listener only parks its virtual thread in virtual mode
+    private static ThreadFactory getShardThreadFactory(String threadMode) {
+        if (StringUtils.equalsIgnoreCase(threadMode, "platform")) {
+            return null;
+        }
+        require(StringUtils.equalsIgnoreCase(threadMode, "virtual"), "EtlRecordProcessor: unknown " + PROCESSOR_THREAD_MODE + " [" + threadMode + "]");
+        ThreadFactory ret = ThreadFactories.virtual("record-shard-");
+        require(null != ret, "EtlRecordProcessor: " + PROCESSOR_THREAD_MODE + "=virtual needs JDK 21 and a build by the jdk21 profile");
+        return ret;
+    }
+
     private WorkThread getCommitThread() {
         WorkThread workThread = new WorkThread(new Runnable() {
             @Override
             public void run() {
                 while (!existed) {
-                    sleepMS(5000);
+                    awaitCommit();
                     commit();
                 }
             }
@@ -6,8 +6,38 @@ import recordprocessor.mysql.MysqlFieldConverter;
 import recordprocessor.oracle.OracleFieldConverter;
 import recordprocessor.postgresql.PostgresqlFieldConverter;
 
+import java.util.List;
+
 public interface FieldConverter {
     FieldValue convert(Field field, Object o);
+
+    /**
+     * Encode the value into the buffer owned by caller instead of allocating a new FieldValue, the buffer is reset first.
+     * Converters without buffer support fall back to convert(field, o) and copy the result.
+     */
+    default void convert(Field field, Object o, FieldValueBuffer out) {
+        out.copyFrom(convert(field, o));
+    }
+
+    /**
+     * Plan converting rows of a table with the given fields, built once per table schema by SchemaRegistry.
+     * Converters without their own plan convert each column through this FieldConverter.
+     */
+    default RowPlan buildRowPlan(List<Field> fields) {
+        FieldConverter fieldConverter = this;
+        return new RowPlan(fields) {
+            @Override
+            protected FieldValue toFieldValue(int column, Object value) {
+                return fieldConverter.convert(fields.get(column), value);
+            }
+
+            @Override
+            protected void write(int column, Object value, FieldValueBuffer out) {
+                fieldConverter.convert(fields.get(column), value, out);
+            }
+        };
+    }
+
     public static FieldConverter getConverter(String sourceName, String sourceVersion) {
         if (StringUtils.endsWithIgnoreCase("mysql", sourceName)) {
             return new MysqlFieldConverter();
@@ -0,0 +1,353 @@
+package recordprocessor;
+
+import org.apache.commons.lang3.StringUtils;
+import recordprocessor.mysql.JDKEncodingMapper;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * A reusable FieldValue owned by caller, FieldConverter.convert(field, o, buffer) encodes the value into it
+ * so that converting a row allocates nothing once the buffer has grown to the largest value.
+ * Valid bytes are [offset(), offset() + length()) of array(), they are overwritten by the next conversion.
+ * Binary and character values are not copied, array() is the backing array of the record value in that case,
+ * so the bytes are only valid until the record is reused. Not thread safe.
+ */
+public class FieldValueBuffer {
+    private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+
+    private byte[] buffer;
+    // buffer, or the backing array of a wrapped value
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private boolean isNull = true;
+    private String encoding;
+    private ByteBuffer byteView;
+    // charset of the last decoded encoding name, encodings are mostly the same string instance
+    private String lastEncoding;
+    private Charset lastCharset;
+    // decode state of the last non ascii charset
+    private Charset decodeCharset;
+    private CharsetDecoder decoder;
+    private CharBuffer chars;
+
+    public FieldValueBuffer() {
+        this(256);
+    }
+
+    public FieldValueBuffer(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 16)];
+        this.bytes = buffer;
+    }
+
+    // forget the last value, the buffer holds a null value until something is appended
+    public void reset() {
+        bytes = buffer;
+        offset = 0;
+        length = 0;
+        isNull = true;
+        encoding = null;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public boolean isNull() {
+        return isNull;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    // view of the valid bytes, the same instance is returned until the array changes
+    public ByteBuffer asByteBuffer() {
+        if (null == byteView || byteView.array() != bytes) {
+            byteView = ByteBuffer.wrap(bytes);
+        }
+        byteView.limit(offset + length).position(offset);
+        return byteView;
+    }
+
+    private void ensureCapacity(int toAppend) {
+        isNull = false;
+        if (length + toAppend > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length << 1, length + toAppend)];
+            System.arraycopy(bytes, offset, grown, 0, length);
+            buffer = grown;
+        } else if (bytes != buffer) {
+            System.arraycopy(bytes, offset, buffer, 0, length);
+        }
+        bytes = buffer;
+        offset = 0;
+    }
+
+    // refer to the remaining bytes of value without copying if it is backed by an array, position of value is not changed
+    public FieldValueBuffer wrap(ByteBuffer value) {
+        if (length > 0 || !value.hasArray()) {
+            return append(value);
+        }
+        isNull = false;
+        bytes = value.array();
+        offset = value.arrayOffset() + value.position();
+        length = value.remaining();
+        return this;
+    }
+
+    public FieldValueBuffer append(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    public FieldValueBuffer append(byte[] src, int offset, int len) {
+        ensureCapacity(len);
+        System.arraycopy(src, offset, bytes, length, len);
+        length += len;
+        return this;
+    }
+
+    // copy remaining bytes of src, position of src is not changed
+    public FieldValueBuffer append(ByteBuffer src) {
+        int len = src.remaining();
+        ensureCapacity(len);
+        if (src.hasArray()) {
+            System.arraycopy(src.array(), src.arrayOffset() + src.position(), bytes, length, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                bytes[length + i] = src.get(src.position() + i);
+            }
+        }
+        length += len;
+        return this;
+    }
+
+    // same as getBytes(US_ASCII), non ascii character is replaced by '?'
+    public FieldValueBuffer appendAscii(CharSequence value) {
+        int len = value.length();
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else {
+                bytes[length++] = '?';
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        return this;
+    }
+
+    // same as getBytes(UTF_8), unpaired surrogate is replaced by '?'
+    public FieldValueBuffer appendUtf8(CharSequence value) {
+        int len = value.length();
+        // room for one byte per char, a multi byte char reserves its extra bytes plus the chars after it
+        ensureCapacity(len);
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(len - i + 1);
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensureCapacity(len - i + 3);
+                    bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    bytes[length++] = '?';
+                }
+            } else {
+                ensureCapacity(len - i + 2);
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    // decimal string of value, same as Long.toString(value)
+    public FieldValueBuffer appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return appendAscii("-9223372036854775808");
+        }
+        if (value < 0) {
+            append((byte) '-');
+            value = -value;
+        }
+        int digitNum = 1;
+        for (long bound = 10; digitNum < 19 && value >= bound; bound *= 10) {
+            digitNum++;
+        }
+        ensureCapacity(digitNum);
+        for (int i = length + digitNum - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digitNum;
+        return this;
+    }
+
+    /**
+     * Exactly [width] digits of a non negative value, padded with leading zeros, like the encodeDate/encodeTime
+     * helpers of converters the leading digit is not bounded, so value should be less than 10^width.
+     */
+    public FieldValueBuffer appendDigits(int value, int width) {
+        ensureCapacity(width);
+        int divisor = POWERS_OF_TEN[width - 1];
+        bytes[length++] = (byte) ('0' + value / divisor);
+        for (int i = width - 2; i >= 0; i--) {
+            value %= divisor;
+            divisor = POWERS_OF_TEN[i];
+            bytes[length++] = (byte) ('0' + value / divisor);
+        }
+        return this;
+    }
+
+    // copy the value into a new FieldValue
+    public FieldValue toFieldValue() {
+        FieldValue ret = new FieldValue();
+        ret.setEncoding(encoding);
+        if (!isNull) {
+            byte[] value = new byte[length];
+            System.arraycopy(bytes, offset, value, 0, length);
+            ret.setValue(value);
+        }
+        return ret;
+    }
+
+    // fall back for adapters without buffer support
+    public void copyFrom(FieldValue fieldValue) {
+        reset();
+        encoding = fieldValue.getEncoding();
+        if (null != fieldValue.getValue()) {
+            append(fieldValue.getValue(), 0, fieldValue.getValue().length);
+        }
+    }
+
+    /**
+     * Decode the value into the builder owned by caller, same text as FieldValue.toString().
+     * Ascii values are copied directly, other charsets decode through a reused decoder.
+     */
+    public void appendTo(StringBuilder builder) {
+        if (isNull) {
+            builder.append("null [binary]");
+            return;
+        }
+        if (null == lastCharset || encoding != lastEncoding) {
+            lastCharset = charsetOf(encoding);
+            lastEncoding = encoding;
+        }
+        Charset charset = lastCharset;
+        if (isAsciiCompatible(charset)) {
+            ensureChars(length);
+            char[] out = chars.array();
+            int i = 0;
+            while (i < length && bytes[offset + i] >= 0) {
+                out[i] = (char) bytes[offset + i];
+                i++;
+            }
+            // single byte charsets the JDK also decodes without a decoder
+            if (i < length && US_ASCII.equals(charset)) {
+                for (; i < length; i++) {
+                    out[i] = bytes[offset + i] >= 0 ? (char) bytes[offset + i] : '\uFFFD';
+                }
+            } else if (i < length && ISO_8859_1.equals(charset)) {
+                for (; i < length; i++) {
+                    out[i] = (char) (bytes[offset + i] & 0xFF);
+                }
+            }
+            if (i == length) {
+                builder.append(out, 0, length);
+                return;
+            }
+        }
+        if (charset != decodeCharset) {
+            decodeCharset = charset;
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        ensureChars((int) (length * (double) decoder.maxCharsPerByte()) + 1);
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(asByteBuffer(), chars, true);
+        if (!result.isUnderflow()) {
+            throw new RuntimeException("FieldValueBuffer: decode value with " + charset + " failed, " + result);
+        }
+        decoder.flush(chars);
+        builder.append(chars.array(), 0, chars.position());
+    }
+
+    private void ensureChars(int capacity) {
+        if (null == chars || chars.capacity() < capacity) {
+            chars = CharBuffer.allocate(Math.max(capacity, 64));
+        }
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return !name.startsWith("UTF-16") && !name.startsWith("UTF-32") && !name.startsWith("x-UTF-16") && !name.startsWith("x-UTF-32");
+    }
+
+    // resolve encoding the same way as FieldValue.toString()
+    public static Charset charsetOf(String encoding) {
+        String name = null == encoding ? "ASCII" : encoding;
+        Charset ret = CHARSETS.get(name);
+        if (null == ret) {
+            String jdkName = StringUtils.equals("utf8mb4", name) ? "utf8" : name;
+            try {
+                ret = Charset.forName(jdkName);
+            } catch (RuntimeException e) {
+                String realEncoding = JDKEncodingMapper.getJDKEncoding(name);
+                if (null == realEncoding) {
+                    throw new RuntimeException("Unsupported encoding: " + name);
+                }
+                try {
+                    ret = Charset.forName(realEncoding);
+                } catch (RuntimeException e1) {
+                    throw new RuntimeException("Unsupported encoding: origin " + name + ", mapped " + realEncoding);
+                }
+            }
+            CHARSETS.put(name, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length);
+        appendTo(builder);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package recordprocessor;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hand record batches from RecordGenerator to EtlRecordProcessor through a single producer single consumer ring buffer,
+ * so the cost of handoff is paid once per batch instead of once per record.
+ * The capacity is bounded by buffered record number and buffered value bytes, 0 means no limit.
+ * A batch is always accepted by an empty queue, so a batch larger than the capacity can not block forever.
+ * The consumer side waits according to the wait strategy:
+ * BLOCKING: park until producer signals, cheapest when topic is quiet.
+ * SPIN_THEN_PARK: spin and yield for a short while then park until producer unparks it.
+ * BUSY_SPIN: never give up the cpu, lowest latency but burns a core even if there is nothing to consume.
+ */
+public class HandoffQueue {
+    private static final int SPIN_TRIES = 1000;
+    private static final int YIELD_TRIES = 100;
+    private static final int MAX_SLOT_NUM = 1 << 16;
+
+    private final Object[] slots;
+    private final int mask;
+    private final long maxRecords;
+    private final long maxBytes;
+    private final WaitStrategy waitStrategy;
+    // next slot to consume and next slot to produce
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong bufferedRecords = new AtomicLong(0);
+    private final AtomicLong bufferedBytes = new AtomicLong(0);
+    private volatile Thread parkedConsumer;
+    private volatile Thread parkedProducer;
+
+    public HandoffQueue(long maxRecords, long maxBytes, WaitStrategy waitStrategy) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.waitStrategy = waitStrategy;
+        int slotNum = 1024;
+        if (maxRecords > 0) {
+            slotNum = (int) Math.min(MAX_SLOT_NUM, Math.max(16, Long.highestOneBit(maxRecords - 1) << 1));
+        }
+        this.slots = new Object[slotNum];
+        this.mask = slotNum - 1;
+    }
+
+    /**
+     * only one thread is allowed to offer
+     */
+    public boolean offer(List<ConsumerRecord<byte[], byte[]>> batch, long timeOut, TimeUnit timeUnit) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        long batchBytes = valueBytes(batch);
+        if (!hasRoom(batch.size(), batchBytes)) {
+            long deadline = System.nanoTime() + timeUnit.toNanos(timeOut);
+            while (!hasRoom(batch.size(), batchBytes)) {
+                long toWait = deadline - System.nanoTime();
+                if (toWait <= 0) {
+                    return false;
+                }
+                parkedProducer = Thread.currentThread();
+                if (!hasRoom(batch.size(), batchBytes)) {
+                    LockSupport.parkNanos(this, toWait);
+                }
+                parkedProducer = null;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        long currentTail = tail.get();
+        slots[(int) (currentTail & mask)] = batch;
+        bufferedRecords.addAndGet(batch.size());
+        bufferedBytes.addAndGet(batchBytes);
+        tail.set(currentTail + 1);
+        Thread toUnpark = parkedConsumer;
+        if (null != toUnpark) {
+            LockSupport.unpark(toUnpark);
+        }
+        return true;
+    }
+
+    private boolean hasRoom(int recordNum, long recordBytes) {
+        if (tail.get() - head.get() >= slots.length) {
+            return false;
+        }
+        long currentRecords = bufferedRecords.get();
+        if (currentRecords == 0) {
+            return true;
+        }
+        return (maxRecords <= 0 || currentRecords + recordNum <= maxRecords)
+                && (maxBytes <= 0 || bufferedBytes.get() + recordBytes <= maxBytes);
+    }
+
+    /**
+     * only one thread is allowed to poll
+     * @return the head batch, or null if nothing arrives in given time
+     */
+    public List<ConsumerRecord<byte[], byte[]>> poll(long timeOut, TimeUnit timeUnit) throws InterruptedException {
+        List<ConsumerRecord<byte[], byte[]>> ret = tryPoll();
+        if (null != ret) {
+            return ret;
+        }
+        switch (waitStrategy) {
+            case BLOCKING:
+                return park(timeUnit.toNanos(timeOut), 0, 0);
+            case SPIN_THEN_PARK:
+                return park(timeUnit.toNanos(timeOut), SPIN_TRIES, YIELD_TRIES);
+            case BUSY_SPIN:
+                return busySpin(timeUnit.toNanos(timeOut));
+            default:
+                throw new RuntimeException("HandoffQueue: unknown wait strategy " + waitStrategy);
+        }
+    }
+
+    private List<ConsumerRecord<byte[], byte[]>> tryPoll() {
+        long currentHead = head.get();
+        if (currentHead >= tail.get()) {
+            return null;
+        }
+        int index = (int) (currentHead & mask);
+        List<ConsumerRecord<byte[], byte[]>> ret = (List<ConsumerRecord<byte[], byte[]>>) slots[index];
+        slots[index] = null;
+        bufferedRecords.addAndGet(-ret.size());
+        bufferedBytes.addAndGet(-valueBytes(ret));
+        head.set(currentHead + 1);
+        Thread toUnpark = parkedProducer;
+        if (null != toUnpark) {
+            LockSupport.unpark(toUnpark);
+        }
+        return ret;
+    }
+
+    private List<ConsumerRecord<byte[], byte[]>> park(long timeOutNanos, int spinTries, int yieldTries) throws InterruptedException {
+        long deadline = System.nanoTime() + timeOutNanos;
+        int idleCount = 0;
+        List<ConsumerRecord<byte[], byte[]>> ret;
+        while (null == (ret = tryPoll())) {
+            if (idleCount < spinTries) {
+                idleCount++;
+            } else if (idleCount < spinTries + yieldTries) {
+                idleCount++;
+                Thread.yield();
+            } else {
+                long toWait = deadline - System.nanoTime();
+                if (toWait <= 0) {
+                    return null;
+                }
+                parkedConsumer = Thread.currentThread();
+                // recheck after publish ourselves, producer may have offered before it could see us
+                if (head.get() >= tail.get()) {
+                    LockSupport.parkNanos(this, toWait);
+                }
+                parkedConsumer = null;
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return ret;
+    }
+
+    private List<ConsumerRecord<byte[], byte[]>> busySpin(long timeOutNanos) {
+        long deadline = System.nanoTime() + timeOutNanos;
+        int spinCount = 0;
+        List<ConsumerRecord<byte[], byte[]>> ret;
+        while (null == (ret = tryPoll())) {
+            if ((++spinCount & 0x3FF) == 0 && System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+        }
+        return ret;
+    }
+
+    private static long valueBytes(List<ConsumerRecord<byte[], byte[]>> batch) {
+        long ret = 0;
+        for (ConsumerRecord<byte[], byte[]> record : batch) {
+            if (null != record.value()) {
+                ret += record.value().length;
+            }
+        }
+        return ret;
+    }
+
+    // buffered record number
+    public long size() {
+        return bufferedRecords.get();
+    }
+
+    public long bufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    // fraction of the records or bytes bound used, whichever is higher, 0 if unbounded
+    public double occupancy() {
+        double ret = maxRecords > 0 ? (double) bufferedRecords.get() / maxRecords : 0;
+        return maxBytes > 0 ? Math.max(ret, (double) bufferedBytes.get() / maxBytes) : ret;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public static enum WaitStrategy {
+        BLOCKING,
+        SPIN_THEN_PARK,
+        BUSY_SPIN;
+
+        public static WaitStrategy parse(String value) {
+            if (StringUtils.equalsIgnoreCase("blocking", value)) {
+                return BLOCKING;
+            } else if (StringUtils.equalsIgnoreCase("spinThenPark", value)) {
+                return SPIN_THEN_PARK;
+            } else if (StringUtils.equalsIgnoreCase("busySpin", value)) {
+                return BUSY_SPIN;
+            } else {
+                throw new RuntimeException("HandoffQueue: unknown wait strategy [" + value + "]");
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A record whose attributes before fields (id, timestamps, operation, objectName, tags...) are decoded eagerly,
+ * while fields, beforeImages and afterImages are decoded the first time they are read.
+ * If a column projection is given, fields and images only keep the projected columns, the values of other columns are skipped.
+ * So a record nobody looks into costs only its header, and the bytes of unneeded columns are never materialized.
+ * Fields and images should be read through getters, the public fields inherited from Record are not filled until then.
+ */
+public class LazyRecord extends Record {
+    private static final SourceType[] SOURCE_TYPES = SourceType.values();
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Schema IMAGES_SCHEMA = Record.getClassSchema().getField("beforeImages").schema();
+    // union of all value types of a column
+    private static final Schema VALUE_SCHEMA = IMAGES_SCHEMA.getTypes().get(2).getElementType();
+    private static final SpecificDatumReader<Object> VALUE_READER = new SpecificDatumReader<>(VALUE_SCHEMA);
+    // index in union [null, string, array]
+    private static final int UNION_NULL = 0;
+    private static final int UNION_STRING = 1;
+
+    private final byte[] data;
+    private Set<String> projectedColumns;
+    // where fields, beforeImages and afterImages start, -1 if not known yet
+    private final int fieldsOffset;
+    private int beforeImagesOffset = -1;
+    private int afterImagesOffset = -1;
+    // positions of projected columns in all columns, null if all columns are kept
+    private int[] projectedIndexes;
+    private boolean fieldsDecoded = false;
+    private boolean beforeImagesDecoded = false;
+    private boolean afterImagesDecoded = false;
+
+    public LazyRecord(byte[] data, ColumnProjection columnProjection) {
+        this.data = data;
+        PositionedInput input = new PositionedInput(data, 0);
+        Decoder decoder = DecoderFactory.get().directBinaryDecoder(input, null);
+        try {
+            super.setVersion(decoder.readInt());
+            super.setId(decoder.readLong());
+            super.setSourceTimestamp(decoder.readLong());
+            super.setSourcePosition(decoder.readString());
+            super.setSafeSourcePosition(decoder.readString());
+            super.setSourceTxid(decoder.readString());
+            super.setSource(new Source(SOURCE_TYPES[decoder.readEnum()], decoder.readString()));
+            super.setOperation(OPERATIONS[decoder.readEnum()]);
+            super.setObjectName(decoder.readIndex() == UNION_NULL ? null : decoder.readString());
+            List<Long> processTimestamps = null;
+            if (decoder.readIndex() != UNION_NULL) {
+                processTimestamps = new ArrayList<>();
+                for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+                    for (long i = 0; i < n; i++) {
+                        processTimestamps.add(decoder.readLong());
+                    }
+                }
+            }
+            super.setProcessTimestamps(processTimestamps);
+            Map<String, String> tags = new HashMap<>();
+            for (long n = decoder.readMapStart(); n != 0; n = decoder.mapNext()) {
+                for (long i = 0; i < n; i++) {
+                    tags.put(decoder.readString(), decoder.readString());
+                }
+            }
+            super.setTags(tags);
+        } catch (IOException e) {
+            throw new RuntimeException("LazyRecord: decode record header failed cause " + e.getMessage(), e);
+        }
+        this.fieldsOffset = input.position();
+        this.projectedColumns = null == columnProjection ? null : columnProjection.getColumns(getObjectName());
+    }
+
+    private synchronized void ensureFields() {
+        if (fieldsDecoded) {
+            return;
+        }
+        PositionedInput input = new PositionedInput(data, fieldsOffset);
+        Decoder decoder = DecoderFactory.get().directBinaryDecoder(input, null);
+        try {
+            Object fields;
+            int unionIndex = decoder.readIndex();
+            if (unionIndex == UNION_NULL) {
+                fields = null;
+            } else if (unionIndex == UNION_STRING) {
+                fields = decoder.readString();
+            } else {
+                List<Field> fieldList = new ArrayList<>();
+                List<Integer> indexes = null == projectedColumns ? null : new ArrayList<>();
+                int index = 0;
+                for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+                    for (long i = 0; i < n; i++, index++) {
+                        String name = decoder.readString();
+                        int dataTypeNumber = decoder.readInt();
+                        if (null == indexes || projectedColumns.contains(name)) {
+                            fieldList.add(new Field(name, dataTypeNumber));
+                            if (null != indexes) {
+                                indexes.add(index);
+                            }
+                        }
+                    }
+                }
+                if (null != indexes) {
+                    projectedIndexes = new int[indexes.size()];
+                    for (int i = 0; i < projectedIndexes.length; i++) {
+                        projectedIndexes[i] = indexes.get(i);
+                    }
+                }
+                fields = fieldList;
+            }
+            super.setFields(fields);
+        } catch (IOException e) {
+            throw new RuntimeException("LazyRecord: decode fields of record [" + getId() + "] failed cause " + e.getMessage(), e);
+        }
+        beforeImagesOffset = input.position();
+        fieldsDecoded = true;
+    }
+
+    private synchronized void ensureBeforeImages() {
+        if (beforeImagesDecoded) {
+            return;
+        }
+        ensureFields();
+        PositionedInput input = new PositionedInput(data, beforeImagesOffset);
+        super.setBeforeImages(readImages(input));
+        afterImagesOffset = input.position();
+        beforeImagesDecoded = true;
+    }
+
+    private synchronized void ensureAfterImages() {
+        if (afterImagesDecoded) {
+            return;
+        }
+        ensureFields();
+        if (afterImagesOffset < 0) {
+            // skip before images without decoding them
+            PositionedInput input = new PositionedInput(data, beforeImagesOffset);
+            try {
+                GenericDatumReader.skip(IMAGES_SCHEMA, DecoderFactory.get().directBinaryDecoder(input, null));
+            } catch (IOException e) {
+                throw new RuntimeException("LazyRecord: skip before images of record [" + getId() + "] failed cause " + e.getMessage(), e);
+            }
+            afterImagesOffset = input.position();
+        }
+        super.setAfterImages(readImages(new PositionedInput(data, afterImagesOffset)));
+        afterImagesDecoded = true;
+    }
+
+    private Object readImages(PositionedInput input) {
+        Decoder decoder = DecoderFactory.get().directBinaryDecoder(input, null);
+        try {
+            int unionIndex = decoder.readIndex();
+            if (unionIndex == UNION_NULL) {
+                return null;
+            } else if (unionIndex == UNION_STRING) {
+                return decoder.readString();
+            }
+            List<Object> values = new ArrayList<>(null == projectedIndexes ? 16 : projectedIndexes.length);
+            int index = 0;
+            int nextProjected = 0;
+            for (long n = decoder.readArrayStart(); n != 0; n = decoder.arrayNext()) {
+                for (long i = 0; i < n; i++, index++) {
+                    if (null == projectedIndexes) {
+                        values.add(VALUE_READER.read(null, decoder));
+                    } else if (nextProjected < projectedIndexes.length && projectedIndexes[nextProjected] == index) {
+                        values.add(VALUE_READER.read(null, decoder));
+                        nextProjected++;
+                    } else {
+                        GenericDatumReader.skip(VALUE_SCHEMA, decoder);
+                    }
+                }
+            }
+            return values;
+        } catch (IOException e) {
+            throw new RuntimeException("LazyRecord: decode images of record [" + getId() + "] failed cause " + e.getMessage(), e);
+        }
+    }
+
+    // keep only the given columns in fields and images, should be called before they are read
+    synchronized void projectColumns(Set<String> columns) {
+        if (fieldsDecoded) {
+            throw new RuntimeException("LazyRecord: fields of record [" + getId() + "] are decoded before projection");
+        }
+        projectedColumns = columns;
+    }
+
+    // true if fields and images are filtered by column projection
+    public boolean isProjected() {
+        return null != projectedColumns;
+    }
+
+    @Override
+    public Object getFields() {
+        ensureFields();
+        return super.getFields();
+    }
+
+    @Override
+    public Object getBeforeImages() {
+        ensureBeforeImages();
+        return super.getBeforeImages();
+    }
+
+    @Override
+    public Object getAfterImages() {
+        ensureAfterImages();
+        return super.getAfterImages();
+    }
+
+    @Override
+    public synchronized void setFields(Object value) {
+        fieldsDecoded = true;
+        super.setFields(value);
+    }
+
+    @Override
+    public synchronized void setBeforeImages(Object value) {
+        beforeImagesDecoded = true;
+        super.setBeforeImages(value);
+    }
+
+    @Override
+    public synchronized void setAfterImages(Object value) {
+        afterImagesDecoded = true;
+        super.setAfterImages(value);
+    }
+
+    @Override
+    public Object get(int field) {
+        switch (field) {
+            case 11:
+                return getFields();
+            case 12:
+                return getBeforeImages();
+            case 13:
+                return getAfterImages();
+            default:
+                return super.get(field);
+        }
+    }
+
+    // direct decoder reads no more than it needs, so the stream position is exactly where the decoder stops
+    private static class PositionedInput extends ByteArrayInputStream {
+        PositionedInput(byte[] data, int offset) {
+            super(data, offset, data.length - offset);
+        }
+
+        int position() {
+            return pos;
+        }
+    }
+}
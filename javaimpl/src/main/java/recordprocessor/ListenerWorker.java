@@ -0,0 +1,207 @@
+package recordprocessor;
+
+import common.AsyncRecordListener;
+import common.RecordListener;
+import common.UserCommitCallBack;
+import common.UserRecord;
+import com.alibaba.dts.formats.avro.Record;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run one RecordListener on its own thread with its own queue, so a slow listener does not delay the others
+ * until its queue is full. Seen by processor as an async listener, the stage of a record completes after the listener
+ * returned for it and committed it (commit is cumulative in a partition), so the checkpoint of a partition is
+ * the minimum of the offsets committed by all listeners.
+ * Once the worker exits, by close or a listener failure, stages of records not completed yet complete exceptionally,
+ * so that processor releases them instead of waiting for them.
+ */
+public class ListenerWorker implements AsyncRecordListener, Runnable, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ListenerWorker.class);
+
+    private final String name;
+    private final RecordListener recordListener;
+    private final BlockingQueue<Pending> toConsume;
+    // records consumed or queued but not yet completed, by partition in offset order, guarded by this
+    private final Map<TopicPartition, ArrayDeque<Pending>> pendings = new HashMap<>();
+    private volatile long committedCount = 0;
+    // the last offset committed by the listener in each partition
+    private final Map<TopicPartition, Long> committedOffsets = new ConcurrentHashMap<>();
+    private volatile boolean existed = false;
+    // true while run() is consuming, records left are abandoned by run() when it returns
+    private volatile boolean running = false;
+
+    public ListenerWorker(String name, RecordListener recordListener, int queueSize) {
+        this.name = name;
+        this.recordListener = recordListener;
+        this.toConsume = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    // wait while the queue of this listener is full
+    @Override
+    public CompletionStage<String> consumeAsync(UserRecord record) {
+        Pending pending = new Pending(record.getTopicPartition(), record.getOffset(), record.getRecord());
+        synchronized (this) {
+            pendings.computeIfAbsent(pending.topicPartition, k -> new ArrayDeque<>()).addLast(pending);
+        }
+        try {
+            int offerTryCount = 0;
+            while (!toConsume.offer(pending, 1000, TimeUnit.MILLISECONDS) && !existed) {
+                if (++offerTryCount % 10 == 0) {
+                    log.info("ListenerWorker: queue of listener [{}] has been full for a period (10s)", name);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+        }
+        // the record may be offered after run() abandoned the queue
+        if (existed && !running) {
+            abandon();
+        }
+        return pending.future;
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        try {
+            consumeLoop();
+        } finally {
+            running = false;
+            abandon();
+        }
+    }
+
+    private void consumeLoop() {
+        while (!existed) {
+            Pending pending = null;
+            try {
+                pending = toConsume.poll(100, TimeUnit.MILLISECONDS);
+                if (null == pending) {
+                    continue;
+                }
+                recordListener.consume(new UserRecord(pending.topicPartition, pending.offset, pending.record, commitCallBack));
+                synchronized (this) {
+                    pending.returned = true;
+                    completeFinished(pending.topicPartition);
+                }
+            } catch (Exception e) {
+                log.error("ListenerWorker: listener [" + name + "] consume record failed, record [" + (null == pending ? null
+                        : pending.topicPartition + ":" + pending.offset) + "], cause " + e.getMessage(), e);
+                if (null != pending) {
+                    pending.future.completeExceptionally(e);
+                }
+                existed = true;
+            }
+        }
+    }
+
+    private final UserCommitCallBack commitCallBack = new UserCommitCallBack() {
+        @Override
+        public void commit(TopicPartition tp, Record commitRecord, long offset, String metadata) {
+            synchronized (ListenerWorker.this) {
+                ArrayDeque<Pending> partitionPendings = pendings.get(tp);
+                if (null == partitionPendings) {
+                    return;
+                }
+                committedOffsets.merge(tp, offset, Math::max);
+                for (Pending pending : partitionPendings) {
+                    if (pending.offset > offset) {
+                        break;
+                    }
+                    if (!pending.committed) {
+                        pending.committed = true;
+                        committedCount++;
+                    }
+                    if (pending.offset == offset) {
+                        pending.info = metadata;
+                    }
+                }
+                completeFinished(tp);
+            }
+        }
+    };
+
+    // should hold this, records are completed in offset order after the listener returned and committed them
+    private void completeFinished(TopicPartition topicPartition) {
+        ArrayDeque<Pending> partitionPendings = pendings.get(topicPartition);
+        while (!partitionPendings.isEmpty() && partitionPendings.peekFirst().returned && partitionPendings.peekFirst().committed) {
+            Pending pending = partitionPendings.pollFirst();
+            pending.future.complete(pending.info);
+        }
+    }
+
+    // complete records never consumed or committed exceptionally, should be called after the consuming thread stops
+    private synchronized void abandon() {
+        toConsume.clear();
+        RuntimeException cause = null;
+        for (ArrayDeque<Pending> partitionPendings : pendings.values()) {
+            while (!partitionPendings.isEmpty()) {
+                if (null == cause) {
+                    cause = new RuntimeException("ListenerWorker: listener [" + name + "] exited before the record is completed");
+                }
+                partitionPendings.pollFirst().future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int queuedSize() {
+        return toConsume.size();
+    }
+
+    // records of all partitions committed by the listener
+    public long getCommittedCount() {
+        return committedCount;
+    }
+
+    // -1 if the listener has not committed in the partition
+    public long getCommittedOffset(TopicPartition topicPartition) {
+        return committedOffsets.getOrDefault(topicPartition, -1L);
+    }
+
+    // called after records of a revoked partition are drained
+    public void forget(TopicPartition topicPartition) {
+        committedOffsets.remove(topicPartition);
+    }
+
+    @Override
+    public void close() {
+        existed = true;
+        if (!running) {
+            abandon();
+        }
+    }
+
+    private static class Pending {
+        private final TopicPartition topicPartition;
+        private final long offset;
+        private final Record record;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private String info;
+        private boolean returned;
+        private boolean committed;
+
+        private Pending(TopicPartition topicPartition, long offset, Record record) {
+            this.topicPartition = topicPartition;
+            this.offset = offset;
+            this.record = record;
+        }
+    }
+}
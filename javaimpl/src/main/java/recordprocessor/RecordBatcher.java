@@ -0,0 +1,169 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import common.MemoryBudget;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Group records of one partition into batches for listeners.
+ * Without transaction, a batch ends when it reaches maxRecords or maxBytes, or its first record waited lingerMS.
+ * In transaction mode, a batch is a transaction from BEGIN to COMMIT (or ROLLBACK, ABORT), a record outside
+ * any transaction is a batch of its own. A transaction over maxRecords or maxBytes is handed out in parts,
+ * only the part ending with COMMIT is complete, so the checkpoint never lands inside a transaction.
+ * Not thread safe, used by the processor thread only.
+ */
+public class RecordBatcher {
+    private final CheckpointTracker checkpointTracker;
+    private final boolean transactional;
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long lingerMS;
+    private List<ConsumerRecord<byte[], byte[]>> consumerRecords = new ArrayList<>();
+    private List<Record> records = new ArrayList<>();
+    private long bytes = 0;
+    private long firstAddMS = 0;
+    private boolean inTransaction = false;
+    // last offset of the last complete batch
+    private long boundaryOffset = -1;
+
+    /**
+     * @param maxBytes value bytes of a batch, 0 means no bound
+     * @param lingerMS not used in transaction mode
+     */
+    public RecordBatcher(CheckpointTracker checkpointTracker, boolean transactional, int maxRecords, long maxBytes, long lingerMS) {
+        this.checkpointTracker = checkpointTracker;
+        this.transactional = transactional;
+        this.maxRecords = Math.max(1, maxRecords);
+        this.maxBytes = maxBytes;
+        this.lingerMS = lingerMS;
+    }
+
+    /**
+     * @return the batch to process after the record is added, null if the record is buffered
+     */
+    public Batch add(ConsumerRecord<byte[], byte[]> consumerRecord, Record record) {
+        if (!transactional) {
+            append(consumerRecord, record);
+            return isFull() ? take(true) : null;
+        }
+        Operation operation = record.getOperation();
+        Batch ret = null;
+        if (operation == Operation.BEGIN) {
+            // the last transaction lost its end, it ends before the new one
+            ret = inTransaction && !records.isEmpty() ? take(true) : null;
+            inTransaction = true;
+            append(consumerRecord, record);
+        } else if (operation == Operation.COMMIT || operation == Operation.ROLLBACK || operation == Operation.ABORT) {
+            append(consumerRecord, record);
+            ret = take(true);
+        } else {
+            append(consumerRecord, record);
+            if (!inTransaction) {
+                ret = take(true);
+            } else if (isFull()) {
+                ret = take(false);
+            }
+        }
+        if (inTransaction) {
+            checkpointTracker.setOpenTransaction(records.size(), boundaryOffset);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the buffered batch if its first record waited lingerMS, always null in transaction mode
+     */
+    public Batch pollExpired(long nowMS) {
+        if (transactional || records.isEmpty() || nowMS - firstAddMS < lingerMS) {
+            return null;
+        }
+        return take(true);
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    private boolean isFull() {
+        return records.size() >= maxRecords || (maxBytes > 0 && bytes >= maxBytes);
+    }
+
+    private void append(ConsumerRecord<byte[], byte[]> consumerRecord, Record record) {
+        if (records.isEmpty()) {
+            firstAddMS = System.currentTimeMillis();
+        }
+        consumerRecords.add(consumerRecord);
+        records.add(record);
+        bytes += MemoryBudget.valueBytes(consumerRecord);
+    }
+
+    private Batch take(boolean complete) {
+        if (complete) {
+            boundaryOffset = consumerRecords.get(consumerRecords.size() - 1).offset();
+            if (inTransaction) {
+                inTransaction = false;
+                checkpointTracker.clearOpenTransaction();
+            }
+        }
+        Batch ret = new Batch(consumerRecords, records, bytes, complete);
+        consumerRecords = new ArrayList<>();
+        records = new ArrayList<>();
+        bytes = 0;
+        return ret;
+    }
+
+    // records not yet handed out, the batcher is empty after this call
+    public Batch discard() {
+        Batch ret = new Batch(consumerRecords, records, bytes, false);
+        consumerRecords = new ArrayList<>();
+        records = new ArrayList<>();
+        bytes = 0;
+        inTransaction = false;
+        return ret;
+    }
+
+    public CheckpointTracker getCheckpointTracker() {
+        return checkpointTracker;
+    }
+
+    public static class Batch {
+        private final List<ConsumerRecord<byte[], byte[]>> consumerRecords;
+        private final List<Record> records;
+        private final long bytes;
+        private final boolean complete;
+
+        private Batch(List<ConsumerRecord<byte[], byte[]>> consumerRecords, List<Record> records, long bytes, boolean complete) {
+            this.consumerRecords = consumerRecords;
+            this.records = records;
+            this.bytes = bytes;
+            this.complete = complete;
+        }
+
+        public List<ConsumerRecord<byte[], byte[]>> getConsumerRecords() {
+            return consumerRecords;
+        }
+
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        // value bytes of all records
+        public long getBytes() {
+            return bytes;
+        }
+
+        // false for a part of a transaction, the checkpoint may only advance to the last record of a complete batch
+        public boolean isComplete() {
+            return complete;
+        }
+
+        // offset whose commit advances the checkpoint, -1 for a part of a transaction
+        public long getBoundaryOffset() {
+            return complete ? consumerRecords.get(consumerRecords.size() - 1).offset() : -1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static recordgenerator.Names.*;
+
+/**
+ * Decide whether a record is handed to listeners, only by its header so that rejected records are never fully deserialized.
+ * Table patterns match record objectName (db.table, or db.schema.table for PostgreSQL), [*] matches any characters.
+ * A record is accepted if its operation is not excluded, and its objectName matches an include pattern (if any is given)
+ * and matches no exclude pattern. Records without objectName (BEGIN, COMMIT, HEARTBEAT...) are only filtered by operation.
+ * Not thread safe, decisions of objectName are cached.
+ */
+public class RecordFilter {
+    private static final int MAX_CACHED_TABLES = 65536;
+
+    private final List<Pattern> includeTables;
+    private final List<Pattern> excludeTables;
+    private final Set<Operation> excludeOperations;
+    private final Map<String, Boolean> tableDecisions = new HashMap<>();
+
+    public RecordFilter(String includeTables, String excludeTables, String excludeOperations) {
+        this.includeTables = compilePatterns(includeTables);
+        this.excludeTables = compilePatterns(excludeTables);
+        this.excludeOperations = EnumSet.noneOf(Operation.class);
+        for (String operation : StringUtils.split(StringUtils.defaultString(excludeOperations), ", ")) {
+            try {
+                this.excludeOperations.add(Operation.valueOf(operation.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("RecordFilter: unknown operation [" + operation + "]");
+            }
+        }
+    }
+
+    public static RecordFilter fromProperties(Properties properties) {
+        return new RecordFilter(properties.getProperty(FILTER_INCLUDE_TABLES), properties.getProperty(FILTER_EXCLUDE_TABLES),
+                properties.getProperty(FILTER_EXCLUDE_OPERATIONS));
+    }
+
+    private static List<Pattern> compilePatterns(String patterns) {
+        List<Pattern> ret = new ArrayList<>();
+        for (String pattern : StringUtils.split(StringUtils.defaultString(patterns), ", ")) {
+            StringBuilder regex = new StringBuilder();
+            String[] parts = StringUtils.splitPreserveAllTokens(pattern, '*');
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(parts[i]));
+            }
+            ret.add(Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE));
+        }
+        return ret;
+    }
+
+    // false if no filter is configured, then headers need not be parsed at all
+    public boolean isEnabled() {
+        return !includeTables.isEmpty() || !excludeTables.isEmpty() || !excludeOperations.isEmpty();
+    }
+
+    public boolean excludes(Operation operation) {
+        return excludeOperations.contains(operation);
+    }
+
+    public boolean accept(byte[] value) {
+        RecordHeader header = RecordHeader.parse(value);
+        return accept(header.getObjectName(), header.getOperation());
+    }
+
+    public boolean accept(String objectName, Operation operation) {
+        if (excludeOperations.contains(operation)) {
+            return false;
+        }
+        if (null == objectName) {
+            return true;
+        }
+        Boolean ret = tableDecisions.get(objectName);
+        if (null == ret) {
+            ret = (includeTables.isEmpty() || matchAny(includeTables, objectName)) && !matchAny(excludeTables, objectName);
+            if (tableDecisions.size() >= MAX_CACHED_TABLES) {
+                tableDecisions.clear();
+            }
+            tableDecisions.put(objectName, ret);
+        }
+        return ret;
+    }
+
+    private static boolean matchAny(List<Pattern> patterns, String objectName) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(objectName).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+
+import java.io.IOException;
+
+/**
+ * Read the leading attributes of a serialized record (up to objectName) without decoding fields and images.
+ * The layout follows the field order of com.alibaba.dts.formats.avro.Record, see avro/Record.avsc
+ */
+public class RecordHeader {
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final long id;
+    private final long sourceTimestamp;
+    private final String sourceTxid;
+    private final Operation operation;
+    private final String objectName;
+
+    private RecordHeader(long id, long sourceTimestamp, String sourceTxid, Operation operation, String objectName) {
+        this.id = id;
+        this.sourceTimestamp = sourceTimestamp;
+        this.sourceTxid = sourceTxid;
+        this.operation = operation;
+        this.objectName = objectName;
+    }
+
+    public static RecordHeader parse(byte[] data) {
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, null);
+        try {
+            // version
+            decoder.readInt();
+            long id = decoder.readLong();
+            long sourceTimestamp = decoder.readLong();
+            // sourcePosition, safeSourcePosition
+            decoder.skipString();
+            decoder.skipString();
+            String sourceTxid = decoder.readString();
+            // source: sourceType and version
+            decoder.readEnum();
+            decoder.skipString();
+            Operation operation = OPERATIONS[decoder.readEnum()];
+            String objectName = null;
+            // objectName is union [null, string]
+            if (decoder.readIndex() == 1) {
+                objectName = decoder.readString();
+            }
+            return new RecordHeader(id, sourceTimestamp, sourceTxid, operation, objectName);
+        } catch (IOException e) {
+            throw new RuntimeException("RecordHeader: parse record header failed cause " + e.getMessage(), e);
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getSourceTimestamp() {
+        return sourceTimestamp;
+    }
+
+    public String getSourceTxid() {
+        return sourceTxid;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    public String toString() {
+        return "RecordHeader[ id: " + id + ", timestamp: " + sourceTimestamp + ", operation: " + operation + ", objectName: " + objectName + "]";
+    }
+}
@@ -0,0 +1,35 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Record;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records whose listeners have all finished, AvroDeserializer reads the next record into them so that
+ * the object graph (images, fields, strings holder) of a record is reused instead of allocated per record.
+ * A record may be released by a thread other than the one which borrowed it.
+ */
+public class RecordPool {
+    private final BlockingQueue<Record> idleRecords;
+
+    public RecordPool(int capacity) {
+        this.idleRecords = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // null if no idle record
+    public Record borrow() {
+        return idleRecords.poll();
+    }
+
+    // the record should not be touched by anyone after released, the pool just drops it if full
+    public void release(Record record) {
+        if (null != record) {
+            idleRecords.offer(record);
+        }
+    }
+
+    public int idleSize() {
+        return idleRecords.size();
+    }
+}
@@ -0,0 +1,116 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Decide which shard a record goes to. Records of the same table always go to the same shard in table mode.
+ * In primary key mode, records of the same row go to the same shard, the key columns come from record tag [pk_uk_info],
+ * if the tag is absent the record falls back to table mode. Only tags and key columns of the record are decoded for it.
+ * An update moving a row to a shard of another key gets KEY_CHANGED, it should be processed after all shards are idle,
+ * otherwise later records of the new key may run on their own shard before the key change.
+ */
+public class RecordSharder {
+    private static final Logger log = LoggerFactory.getLogger(RecordSharder.class);
+    private static final String PK_UK_INFO_TAG = "pk_uk_info";
+    private static final String PRIMARY_KEY_NAME = "PRIMARY";
+    public static final int KEY_CHANGED = -1;
+
+    private final int shardNum;
+    private final boolean byPrimaryKey;
+    private final Map<String, Set<String>> keyColumnsCache = new HashMap<>();
+
+    public RecordSharder(int shardNum, String shardBy) {
+        this.shardNum = shardNum;
+        if (StringUtils.equalsIgnoreCase("table", shardBy)) {
+            this.byPrimaryKey = false;
+        } else if (StringUtils.equalsIgnoreCase("primaryKey", shardBy)) {
+            this.byPrimaryKey = true;
+        } else {
+            throw new RuntimeException("RecordSharder: unknown shard mode [" + shardBy + "]");
+        }
+    }
+
+    public boolean isByPrimaryKey() {
+        return byPrimaryKey;
+    }
+
+    // shard index, or KEY_CHANGED
+    public int shardOf(TopicPartition topicPartition, RecordHeader header, byte[] value) {
+        int hash = Objects.hashCode(topicPartition.topic()) * 31 + Objects.hashCode(header.getObjectName());
+        if (!byPrimaryKey) {
+            return toShard(hash);
+        }
+        LazyRecord record = new LazyRecord(value, null);
+        Set<String> keyColumns = getKeyColumns(record.getTags().get(PK_UK_INFO_TAG));
+        if (keyColumns.isEmpty()) {
+            return toShard(hash);
+        }
+        record.projectColumns(keyColumns);
+        if (!(record.getFields() instanceof List)) {
+            return toShard(hash);
+        }
+        List<Field> fields = (List<Field>) record.getFields();
+        // the row is hashed by the key it used to have
+        int shard = toShard(hash * 31 + primaryKeyHash(fields, keyColumns,
+                record.getOperation() == Operation.INSERT ? record.getAfterImages() : record.getBeforeImages()));
+        if (record.getOperation() == Operation.UPDATE
+                && shard != toShard(hash * 31 + primaryKeyHash(fields, keyColumns, record.getAfterImages()))) {
+            return KEY_CHANGED;
+        }
+        return shard;
+    }
+
+    private int toShard(int hash) {
+        return (hash & Integer.MAX_VALUE) % shardNum;
+    }
+
+    private int primaryKeyHash(List<Field> fields, Set<String> keyColumns, Object image) {
+        if (!(image instanceof List)) {
+            return 0;
+        }
+        List<Object> values = (List<Object>) image;
+        int hash = 1;
+        for (int i = 0; i < fields.size() && i < values.size(); i++) {
+            if (keyColumns.contains(fields.get(i).getName())) {
+                hash = hash * 31 + Objects.hashCode(values.get(i));
+            }
+        }
+        return hash;
+    }
+
+    // pk_uk_info looks like {"PRIMARY":["id"],"uk_name":["name"]}
+    private Set<String> getKeyColumns(String pkUkInfo) {
+        if (StringUtils.isEmpty(pkUkInfo)) {
+            return Collections.emptySet();
+        }
+        Set<String> ret = keyColumnsCache.get(pkUkInfo);
+        if (null == ret) {
+            ret = new HashSet<>();
+            try {
+                JSONObject keys = JSONObject.parseObject(pkUkInfo);
+                JSONArray columns = keys.getJSONArray(PRIMARY_KEY_NAME);
+                if (null == columns && !keys.isEmpty()) {
+                    columns = keys.getJSONArray(keys.keySet().iterator().next());
+                }
+                if (null != columns) {
+                    for (Object column : columns) {
+                        ret.add(String.valueOf(column));
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("RecordSharder: parse key info [" + pkUkInfo + "] failed cause " + e.getMessage() + ", use table shard");
+            }
+            keyColumnsCache.put(pkUkInfo, ret);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,109 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Converters of every column of a table, built once per table schema by FieldConverter.buildRowPlan(fields).
+ * The data type of each column is resolved when the plan is built, so an unknown type is reported once instead of
+ * failing on every value, converting a non null value of such a column throws.
+ * Plans of the builtin converters dispatch on the concrete adapter of each column, so the calls in convertRow stay
+ * monomorphic however many types the table mixes. A plan holds no state of a conversion and can be shared by threads.
+ */
+public abstract class RowPlan {
+    private static final Logger log = LoggerFactory.getLogger(RowPlan.class);
+
+    private final List<Field> fields;
+    private final boolean[] supported;
+    private final List<String> unsupportedColumns = new ArrayList<>();
+
+    protected RowPlan(List<Field> fields) {
+        this.fields = fields;
+        this.supported = new boolean[fields.size()];
+        for (int i = 0; i < supported.length; i++) {
+            supported[i] = true;
+        }
+    }
+
+    // called by subclass while building the plan
+    protected void markUnsupported(int column) {
+        supported[column] = false;
+        unsupportedColumns.add(fields.get(column).getName());
+        log.warn("RowPlan: unknown data type number [{}] of column [{}], its values can not be converted",
+                fields.get(column).getDataTypeNumber(), fields.get(column).getName());
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    public boolean isSupported(int column) {
+        return supported[column];
+    }
+
+    // names of the columns whose data type has no adapter
+    public List<String> getUnsupportedColumns() {
+        return Collections.unmodifiableList(unsupportedColumns);
+    }
+
+    public FieldValue convert(int column, Object value) {
+        if (!supported[column]) {
+            checkSupported(column, value);
+            return new FieldValue();
+        }
+        return toFieldValue(column, value);
+    }
+
+    // the buffer is reset first
+    public void convert(int column, Object value, FieldValueBuffer out) {
+        out.reset();
+        if (!supported[column]) {
+            checkSupported(column, value);
+            return;
+        }
+        write(column, value, out);
+    }
+
+    /**
+     * Convert the values of a row image one by one into [out] and call visitor after each column,
+     * the value in [out] is only valid until the visitor returns.
+     */
+    public void convertRow(List<Object> values, FieldValueBuffer out, ColumnVisitor visitor) {
+        int columnNum = Math.min(supported.length, values.size());
+        for (int i = 0; i < columnNum; i++) {
+            Object value = values.get(i);
+            out.reset();
+            if (supported[i]) {
+                write(i, value, out);
+            } else {
+                checkSupported(i, value);
+            }
+            visitor.visit(i, out);
+        }
+    }
+
+    private void checkSupported(int column, Object value) {
+        if (!supported[column] && null != value) {
+            Field field = fields.get(column);
+            throw new RuntimeException("RowPlan: unknown data type number [" + field.getDataTypeNumber() + "] of column [" + field.getName() + "]");
+        }
+    }
+
+    protected abstract FieldValue toFieldValue(int column, Object value);
+
+    // out is reset already
+    protected abstract void write(int column, Object value, FieldValueBuffer out);
+
+    public interface ColumnVisitor {
+        void visit(int column, FieldValueBuffer value);
+    }
+}
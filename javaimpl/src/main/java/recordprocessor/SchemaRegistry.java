@@ -0,0 +1,165 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.SourceType;
+import common.TableSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schemas of the tables seen in records, keyed by objectName.
+ * A record matches the cached schema of its table by a fingerprint of its field list (names and data type numbers),
+ * computed in one pass without allocation, the schema is only rebuilt when the fingerprint changes,
+ * and dropped when a ddl of the table or its database is seen, tables are indexed by database so a database ddl
+ * only visits its own tables.
+ * Column names are interned, and the RowPlan of the table is built once with the schema,
+ * from the given FieldConverter or the one of the record source type. Thread safe.
+ */
+public class SchemaRegistry {
+    private static final Logger log = LoggerFactory.getLogger(SchemaRegistry.class);
+    private static final SchemaRegistry SHARED = new SchemaRegistry();
+    private static final int MAX_INTERNED_NAMES = 65536;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // converter of every source type if no converter is given, null for unsupported source types
+    private final FieldConverter fieldConverter;
+    private final Map<SourceType, FieldConverter> sourceConverters = new EnumMap<>(SourceType.class);
+    private final Map<String, TableSchema> schemas = new ConcurrentHashMap<>();
+    // objectNames of cached schemas by database, the part of objectName before the first dot
+    private final Map<String, Set<String>> databaseTables = new ConcurrentHashMap<>();
+    private final Map<String, String> internedNames = new ConcurrentHashMap<>();
+    private final AtomicLong rebuildCount = new AtomicLong(0);
+
+    public SchemaRegistry() {
+        this(null);
+    }
+
+    public SchemaRegistry(FieldConverter fieldConverter) {
+        this.fieldConverter = fieldConverter;
+        if (null == fieldConverter) {
+            for (SourceType sourceType : SourceType.values()) {
+                try {
+                    sourceConverters.put(sourceType, FieldConverter.getConverter(sourceType.name(), null));
+                } catch (RuntimeException e) {
+                    log.debug("SchemaRegistry: no field converter for source type [{}]", sourceType);
+                }
+            }
+        }
+    }
+
+    // the registry used by TableSchema.of(record), ddl is reported to it by EtlRecordProcessor
+    public static SchemaRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return schema of the table the record belongs to, null if the record carries no column (ddl, begin, commit...)
+     */
+    public TableSchema lookup(Record record) {
+        if (!(record.getFields() instanceof List)) {
+            return null;
+        }
+        List<Field> fields = (List<Field>) record.getFields();
+        SourceType sourceType = null == record.getSource() ? null : record.getSource().getSourceType();
+        long fingerprint = fingerprint(sourceType, fields);
+        String objectName = record.getObjectName();
+        if (null == objectName) {
+            return build(null, fingerprint, fields, sourceType);
+        }
+        TableSchema ret = schemas.get(objectName);
+        if (null == ret || ret.getFingerprint() != fingerprint) {
+            ret = build(objectName, fingerprint, fields, sourceType);
+            if (null == schemas.put(objectName, ret)) {
+                int dot = objectName.indexOf('.');
+                if (dot > 0) {
+                    databaseTables.computeIfAbsent(objectName.substring(0, dot), k -> ConcurrentHashMap.newKeySet()).add(objectName);
+                }
+            }
+            rebuildCount.incrementAndGet();
+        }
+        return ret;
+    }
+
+    // drop the schema of a table, or of all tables in a database if objectName has no table part
+    public void invalidate(String objectName) {
+        if (null == objectName) {
+            return;
+        }
+        int dot = objectName.indexOf('.');
+        if (dot < 0) {
+            schemas.remove(objectName);
+            Set<String> tables = databaseTables.remove(objectName);
+            if (null != tables) {
+                for (String table : tables) {
+                    schemas.remove(table);
+                }
+            }
+        } else if (null != schemas.remove(objectName)) {
+            Set<String> tables = databaseTables.get(objectName.substring(0, dot));
+            if (null != tables) {
+                tables.remove(objectName);
+            }
+        }
+    }
+
+    public int size() {
+        return schemas.size();
+    }
+
+    // times a schema was built for a table, the first one included
+    public long getRebuildCount() {
+        return rebuildCount.get();
+    }
+
+    static long fingerprint(SourceType sourceType, List<Field> fields) {
+        long ret = mix(FNV_OFFSET, null == sourceType ? -1 : sourceType.ordinal());
+        ret = mix(ret, fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            String name = field.getName();
+            for (int j = 0; j < name.length(); j++) {
+                ret = mix(ret, name.charAt(j));
+            }
+            // separate the name from the next one
+            ret = mix(ret, -1);
+            ret = mix(ret, field.getDataTypeNumber());
+        }
+        return ret;
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private TableSchema build(String objectName, long fingerprint, List<Field> fields, SourceType sourceType) {
+        FieldConverter converter = null != fieldConverter ? fieldConverter : (null == sourceType ? null : sourceConverters.get(sourceType));
+        List<Field> ownedFields = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            // the record may be reused by the deserializer, so never keep its fields
+            ownedFields.add(new Field(intern(field.getName()), field.getDataTypeNumber()));
+        }
+        return new TableSchema(objectName, fingerprint, ownedFields, null == converter ? null : converter.buildRowPlan(ownedFields));
+    }
+
+    private String intern(String name) {
+        String ret = internedNames.get(name);
+        if (null == ret) {
+            ret = name;
+            if (internedNames.size() < MAX_INTERNED_NAMES) {
+                String previous = internedNames.putIfAbsent(name, name);
+                ret = null == previous ? name : previous;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,86 @@
+package recordprocessor;
+
+import com.alibaba.dts.formats.avro.Record;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One shard of EtlRecordProcessor in parallel mode, deserialize and consume the records dispatched to it in order.
+ */
+public class ShardWorker implements Runnable, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ShardWorker.class);
+
+    private final int shardIndex;
+    private final EtlRecordProcessor recordProcessor;
+    private final BlockingQueue<Task> toProcessTasks;
+    private final AtomicInteger pendingTaskNum = new AtomicInteger(0);
+    private final AvroDeserializer deserializer;
+    private volatile boolean existed = false;
+
+    public ShardWorker(int shardIndex, int queueSize, EtlRecordProcessor recordProcessor) {
+        this.shardIndex = shardIndex;
+        this.recordProcessor = recordProcessor;
+        this.deserializer = recordProcessor.createDeserializer();
+        this.toProcessTasks = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    public boolean offer(Task task, long timeOut, TimeUnit timeUnit) throws InterruptedException {
+        pendingTaskNum.incrementAndGet();
+        if (toProcessTasks.offer(task, timeOut, timeUnit)) {
+            return true;
+        }
+        pendingTaskNum.decrementAndGet();
+        return false;
+    }
+
+    // true if all offered tasks are processed
+    public boolean isIdle() {
+        return pendingTaskNum.get() == 0;
+    }
+
+    @Override
+    public void run() {
+        while (!existed) {
+            Task task = null;
+            try {
+                task = toProcessTasks.poll(100, TimeUnit.MILLISECONDS);
+                if (null == task) {
+                    continue;
+                }
+                Record record = deserializer.deserialize(task.consumerRecord.value());
+                recordProcessor.process(task.consumerRecord, record, shardIndex, task.entry);
+            } catch (Exception e) {
+                log.error("ShardWorker: shard [" + shardIndex + "] process record failed, raw consumer record [" + (null == task ? null : task.consumerRecord)
+                        + "], cause " + e.getMessage(), e);
+                recordProcessor.onProcessFailed();
+                existed = true;
+            } finally {
+                if (null != task) {
+                    pendingTaskNum.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        existed = true;
+    }
+
+    public static class Task {
+        private final ConsumerRecord<byte[], byte[]> consumerRecord;
+        private final CheckpointTracker.Entry entry;
+
+        public Task(ConsumerRecord<byte[], byte[]> consumerRecord, CheckpointTracker.Entry entry) {
+            this.consumerRecord = consumerRecord;
+            this.entry = entry;
+        }
+    }
+}
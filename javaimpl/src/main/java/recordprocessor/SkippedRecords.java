@@ -0,0 +1,38 @@
+package recordprocessor;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Stands for a run of records of a partition dropped by stream.filter, offset is the last record of the run.
+ * Generator hands it to processor in place of the run, so that the checkpoint of the partition moves over the run
+ * once the records offered before it are committed, instead of staying at the last accepted record.
+ * It carries no value and never reaches listeners.
+ */
+public class SkippedRecords extends ConsumerRecord<byte[], byte[]> {
+    private final long sourceTimestamp;
+    private final long precedingOffset;
+
+    /**
+     * @param sourceTimestamp source timestamp of the last skipped record, used as checkpoint timestamp
+     * @param precedingOffset offset of the last record of the partition offered before the run, -1 if none
+     */
+    public SkippedRecords(String topic, int partition, long offset, long sourceTimestamp, long precedingOffset) {
+        super(topic, partition, offset, null, null);
+        this.sourceTimestamp = sourceTimestamp;
+        this.precedingOffset = precedingOffset;
+    }
+
+    public long getSourceTimestamp() {
+        return sourceTimestamp;
+    }
+
+    public long getPrecedingOffset() {
+        return precedingOffset;
+    }
+
+    @Override
+    public String toString() {
+        return "SkippedRecords(topic = " + topic() + ", partition = " + partition() + ", offset = " + offset()
+                + ", sourceTimestamp = " + sourceTimestamp + ", precedingOffset = " + precedingOffset + ")";
+    }
+}
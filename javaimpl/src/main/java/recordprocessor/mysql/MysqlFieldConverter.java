@@ -3,13 +3,131 @@ package recordprocessor.mysql;
 import com.alibaba.dts.formats.avro.Field;
 import recordprocessor.FieldConverter;
 import recordprocessor.FieldValue;
+import recordprocessor.FieldValueBuffer;
+import recordprocessor.RowPlan;
+
+import java.util.Arrays;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.*;
+import static common.Util.toByteArray;
 
 public class MysqlFieldConverter implements FieldConverter {
     @Override
     public FieldValue convert(Field field, Object o) {
-        return DATA_ADAPTER[field.getDataTypeNumber()].getFieldValue(o);
+        return adapterOf(field).getFieldValue(o);
+    }
+
+    @Override
+    public void convert(Field field, Object o, FieldValueBuffer out) {
+        DataAdapter dataAdapter = adapterOf(field);
+        out.reset();
+        dataAdapter.writeFieldValue(o, out);
+    }
+
+    private static DataAdapter findAdapter(Field field) {
+        int dataTypeNumber = field.getDataTypeNumber();
+        return dataTypeNumber >= 0 && dataTypeNumber < DATA_ADAPTER.length ? DATA_ADAPTER[dataTypeNumber] : null;
+    }
+
+    private static DataAdapter adapterOf(Field field) {
+        DataAdapter dataAdapter = findAdapter(field);
+        if (null == dataAdapter) {
+            throw new RuntimeException("MysqlFieldConverter: unknown field data type number: " + field.getDataTypeNumber());
+        }
+        return dataAdapter;
+    }
+
+    @Override
+    public RowPlan buildRowPlan(List<Field> fields) {
+        return new MysqlRowPlan(fields);
+    }
+
+    static class MysqlRowPlan extends RowPlan {
+        // a case in write for each adapter class, in this order
+        private static final List<Class<? extends DataAdapter>> ADAPTER_CLASSES = Arrays.asList(
+                UTF8StringEncodeAdapter.class,
+                NumberStringAdapter.class,
+                DecimalStringAdapter.class,
+                DoubleStringAdapter.class,
+                TimestampStringAdapter.class,
+                DateAdapter.class,
+                TimeAdapter.class,
+                DateTimeAdapter.class,
+                YearAdapter.class,
+                CharacterAdapter.class,
+                GeometryAdapter.class,
+                BinaryAdapter.class,
+                TextObjectAdapter.class);
+
+        private final DataAdapter[] adapters;
+        private final int[] adapterKinds;
+
+        MysqlRowPlan(List<Field> fields) {
+            super(fields);
+            this.adapters = new DataAdapter[fields.size()];
+            this.adapterKinds = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                adapters[i] = findAdapter(fields.get(i));
+                if (null == adapters[i]) {
+                    markUnsupported(i);
+                }
+                adapterKinds[i] = null == adapters[i] ? -1 : ADAPTER_CLASSES.indexOf(adapters[i].getClass());
+            }
+        }
+
+        @Override
+        protected FieldValue toFieldValue(int column, Object value) {
+            return adapters[column].getFieldValue(value);
+        }
+
+        @Override
+        protected void write(int column, Object value, FieldValueBuffer out) {
+            DataAdapter adapter = adapters[column];
+            switch (adapterKinds[column]) {
+                case 0:
+                    ((UTF8StringEncodeAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 1:
+                    ((NumberStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 2:
+                    ((DecimalStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 3:
+                    ((DoubleStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 4:
+                    ((TimestampStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 5:
+                    ((DateAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 6:
+                    ((TimeAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 7:
+                    ((DateTimeAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 8:
+                    ((YearAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 9:
+                    ((CharacterAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 10:
+                    ((GeometryAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 11:
+                    ((BinaryAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 12:
+                    ((TextObjectAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                default:
+                    adapter.writeFieldValue(value, out);
+            }
+        }
     }
 
 
@@ -58,6 +176,11 @@ public class MysqlFieldConverter implements FieldConverter {
     static interface DataAdapter {
         
         FieldValue getFieldValue(Object data);
+
+        // same value as getFieldValue, encoded into a reset buffer
+        default void writeFieldValue(Object data, FieldValueBuffer out) {
+            out.copyFrom(getFieldValue(data));
+        }
     }
 
 
@@ -72,6 +195,13 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("UTF8");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendUtf8((CharSequence) data);
+            }
+            out.setEncoding("UTF8");
+        }
     }
 
     static class NumberStringAdapter implements DataAdapter {
@@ -84,6 +214,13 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.Integer) data).getValue());
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
     static class DecimalStringAdapter implements DataAdapter {
@@ -96,6 +233,13 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.Decimal) data).getValue());
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
     static class DoubleStringAdapter implements DataAdapter {
@@ -108,6 +252,14 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        // Double.toString still allocates a short string
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(Double.toString(((com.alibaba.dts.formats.avro.Float) data).getValue()));
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
     static class TimestampStringAdapter implements DataAdapter {
@@ -133,10 +285,39 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.Timestamp timestamp = (com.alibaba.dts.formats.avro.Timestamp) data;
+                out.appendLong(timestamp.getTimestamp());
+                if (null != timestamp.getMillis()) {
+                    out.append((byte) '.').appendDigits(timestamp.getMillis(), 6);
+                }
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
     static abstract class AbstractDateTimeAdapter implements DataAdapter {
 
+        void writeDate(com.alibaba.dts.formats.avro.DateTime dateTime, FieldValueBuffer out) {
+            out.appendDigits(dateTime.getYear(), 4).append((byte) '-')
+                    .appendDigits(dateTime.getMonth(), 2).append((byte) '-')
+                    .appendDigits(dateTime.getDay(), 2);
+        }
+
+        void writeTime(int hour, int minute, int second, FieldValueBuffer out) {
+            out.appendDigits(hour, 2).append((byte) ':')
+                    .appendDigits(minute, 2).append((byte) ':')
+                    .appendDigits(second, 2);
+        }
+
+        void writeTimeMillis(Integer millis, FieldValueBuffer out) {
+            if (null != millis && 0 != millis) {
+                out.append((byte) '.').appendDigits(millis, 6);
+            }
+        }
+
         void encodeDate(com.alibaba.dts.formats.avro.DateTime dateTime, byte[] out, int position) {
             if (null != dateTime && null != out) {
                 out[position] = (byte) ('0' + (dateTime.getYear() / 1000));
@@ -200,6 +381,13 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                writeDate((com.alibaba.dts.formats.avro.DateTime) data, out);
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
 
@@ -256,6 +444,34 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("ASCII");
             return fieldValue;
         }
+
+        // same as getFieldValue, but the sign is applied to local copies instead of the record value
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                int hour = dateTime.getHour();
+                int minute = dateTime.getMinute();
+                int second = dateTime.getSecond();
+                Integer millis = dateTime.getMillis();
+                boolean negative = (hour < 0) || (minute < 0) || (second < 0) || ((null != millis) && (millis < 0));
+                if ((hour <= -100 || hour >= 100 || negative) && hour <= 0) {
+                    hour = -hour;
+                    minute = -minute;
+                    second = -second;
+                    if (null != millis) {
+                        millis = -millis;
+                    }
+                    out.append((byte) '-');
+                }
+                if (hour >= 100) {
+                    out.append((byte) ('0' + (hour / 100)));
+                    hour %= 100;
+                }
+                writeTime(hour, minute, second, out);
+                writeTimeMillis(millis, out);
+            }
+            out.setEncoding("ASCII");
+        }
     }
 
     static class DateTimeAdapter extends AbstractDateTimeAdapter {
@@ -285,6 +501,17 @@ public class MysqlFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                writeDate(dateTime, out);
+                out.append((byte) ' ');
+                writeTime(dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond(), out);
+                writeTimeMillis(dateTime.getMillis(), out);
+            }
+            out.setEncoding("ASCII");
+        }
+
     }
 
 
@@ -302,6 +529,13 @@ public class MysqlFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendLong(((com.alibaba.dts.formats.avro.DateTime) data).getYear());
+            }
+            out.setEncoding("ASCII");
+        }
+
     }
 
     static class CharacterAdapter implements DataAdapter  {
@@ -311,7 +545,7 @@ public class MysqlFieldConverter implements FieldConverter {
             FieldValue fieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
-                fieldValue.setValue(character.getValue().array());
+                fieldValue.setValue(toByteArray(character.getValue()));
                 fieldValue.setEncoding(character.getCharset());
             } else {
                 fieldValue.setEncoding("ASCII");
@@ -319,6 +553,16 @@ public class MysqlFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
+                out.wrap(character.getValue());
+                out.setEncoding(character.getCharset());
+            } else {
+                out.setEncoding("ASCII");
+            }
+        }
+
     }
 
     static class GeometryAdapter implements DataAdapter  {
@@ -328,10 +572,16 @@ public class MysqlFieldConverter implements FieldConverter {
             FieldValue fieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.BinaryGeometry geometry = (com.alibaba.dts.formats.avro.BinaryGeometry) data;
-                fieldValue.setValue(geometry.getValue().array());
+                fieldValue.setValue(toByteArray(geometry.getValue()));
             }
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.wrap(((com.alibaba.dts.formats.avro.BinaryGeometry) data).getValue());
+            }
+        }
     }
 
 
@@ -342,10 +592,16 @@ public class MysqlFieldConverter implements FieldConverter {
             FieldValue fieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.BinaryObject binaryObject = (com.alibaba.dts.formats.avro.BinaryObject) data;
-                fieldValue.setValue(binaryObject.getValue().array());
+                fieldValue.setValue(toByteArray(binaryObject.getValue()));
             }
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.wrap(((com.alibaba.dts.formats.avro.BinaryObject) data).getValue());
+            }
+        }
     }
 
 
@@ -362,5 +618,12 @@ public class MysqlFieldConverter implements FieldConverter {
             fieldValue.setEncoding("UTF8");
             return fieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendUtf8(((com.alibaba.dts.formats.avro.TextObject) data).getValue());
+            }
+            out.setEncoding("UTF8");
+        }
     }
 }
@@ -2,6 +2,7 @@ package recordprocessor.oracle;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static common.Util.toByteArray;
 
 import com.alibaba.dts.formats.avro.Field;
 
@@ -9,6 +10,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordprocessor.FieldConverter;
 import recordprocessor.FieldValue;
+import recordprocessor.FieldValueBuffer;
+import recordprocessor.RowPlan;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class OracleFieldConverter implements FieldConverter {
     private static final Logger log = LoggerFactory.getLogger(OracleFieldConverter.class);
@@ -46,13 +52,107 @@ public class OracleFieldConverter implements FieldConverter {
 
     @Override
     public FieldValue convert(Field field, Object o) {
-         DataAdapter dataAdapter = DATA_ADAPTERS[field.getDataTypeNumber()];
+        return adapterOf(field).getFieldValue(o);
+    }
+
+    @Override
+    public void convert(Field field, Object o, FieldValueBuffer out) {
+        DataAdapter dataAdapter = adapterOf(field);
+        out.reset();
+        dataAdapter.writeFieldValue(o, out);
+    }
+
+    private static DataAdapter findAdapter(Field field) {
+        int dataTypeNumber = field.getDataTypeNumber();
+        return dataTypeNumber >= 0 && dataTypeNumber < DATA_ADAPTERS.length ? DATA_ADAPTERS[dataTypeNumber] : null;
+    }
+
+    private static DataAdapter adapterOf(Field field) {
+        DataAdapter dataAdapter = findAdapter(field);
+        if (null == dataAdapter) {
+            throw new RuntimeException("OracleFieldConverter: unknown field data type number: " + field.getDataTypeNumber());
+        }
+        return dataAdapter;
+    }
+
+    @Override
+    public RowPlan buildRowPlan(List<Field> fields) {
+        return new OracleRowPlan(fields);
+    }
 
-         if(dataAdapter == null) {
-             log.error("unknown field data type number: " + field.getDataTypeNumber());
-         }
+    static class OracleRowPlan extends RowPlan {
+        // a case in write for each adapter class, in this order
+        private static final List<Class<? extends DataAdapter>> ADAPTER_CLASSES = Arrays.asList(
+                DecimalStringAdapter.class,
+                DoubleStringAdapter.class,
+                CharacterAdapter.class,
+                DateAdapter.class,
+                TimestampStringAdapter.class,
+                TimestampTimeZoneAdapter.class,
+                TextObjectAdapter.class,
+                BinaryAdapter.class,
+                IntervalYearToMonthAdapter.class,
+                IntervalDayToSecondAdapter.class);
+
+        private final DataAdapter[] adapters;
+        private final int[] adapterKinds;
+
+        OracleRowPlan(List<Field> fields) {
+            super(fields);
+            this.adapters = new DataAdapter[fields.size()];
+            this.adapterKinds = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                adapters[i] = findAdapter(fields.get(i));
+                if (null == adapters[i]) {
+                    markUnsupported(i);
+                }
+                adapterKinds[i] = null == adapters[i] ? -1 : ADAPTER_CLASSES.indexOf(adapters[i].getClass());
+            }
+        }
 
-        return dataAdapter.getFieldValue(o);
+        @Override
+        protected FieldValue toFieldValue(int column, Object value) {
+            return adapters[column].getFieldValue(value);
+        }
+
+        @Override
+        protected void write(int column, Object value, FieldValueBuffer out) {
+            DataAdapter adapter = adapters[column];
+            switch (adapterKinds[column]) {
+                case 0:
+                    ((DecimalStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 1:
+                    ((DoubleStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 2:
+                    ((CharacterAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 3:
+                    ((DateAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 4:
+                    ((TimestampStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 5:
+                    ((TimestampTimeZoneAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 6:
+                    ((TextObjectAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 7:
+                    ((BinaryAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 8:
+                    ((IntervalYearToMonthAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 9:
+                    ((IntervalDayToSecondAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                default:
+                    adapter.writeFieldValue(value, out);
+            }
+        }
     }
 
     static {
@@ -92,6 +192,11 @@ public class OracleFieldConverter implements FieldConverter {
          */
         FieldValue getFieldValue(Object data);
 
+        // same value as getFieldValue, encoded into a reset buffer
+        default void writeFieldValue(Object data, FieldValueBuffer out) {
+            out.copyFrom(getFieldValue(data));
+        }
+
         int getRawType();
 
     }
@@ -112,6 +217,13 @@ public class OracleFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.Decimal) data).getValue());
+            }
+            out.setEncoding("ASCII");
+        }
+
         @Override
         public int getRawType() {
             return BIG_DECIMAL;
@@ -132,6 +244,13 @@ public class OracleFieldConverter implements FieldConverter {
             return FieldValue;
         }
 
+        // Double.toString still allocates a short string
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(Double.toString(((com.alibaba.dts.formats.avro.Float) data).getValue()));
+            }
+        }
+
         @Override
         public int getRawType() {
             return DOUBLE;
@@ -140,6 +259,22 @@ public class OracleFieldConverter implements FieldConverter {
 
     static abstract class AbstractDateTimeAdapter implements DataAdapter {
 
+        void writeDateTime(com.alibaba.dts.formats.avro.DateTime dateTime, int year, FieldValueBuffer out) {
+            out.appendDigits(year, 4).append((byte) '-')
+                    .appendDigits(dateTime.getMonth(), 2).append((byte) '-')
+                    .appendDigits(dateTime.getDay(), 2).append((byte) ' ')
+                    .appendDigits(dateTime.getHour(), 2).append((byte) ':')
+                    .appendDigits(dateTime.getMinute(), 2).append((byte) ':')
+                    .appendDigits(dateTime.getSecond(), 2);
+        }
+
+        // Oracle可以精确到纳秒
+        void writeTimeMillis(com.alibaba.dts.formats.avro.DateTime dateTime, FieldValueBuffer out) {
+            if (null != dateTime.getMillis()) {
+                out.append((byte) '.').appendDigits(dateTime.getMillis(), 9);
+            }
+        }
+
         static int TIMESTAMP_MILLS_LEN = "0000-00-00 00:00:00.000000000".length();
         static int TIMESTAMP_LEN = "0000-00-00 00:00:00".length();
         static int DATE_LEN = "0000-00-00".length();
@@ -233,6 +368,15 @@ public class OracleFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                writeDateTime(dateTime, dateTime.getYear(), out);
+                writeTimeMillis(dateTime, out);
+            }
+            out.setEncoding("ASCII");
+        }
+
         @Override
         public int getRawType() {
             return TIMESTAMP;
@@ -271,6 +415,17 @@ public class OracleFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.TimestampWithTimeZone timestampWithTimeZone = (com.alibaba.dts.formats.avro.TimestampWithTimeZone) data;
+                com.alibaba.dts.formats.avro.DateTime dateTime = timestampWithTimeZone.getValue();
+                writeDateTime(dateTime, dateTime.getYear(), out);
+                writeTimeMillis(dateTime, out);
+                out.append((byte) ' ').appendAscii(String.valueOf(timestampWithTimeZone.getTimezone()));
+            }
+            out.setEncoding("ASCII");
+        }
+
         @Override
         public int getRawType() {
             return TIMESTAMPTIMEZONE;
@@ -320,6 +475,20 @@ public class OracleFieldConverter implements FieldConverter {
             return fieldValue;
         }
 
+        // same as getFieldValue, but the sign of year is not written back to the record value
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                int year = dateTime.getYear();
+                if (year < 0) {
+                    out.append((byte) '-');
+                    year = -year;
+                }
+                writeDateTime(dateTime, year, out);
+            }
+            out.setEncoding("ASCII");
+        }
+
         @Override
         public int getRawType() {
             return DATETIME;
@@ -334,11 +503,17 @@ public class OracleFieldConverter implements FieldConverter {
             FieldValue fieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.BinaryObject binaryObject = (com.alibaba.dts.formats.avro.BinaryObject) data;
-                fieldValue.setValue(binaryObject.getValue().array());
+                fieldValue.setValue(toByteArray(binaryObject.getValue()));
             }
             return fieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.wrap(((com.alibaba.dts.formats.avro.BinaryObject) data).getValue());
+            }
+        }
+
         @Override
         public int getRawType() {
             return BYTES;
@@ -361,6 +536,12 @@ public class OracleFieldConverter implements FieldConverter {
             return FieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.TextObject) data).getValue());
+            }
+        }
+
         @Override
         public int getRawType() {
             return STRING;
@@ -376,13 +557,23 @@ public class OracleFieldConverter implements FieldConverter {
             FieldValue fieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
-                fieldValue.setValue(character.getValue().array());
+                fieldValue.setValue(toByteArray(character.getValue()));
                 fieldValue.setEncoding(character.getCharset());
             } else {
                 fieldValue.setEncoding("ASCII");
             }
             return fieldValue;
         }
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
+                out.wrap(character.getValue());
+                out.setEncoding(character.getCharset());
+            } else {
+                out.setEncoding("ASCII");
+            }
+        }
+
         @Override
         public int getRawType() {
             return STRING;
@@ -416,6 +607,17 @@ public class OracleFieldConverter implements FieldConverter {
             return FieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                if (dateTime.getYear() < 0) {
+                    out.append((byte) '-').appendLong(-dateTime.getYear()).append((byte) '-').appendLong(-dateTime.getMonth());
+                } else {
+                    out.appendLong(dateTime.getYear()).append((byte) '-').appendLong(dateTime.getMonth());
+                }
+            }
+        }
+
         @Override
         public int getRawType() {
             return STRING;
@@ -486,6 +688,23 @@ public class OracleFieldConverter implements FieldConverter {
             return FieldValue;
         }
 
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                int sign = dateTime.getDay() < 0 ? -1 : 1;
+                if (sign < 0) {
+                    out.append((byte) '-');
+                }
+                out.appendLong(sign * dateTime.getDay()).append((byte) ' ')
+                        .appendLong(sign * dateTime.getHour()).append((byte) ':')
+                        .appendLong(sign * dateTime.getMinute()).append((byte) ':')
+                        .appendLong(sign * dateTime.getSecond());
+                if (null != dateTime.getMillis()) {
+                    out.append((byte) '.').appendDigits(sign * dateTime.getMillis(), 9);
+                }
+            }
+        }
+
         @Override
         public int getRawType() {
             return STRING;
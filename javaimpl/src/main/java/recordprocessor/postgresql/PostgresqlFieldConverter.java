@@ -1,14 +1,21 @@
 package recordprocessor.postgresql;
 
 import com.alibaba.dts.formats.avro.Field;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import recordprocessor.FieldConverter;
 import recordprocessor.FieldValue;
+import recordprocessor.FieldValueBuffer;
+import recordprocessor.RowPlan;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static common.Util.toByteArray;
 
 public class PostgresqlFieldConverter implements FieldConverter {
     private static final Logger log = LoggerFactory.getLogger(PostgresqlFieldConverter.class);
@@ -427,13 +434,111 @@ public class PostgresqlFieldConverter implements FieldConverter {
 
     @Override
     public FieldValue convert(Field field, Object o) {
-        DataAdapter dataAdapter = DATA_ADAPTERS[field.getDataTypeNumber()];
+        return adapterOf(field).getFieldValue(o);
+    }
+
+    @Override
+    public void convert(Field field, Object o, FieldValueBuffer out) {
+        DataAdapter dataAdapter = adapterOf(field);
+        out.reset();
+        dataAdapter.writeFieldValue(o, out);
+    }
+
+    private static DataAdapter findAdapter(Field field) {
+        int dataTypeNumber = field.getDataTypeNumber();
+        return dataTypeNumber >= 0 && dataTypeNumber < DATA_ADAPTERS.length ? DATA_ADAPTERS[dataTypeNumber] : null;
+    }
+
+    private static DataAdapter adapterOf(Field field) {
+        DataAdapter dataAdapter = findAdapter(field);
+        if (null == dataAdapter) {
+            throw new RuntimeException("PostgresqlFieldConverter: unknown field data type number: " + field.getDataTypeNumber());
+        }
+        return dataAdapter;
+    }
+
+    @Override
+    public RowPlan buildRowPlan(List<Field> fields) {
+        return new PostgresqlRowPlan(fields);
+    }
+
+    static class PostgresqlRowPlan extends RowPlan {
+        // a case in write for each adapter class, in this order
+        private static final List<Class<? extends DataAdapter>> ADAPTER_CLASSES = Arrays.asList(
+                NumberStringAdapter.class,
+                DecimalStringAdapter.class,
+                DoubleStringAdapter.class,
+                CharacterAdapter.class,
+                TimeAdapter.class,
+                TimeTimeZoneAdapter.class,
+                TimestampStringAdapter.class,
+                TimestampTimeZoneAdapter.class,
+                DateAdapter.class,
+                BinaryAdapter.class,
+                TextObjectAdapter.class);
+
+        private final DataAdapter[] adapters;
+        private final int[] adapterKinds;
+
+        PostgresqlRowPlan(List<Field> fields) {
+            super(fields);
+            this.adapters = new DataAdapter[fields.size()];
+            this.adapterKinds = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                adapters[i] = findAdapter(fields.get(i));
+                if (null == adapters[i]) {
+                    markUnsupported(i);
+                }
+                adapterKinds[i] = null == adapters[i] ? -1 : ADAPTER_CLASSES.indexOf(adapters[i].getClass());
+            }
+        }
 
-        if(dataAdapter == null) {
-            log.error("unknown field data type number: " + field.getDataTypeNumber());
+        @Override
+        protected FieldValue toFieldValue(int column, Object value) {
+            return adapters[column].getFieldValue(value);
         }
 
-        return dataAdapter.getFieldValue(o);
+        @Override
+        protected void write(int column, Object value, FieldValueBuffer out) {
+            DataAdapter adapter = adapters[column];
+            switch (adapterKinds[column]) {
+                case 0:
+                    ((NumberStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 1:
+                    ((DecimalStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 2:
+                    ((DoubleStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 3:
+                    ((CharacterAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 4:
+                    ((TimeAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 5:
+                    ((TimeTimeZoneAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 6:
+                    ((TimestampStringAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 7:
+                    ((TimestampTimeZoneAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 8:
+                    ((DateAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 9:
+                    ((BinaryAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                case 10:
+                    ((TextObjectAdapter) adapter).writeFieldValue(value, out);
+                    break;
+                default:
+                    adapter.writeFieldValue(value, out);
+            }
+        }
     }
 
     static {
@@ -488,6 +593,24 @@ public class PostgresqlFieldConverter implements FieldConverter {
 
         DATA_ADAPTERS[BITOID] = new TextObjectAdapter(BIT);
         DATA_ADAPTERS[BITARRAYOID] = new TextObjectAdapter(BIT);
+
+        // arrays come as text like {1,2,3}
+        DATA_ADAPTERS[BOOLARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[INT2ARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[INT4ARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[INT8ARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[FLOAT4ARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[FLOAT8ARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[NUMERICARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[TEXTARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[VARCHARARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[BPCHARARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[DATEARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[TIMESTAMPARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[TIMESTAMPTZARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[UUIDARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[JSONARRAYOID] = new TextObjectAdapter(ARRAY);
+        DATA_ADAPTERS[JSONBARRAYOID] = new TextObjectAdapter(ARRAY);
     }
 
 
@@ -500,6 +623,11 @@ public class PostgresqlFieldConverter implements FieldConverter {
          */
         FieldValue getFieldValue(Object data);
 
+        // same value as getFieldValue, encoded into a reset buffer
+        default void writeFieldValue(Object data, FieldValueBuffer out) {
+            out.copyFrom(getFieldValue(data));
+        }
+
         /**
          * 下游Writer有依赖该类型
          * @return
@@ -535,6 +663,12 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.Integer) data).getValue());
+            }
+        }
     }
 
     static class DecimalStringAdapter extends BaseDataAdapter {
@@ -551,6 +685,12 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.Decimal) data).getValue());
+            }
+        }
     }
 
     static class DoubleStringAdapter extends BaseDataAdapter {
@@ -568,6 +708,13 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        // Double.toString still allocates a short string
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.appendAscii(Double.toString(((com.alibaba.dts.formats.avro.Float) data).getValue()));
+            }
+        }
     }
 
     static class CharacterAdapter extends BaseDataAdapter {
@@ -583,7 +730,7 @@ public class PostgresqlFieldConverter implements FieldConverter {
                 com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
 
                 try {
-                    String value = new String(character.getValue().array(), character.getCharset());
+                    String value = new String(toByteArray(character.getValue()), character.getCharset());
                     stringFieldValue.setValue(value.getBytes(US_ASCII));
                 } catch (IOException ex) {
                     throw new IllegalArgumentException(ex);
@@ -591,10 +738,49 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        // ascii bytes of an ascii compatible charset are copied as is, others go through getFieldValue
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null == data) {
+                return;
+            }
+            com.alibaba.dts.formats.avro.Character character = (com.alibaba.dts.formats.avro.Character) data;
+            ByteBuffer value = character.getValue();
+            boolean ascii = isAsciiCompatible(character.getCharset());
+            for (int i = value.position(); i < value.limit() && ascii; i++) {
+                ascii = value.get(i) >= 0;
+            }
+            if (ascii) {
+                out.wrap(value);
+            } else {
+                out.copyFrom(getFieldValue(data));
+            }
+        }
+
+        private static boolean isAsciiCompatible(String charset) {
+            return !(StringUtils.startsWithIgnoreCase(charset, "utf16") || StringUtils.startsWithIgnoreCase(charset, "utf-16")
+                    || StringUtils.startsWithIgnoreCase(charset, "utf32") || StringUtils.startsWithIgnoreCase(charset, "utf-32")
+                    || StringUtils.startsWithIgnoreCase(charset, "ucs"));
+        }
     }
 
     static abstract class AbstractDateTimeAdapter extends BaseDataAdapter {
 
+        void writeDate(com.alibaba.dts.formats.avro.DateTime dateTime, FieldValueBuffer out) {
+            out.appendDigits(dateTime.getYear(), 4).append((byte) '-')
+                    .appendDigits(dateTime.getMonth(), 2).append((byte) '-')
+                    .appendDigits(dateTime.getDay(), 2);
+        }
+
+        void writeTime(com.alibaba.dts.formats.avro.DateTime dateTime, FieldValueBuffer out) {
+            out.appendDigits(dateTime.getHour(), 2).append((byte) ':')
+                    .appendDigits(dateTime.getMinute(), 2).append((byte) ':')
+                    .appendDigits(dateTime.getSecond(), 2);
+            if (null != dateTime.getMillis()) {
+                out.append((byte) '.').appendDigits(dateTime.getMillis(), 6);
+            }
+        }
+
         static int TIMESTAMP_MILLS_LEN = "0000-00-00 00:00:00.000000".length();
         static int TIMESTAMP_LEN = "0000-00-00 00:00:00".length();
         static int DATE_LEN = "0000-00-00".length();
@@ -675,6 +861,12 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                writeTime((com.alibaba.dts.formats.avro.DateTime) data, out);
+            }
+        }
     }
 
     static class TimeTimeZoneAdapter extends AbstractDateTimeAdapter {
@@ -705,6 +897,14 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.TimestampWithTimeZone timestampWithTimeZone = (com.alibaba.dts.formats.avro.TimestampWithTimeZone) data;
+                writeTime(timestampWithTimeZone.getValue(), out);
+                out.appendAscii(String.valueOf(timestampWithTimeZone.getTimezone()));
+            }
+        }
     }
 
     static class TimestampStringAdapter extends AbstractDateTimeAdapter {
@@ -733,6 +933,15 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.DateTime dateTime = (com.alibaba.dts.formats.avro.DateTime) data;
+                writeDate(dateTime, out);
+                out.append((byte) ' ');
+                writeTime(dateTime, out);
+            }
+        }
     }
 
     static class TimestampTimeZoneAdapter extends AbstractDateTimeAdapter {
@@ -765,6 +974,16 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                com.alibaba.dts.formats.avro.TimestampWithTimeZone timestampWithTimeZone = (com.alibaba.dts.formats.avro.TimestampWithTimeZone) data;
+                writeDate(timestampWithTimeZone.getValue(), out);
+                out.append((byte) ' ');
+                writeTime(timestampWithTimeZone.getValue(), out);
+                out.appendAscii(String.valueOf(timestampWithTimeZone.getTimezone()));
+            }
+        }
     }
 
     static class DateAdapter extends AbstractDateTimeAdapter {
@@ -784,6 +1003,12 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                writeDate((com.alibaba.dts.formats.avro.DateTime) data, out);
+            }
+        }
     }
 
     static class BinaryAdapter extends BaseDataAdapter {
@@ -796,10 +1021,16 @@ public class PostgresqlFieldConverter implements FieldConverter {
             FieldValue binaryFieldValue = new FieldValue();
             if (null != data) {
                 com.alibaba.dts.formats.avro.BinaryObject binaryObject = (com.alibaba.dts.formats.avro.BinaryObject) data;
-                binaryFieldValue.setValue(binaryObject.getValue().array());
+                binaryFieldValue.setValue(toByteArray(binaryObject.getValue()));
             }
             return binaryFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null != data) {
+                out.wrap(((com.alibaba.dts.formats.avro.BinaryObject) data).getValue());
+            }
+        }
     }
 
 
@@ -825,6 +1056,19 @@ public class PostgresqlFieldConverter implements FieldConverter {
             }
             return stringFieldValue;
         }
+
+        public void writeFieldValue(Object data, FieldValueBuffer out) {
+            if (null == data) {
+                return;
+            }
+            if (data instanceof com.alibaba.dts.formats.avro.TextObject) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.TextObject) data).getValue());
+            } else if (data instanceof com.alibaba.dts.formats.avro.TextGeometry) {
+                out.appendAscii(((com.alibaba.dts.formats.avro.TextGeometry) data).getValue());
+            } else {
+                throw new RuntimeException("Do not support data type " + data.getClass().getName());
+            }
+        }
     }
 
 
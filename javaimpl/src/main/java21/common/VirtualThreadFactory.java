@@ -0,0 +1,19 @@
+package common;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads named [prefix][index], only compiled by the jdk21 profile, looked up by ThreadFactories.
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+    private final ThreadFactory factory;
+
+    public VirtualThreadFactory(String prefix) {
+        this.factory = Thread.ofVirtual().name(prefix, 0).factory();
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        return factory.newThread(r);
+    }
+}
@@ -0,0 +1,70 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import common.AsyncRecordListener;
+import common.UserRecord;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static common.Util.sleepMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static processor.TestRecords.consumerRecord;
+
+public class AsyncListenerTest {
+    @Test
+    public void testCheckpointOverContiguousAcks() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        List<Long> commits = Collections.synchronizedList(new ArrayList<>());
+        Properties properties = new Properties();
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> commits.add(offset),
+                null, properties);
+        Map<Long, CompletableFuture<String>> stages = new ConcurrentHashMap<>();
+        processor.registerRecordListener("async", new AsyncRecordListener() {
+            @Override
+            public CompletionStage<String> consumeAsync(UserRecord record) {
+                CompletableFuture<String> stage = new CompletableFuture<>();
+                stages.put(record.getOffset(), stage);
+                return stage;
+            }
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        for (long offset = 1; offset <= 3; offset++) {
+            records.add(consumerRecord(offset, Operation.INSERT, "db.tb"));
+        }
+        // as acquired by generator
+        records.forEach(record -> processor.getMemoryBudget().acquire(record.value().length));
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stages.size() < 3 && System.currentTimeMillis() < deadline) {
+            sleepMS(1);
+        }
+        // budget is held until records are acked
+        assertEquals(3 * records.get(0).value().length, processor.getMemoryBudget().getUsedBytes());
+
+        stages.get(3L).complete(null);
+        stages.get(2L).complete(null);
+        sleepMS(100);
+        assertTrue(commits.isEmpty());
+        stages.get(1L).complete(null);
+        assertEquals(3, processor.drain(Collections.singletonList(tp), 5000).get(tp).getOffset());
+        processorThread.stop();
+        assertEquals(0, processor.getMemoryBudget().getUsedBytes());
+    }
+}
@@ -0,0 +1,56 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+import recordprocessor.AvroDeserializer;
+import recordprocessor.FieldConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertTrue;
+
+public class AvroDeserializerTest {
+    private static byte[] serialize(long id, String value) throws IOException {
+        Record record = Record.newBuilder()
+                .setVersion(1).setId(id).setSourceTimestamp(id).setSourcePosition("0@0")
+                .setSource(new Source(SourceType.MySQL, "5.7"))
+                .setOperation(Operation.INSERT)
+                .setObjectName("db.tb")
+                .setTags(new HashMap<>())
+                .setFields(Collections.singletonList(new Field("name", 253)))
+                .setAfterImages(Collections.singletonList(new com.alibaba.dts.formats.avro.Character("utf8", ByteBuffer.wrap(value.getBytes(UTF_8)))))
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<>(Record.class).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReuseRecord() throws IOException {
+        AvroDeserializer deserializer = new AvroDeserializer();
+        FieldConverter converter = FieldConverter.getConverter("mysql", null);
+        Record first = deserializer.deserialize(serialize(1, "a long value"));
+        // shorter value read into the buffer of the previous record
+        Record second = deserializer.deserialize(serialize(2, "short"), first);
+        assertTrue(second == first && second.getId() == 2);
+        List<Field> fields = (List<Field>) second.getFields();
+        Object value = ((List<Object>) second.getAfterImages()).get(0);
+        assertTrue(Arrays.equals("short".getBytes(UTF_8), converter.convert(fields.get(0), value).getValue()));
+    }
+}
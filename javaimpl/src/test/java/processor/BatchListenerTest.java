@@ -0,0 +1,141 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import common.BatchRecordListener;
+import common.Checkpoint;
+import common.UserRecordBatch;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static common.Util.sleepMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static processor.TestRecords.consumerRecord;
+
+public class BatchListenerTest {
+    @Test
+    public void testCommitAtTransactionEnd() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        Map<Long, Long> commits = Collections.synchronizedMap(new HashMap<>());
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.commitMode", "transaction");
+        properties.setProperty("stream.processor.transaction.maxRecords", "4");
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> commits.put(offset, timestamp),
+                null, properties);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        // commits every record, only the last record of a transaction moves the checkpoint
+        processor.registerRecordListener("batch", new BatchRecordListener() {
+            @Override
+            public void consume(UserRecordBatch batch) {
+                batchSizes.add(batch.size());
+                batch.getRecords().forEach(record -> record.commit(String.valueOf(record.getOffset())));
+            }
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        records.add(consumerRecord(1, Operation.BEGIN, "db.tb"));
+        records.add(consumerRecord(2, Operation.INSERT, "db.tb"));
+        records.add(consumerRecord(3, Operation.UPDATE, "db.tb"));
+        records.add(consumerRecord(4, Operation.COMMIT, "db.tb"));
+        records.add(consumerRecord(5, Operation.HEARTBEAT, "db.tb"));
+        // longer than maxRecords, handed out in parts and left open
+        records.add(consumerRecord(6, Operation.BEGIN, "db.tb"));
+        records.add(consumerRecord(7, Operation.INSERT, "db.tb"));
+        records.add(consumerRecord(8, Operation.INSERT, "db.tb"));
+        records.add(consumerRecord(9, Operation.INSERT, "db.tb"));
+        records.add(consumerRecord(10, Operation.INSERT, "db.tb"));
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!commits.containsKey(5L) && System.currentTimeMillis() < deadline) {
+            sleepMS(5);
+        }
+        // drain does not wait for the open transaction
+        Map<TopicPartition, Checkpoint> drained = processor.drain(Collections.singletonList(tp), 5000);
+        assertEquals(5, drained.get(tp).getOffset());
+        processorThread.stop();
+
+        assertEquals(3, batchSizes.size());
+        assertEquals(4, (int) batchSizes.get(0));
+        assertEquals(1, (int) batchSizes.get(1));
+        assertEquals(4, (int) batchSizes.get(2));
+        for (long offset : commits.keySet()) {
+            assertTrue("checkpoint inside a transaction " + offset, offset == 4 || offset == 5);
+        }
+    }
+
+    @Test
+    public void testBatchByCountAndLinger() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        Map<Long, Long> commits = Collections.synchronizedMap(new HashMap<>());
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.batch.maxRecords", "3");
+        properties.setProperty("stream.processor.batch.lingerMS", "50");
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> commits.put(offset, timestamp),
+                null, properties);
+        List<Long> batchBytes = new CopyOnWriteArrayList<>();
+        List<Long> rowOffsets = new CopyOnWriteArrayList<>();
+        processor.registerRecordListener("batch", new BatchRecordListener() {
+            @Override
+            public void consume(UserRecordBatch batch) {
+                batchBytes.add(batch.getBytes());
+                batch.commit("");
+            }
+        });
+        // a row listener sees every record, its commits of records inside a batch do not move the checkpoint
+        processor.registerRecordListener("row", record -> {
+            rowOffsets.add(record.getOffset());
+            record.commit("");
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        for (long offset = 1; offset <= 4; offset++) {
+            records.add(consumerRecord(offset, Operation.INSERT, "db.tb"));
+        }
+        long offeredMS = System.currentTimeMillis();
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!commits.containsKey(4L) && System.currentTimeMillis() < deadline) {
+            sleepMS(1);
+        }
+        // the last record waits for linger
+        assertTrue(System.currentTimeMillis() - offeredMS >= 50);
+        assertEquals(4, processor.drain(Collections.singletonList(tp), 5000).get(tp).getOffset());
+        processorThread.stop();
+
+        assertEquals(2, batchBytes.size());
+        assertEquals(3 * records.get(0).value().length, (long) batchBytes.get(0));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), rowOffsets);
+        for (long offset : commits.keySet()) {
+            assertTrue("checkpoint inside a batch " + offset, offset == 3 || offset == 4);
+        }
+    }
+
+    // without BEGIN or COMMIT records, transactions could not be told apart
+    @Test(expected = RuntimeException.class)
+    public void testTransactionBoundaryNotFiltered() {
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.commitMode", "transaction");
+        properties.setProperty("stream.filter.excludeOperations", "HEARTBEAT,COMMIT");
+        new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> { }, null, properties);
+    }
+}
@@ -0,0 +1,114 @@
+package processor;
+
+import common.Checkpoint;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.CheckpointTracker;
+
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTrackerTest {
+    @Test
+    public void testWatermark() {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointTracker tracker = new CheckpointTracker(tp, 2);
+        tracker.register(0, 10).setTimestamp(100);
+        tracker.register(1, 11).setTimestamp(101);
+        tracker.register(0, 12).setTimestamp(102);
+        tracker.register(1, 13).setTimestamp(103);
+        assertTrue(null == tracker.getCompletedCheckpoint());
+
+        // lane 0 runs ahead, watermark is blocked by offset 11 of lane 1
+        tracker.commit(0, 12, 102, "102");
+        Checkpoint checkpoint = tracker.getCompletedCheckpoint();
+        assertTrue(null != checkpoint && checkpoint.getOffset() == 10 && checkpoint.getTimeStamp() == 100);
+
+        // commit is cumulative in lane, 11 is finished by committing 13
+        tracker.commit(1, 13, 103, "103|meta");
+        checkpoint = tracker.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 13 && checkpoint.getTimeStamp() == 103 && "103|meta".equals(checkpoint.getInfo()));
+        assertTrue(tracker.inFlight() == 0);
+    }
+
+    @Test
+    public void testSequential() {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointTracker tracker = new CheckpointTracker(tp, 1);
+        assertTrue(null == tracker.register(0, 10));
+        tracker.commit(0, 10, 100, "100");
+        Checkpoint checkpoint = tracker.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 10 && checkpoint.getTimeStamp() == 100 && tp.equals(checkpoint.getTopicPartition()));
+
+        // a checkpoint is reported once
+        assertTrue(checkpoint == tracker.pollNewCheckpoint());
+        assertTrue(null == tracker.pollNewCheckpoint());
+    }
+
+    // records dropped by filter move the checkpoint only after the records offered before them are committed
+    @Test
+    public void testSkip() {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointTracker sequential = new CheckpointTracker(tp, 1);
+        sequential.skip(5, 50, 10);
+        assertTrue(null == sequential.getCompletedCheckpoint());
+        sequential.skip(12, 120, 10);
+        sequential.commit(0, 10, 100, "100");
+        Checkpoint checkpoint = sequential.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 12 && checkpoint.getTimeStamp() == 120 && "120".equals(checkpoint.getInfo()));
+        // nothing offered before, e.g. an idle partition with only heartbeats
+        sequential.skip(20, 200, -1);
+        assertTrue(sequential.getCompletedCheckpoint().getOffset() == 20);
+
+        CheckpointTracker lanes = new CheckpointTracker(tp, 2);
+        lanes.register(0, 10).setTimestamp(100);
+        lanes.register(1, 11).setTimestamp(101);
+        lanes.skip(15, 150, 11);
+        lanes.commit(1, 11, 101, "101");
+        assertTrue(null == lanes.getCompletedCheckpoint());
+        lanes.commit(0, 10, 100, "100");
+        checkpoint = lanes.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 15 && checkpoint.getTimeStamp() == 150 && lanes.inFlight() == 0);
+    }
+
+    @Test
+    public void testDrained() {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointTracker tracker = new CheckpointTracker(tp, 1);
+        assertTrue(tracker.isDrained());
+        tracker.onOffered(2, 11);
+        tracker.onProcessed();
+        tracker.commit(0, 10, 100, "100");
+        assertTrue(!tracker.isDrained() && tracker.getInProcessNum() == 1);
+
+        // processed but not committed by listener yet
+        tracker.onProcessed();
+        assertTrue(!tracker.isDrained());
+        tracker.commit(0, 11, 101, "101");
+        assertTrue(tracker.isDrained() && tracker.getInProcessNum() == 0);
+    }
+
+    @Test
+    public void testAcksOutOfOrder() {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointTracker tracker = new CheckpointTracker(tp, 1, true);
+        CheckpointTracker.Entry[] entries = new CheckpointTracker.Entry[4];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = tracker.register(0, 10 + i, 1);
+            entries[i].setTimestamp(100 + i);
+            // the record is returned by all listeners, only its ack is pending
+            tracker.commit(0, 10 + i, 100 + i, null);
+        }
+        assertTrue(null == tracker.getCompletedCheckpoint() && tracker.inFlight() == 4);
+
+        // acks after a gap do not move the checkpoint
+        tracker.ack(entries[3], null);
+        tracker.ack(entries[1], null);
+        assertTrue(null == tracker.getCompletedCheckpoint());
+        tracker.ack(entries[0], "async-10");
+        Checkpoint checkpoint = tracker.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 11 && "101".equals(checkpoint.getInfo()));
+        tracker.ack(entries[2], null);
+        checkpoint = tracker.getCompletedCheckpoint();
+        assertTrue(checkpoint.getOffset() == 13 && checkpoint.getTimeStamp() == 103 && tracker.inFlight() == 0);
+    }
+}
@@ -0,0 +1,113 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.BinaryObject;
+import com.alibaba.dts.formats.avro.DateTime;
+import com.alibaba.dts.formats.avro.Decimal;
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Float;
+import com.alibaba.dts.formats.avro.TextObject;
+import com.alibaba.dts.formats.avro.Timestamp;
+import com.alibaba.dts.formats.avro.TimestampWithTimeZone;
+import org.junit.Test;
+import recordprocessor.FieldConverter;
+import recordprocessor.FieldValue;
+import recordprocessor.FieldValueBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FieldValueBufferTest {
+    private final FieldValueBuffer buffer = new FieldValueBuffer(16);
+
+    private static com.alibaba.dts.formats.avro.Character character(String charset, String value) {
+        return new com.alibaba.dts.formats.avro.Character(charset, ByteBuffer.wrap(value.getBytes(UTF_8)));
+    }
+
+    // some adapters modify the value they convert, so every conversion gets a fresh one
+    private void assertSame(FieldConverter converter, int dataTypeNumber, Supplier<Object> value) {
+        Field field = new Field("c", dataTypeNumber);
+        converter.convert(field, value.get(), buffer);
+        FieldValue expected = converter.convert(field, value.get());
+        FieldValue actual = buffer.toFieldValue();
+        assertEquals(expected.getEncoding(), actual.getEncoding());
+        assertArrayEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.toString(), buffer.toString());
+    }
+
+    @Test
+    public void testMysql() {
+        FieldConverter converter = FieldConverter.getConverter("mysql", null);
+        assertSame(converter, 3, () -> new com.alibaba.dts.formats.avro.Integer(11, "-12345"));
+        assertSame(converter, 3, () -> null);
+        assertSame(converter, 246, () -> new Decimal("3.1415926", 10, 7));
+        assertSame(converter, 5, () -> new Float(2.5, 10, 2));
+        assertSame(converter, 7, () -> new Timestamp(1560977122L, 1234));
+        assertSame(converter, 10, () -> new DateTime(2019, 6, 20, null, null, null, null));
+        assertSame(converter, 11, () -> new DateTime(null, null, null, -838, -59, -59, -123456));
+        assertSame(converter, 11, () -> new DateTime(null, null, null, 12, 5, 9, 0));
+        assertSame(converter, 12, () -> new DateTime(2019, 6, 20, 5, 6, 7, 89));
+        assertSame(converter, 13, () -> new DateTime(2019, null, null, null, null, null, null));
+        assertSame(converter, 253, () -> character("utf8mb4", "中文 value"));
+        assertSame(converter, 253, () -> character("latin1", "ascii only"));
+        assertSame(converter, 252, () -> new BinaryObject("blob", ByteBuffer.wrap(new byte[]{1, 2, -1})));
+        assertSame(converter, 245, () -> new TextObject("json", "{\"k\":\"值\"}"));
+    }
+
+    @Test
+    public void testOracle() {
+        FieldConverter converter = FieldConverter.getConverter("oracle", null);
+        assertSame(converter, 2, () -> new Decimal("-1.5", 10, 1));
+        assertSame(converter, 101, () -> new Float(1e-10, 0, 0));
+        assertSame(converter, 12, () -> new DateTime(-4712, 1, 1, 0, 0, 0, null));
+        assertSame(converter, 180, () -> new DateTime(2019, 6, 20, 5, 6, 7, 123456789));
+        assertSame(converter, 181, () -> new TimestampWithTimeZone(new DateTime(2019, 6, 20, 5, 6, 7, null), "+08:00"));
+        assertSame(converter, 182, () -> new DateTime(-2, -3, null, null, null, null, null));
+        assertSame(converter, 183, () -> new DateTime(null, null, -1, -2, -3, -4, -5));
+        assertSame(converter, 112, () -> character("utf8", "clob 内容"));
+        assertSame(converter, 69, () -> new TextObject("rowid", "AAAR3sAAEAAAACXAAA"));
+    }
+
+    @Test
+    public void testPostgresql() {
+        FieldConverter converter = FieldConverter.getConverter("postgresql", null);
+        assertSame(converter, 23, () -> new com.alibaba.dts.formats.avro.Integer(32, "42"));
+        assertSame(converter, 1700, () -> new Decimal("99.99", 4, 2));
+        assertSame(converter, 1082, () -> new DateTime(2019, 6, 20, null, null, null, null));
+        assertSame(converter, 1083, () -> new DateTime(null, null, null, 1, 2, 3, 0));
+        assertSame(converter, 1266, () -> new TimestampWithTimeZone(new DateTime(null, null, null, 1, 2, 3, 456), "+08"));
+        assertSame(converter, 1184, () -> new TimestampWithTimeZone(new DateTime(2019, 6, 20, 1, 2, 3, null), "+08"));
+        assertSame(converter, 1043, () -> character("UTF8", "ascii"));
+        assertSame(converter, 1043, () -> character("UTF8", "中文"));
+        assertSame(converter, 17, () -> new BinaryObject("bytea", ByteBuffer.wrap(new byte[]{0, 1})));
+        assertSame(converter, 600, () -> new TextObject("point", "(1,2)"));
+    }
+
+    // arrays come as text, an unmapped array oid used to fail with NullPointerException
+    @Test
+    public void testPostgresqlArray() {
+        FieldConverter converter = FieldConverter.getConverter("postgresql", null);
+        FieldValue fieldValue = converter.convert(new Field("c", 1007), new TextObject("_int4", "{1,2,3}"));
+        assertEquals("{1,2,3}", new String(fieldValue.getValue(), UTF_8));
+        assertSame(converter, 1007, () -> new TextObject("_int4", "{1,2,3}"));
+        assertSame(converter, 1009, () -> new TextObject("_text", "{a,\"b c\",NULL}"));
+        assertSame(converter, 1016, () -> null);
+        assertSame(converter, 1115, () -> new TextObject("_timestamp", "{\"2019-06-20 05:06:07\"}"));
+        assertSame(converter, 3807, () -> new TextObject("_jsonb", "{\"{\\\"k\\\": 1}\"}"));
+    }
+
+    @Test
+    public void testReuse() {
+        StringBuilder builder = new StringBuilder();
+        buffer.appendUtf8("a long value which makes the buffer grow");
+        buffer.reset();
+        buffer.appendLong(Long.MIN_VALUE).append((byte) ' ').appendLong(0).append((byte) ' ').appendDigits(7, 3);
+        buffer.appendTo(builder);
+        assertEquals("-9223372036854775808 0 007", builder.toString());
+        assertEquals(Arrays.asList(26, 26), Arrays.asList(buffer.length(), buffer.asByteBuffer().remaining()));
+    }
+}
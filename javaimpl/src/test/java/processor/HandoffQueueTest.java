@@ -0,0 +1,70 @@
+package processor;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Test;
+import recordprocessor.HandoffQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class HandoffQueueTest {
+    private static List<ConsumerRecord<byte[], byte[]>> batch(long firstOffset, int recordNum, int valueSize) {
+        List<ConsumerRecord<byte[], byte[]>> ret = new ArrayList<>();
+        for (int i = 0; i < recordNum; i++) {
+            ret.add(new ConsumerRecord<>("t1", 0, firstOffset + i, null, new byte[valueSize]));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testOrderAndRecordBound() throws InterruptedException {
+        HandoffQueue queue = new HandoffQueue(10, 0, HandoffQueue.WaitStrategy.BLOCKING);
+        assertTrue(queue.offer(batch(0, 6, 8), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(batch(6, 4, 8), 10, TimeUnit.MILLISECONDS));
+        // record bound reached
+        assertTrue(!queue.offer(batch(10, 1, 8), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.size() == 10 && queue.bufferedBytes() == 80);
+
+        List<ConsumerRecord<byte[], byte[]>> polled = queue.poll(10, TimeUnit.MILLISECONDS);
+        assertTrue(polled.size() == 6 && polled.get(0).offset() == 0);
+        assertTrue(queue.offer(batch(10, 1, 8), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.poll(10, TimeUnit.MILLISECONDS).get(0).offset() == 6);
+        assertTrue(queue.poll(10, TimeUnit.MILLISECONDS).get(0).offset() == 10);
+        assertTrue(null == queue.poll(10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.size() == 0 && queue.bufferedBytes() == 0);
+    }
+
+    @Test
+    public void testByteBound() throws InterruptedException {
+        HandoffQueue queue = new HandoffQueue(0, 100, HandoffQueue.WaitStrategy.SPIN_THEN_PARK);
+        // batch larger than the bound is still accepted by an empty queue
+        assertTrue(queue.offer(batch(0, 2, 80), 10, TimeUnit.MILLISECONDS));
+        assertTrue(!queue.offer(batch(2, 1, 1), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.poll(10, TimeUnit.MILLISECONDS).size() == 2);
+        assertTrue(queue.offer(batch(2, 1, 1), 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testProducerWakeUp() throws InterruptedException {
+        HandoffQueue queue = new HandoffQueue(1, 0, HandoffQueue.WaitStrategy.BLOCKING);
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    while (!queue.offer(batch(i, 1, 1), 1000, TimeUnit.MILLISECONDS)) {
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < 100; i++) {
+            List<ConsumerRecord<byte[], byte[]>> polled = queue.poll(1000, TimeUnit.MILLISECONDS);
+            assertTrue(null != polled && polled.get(0).offset() == i);
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,86 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Integer;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+import recordprocessor.ColumnProjection;
+import recordprocessor.LazyRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LazyRecordTest {
+    private static Record update() {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("pk_uk_info", "{\"PRIMARY\":[\"id\"]}");
+        return Record.newBuilder()
+                .setVersion(1).setId(7).setSourceTimestamp(100).setSourcePosition("12@3")
+                .setSource(new Source(SourceType.MySQL, "5.7"))
+                .setOperation(Operation.UPDATE)
+                .setObjectName("db.tb")
+                .setTags(tags)
+                .setFields(Arrays.asList(new Field("id", 3), new Field("name", 253), new Field("age", 3)))
+                .setBeforeImages(Arrays.asList(new Integer(11, "1"), character("old"), new Integer(11, "20")))
+                .setAfterImages(Arrays.asList(new Integer(11, "1"), character("new"), new Integer(11, "21")))
+                .build();
+    }
+
+    private static com.alibaba.dts.formats.avro.Character character(String value) {
+        return new com.alibaba.dts.formats.avro.Character("utf8", ByteBuffer.wrap(value.getBytes(UTF_8)));
+    }
+
+    private static byte[] serialize(Record record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<>(Record.class).write(record, encoder);
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testWithoutProjection() throws IOException {
+        Record expected = update();
+        LazyRecord record = new LazyRecord(serialize(expected), new ColumnProjection());
+        assertFalse(record.isProjected());
+        assertEquals(7, record.getId().longValue());
+        assertEquals("db.tb", record.getObjectName());
+        assertEquals(Operation.UPDATE, record.getOperation());
+        assertEquals(expected.getTags(), record.getTags());
+        assertEquals(expected.getFields(), record.getFields());
+        assertEquals(expected.getBeforeImages(), record.getBeforeImages());
+        assertEquals(expected.getAfterImages(), record.getAfterImages());
+        assertEquals(expected.toString(), record.toString());
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        ColumnProjection projection = new ColumnProjection();
+        projection.register("db.tb", Collections.singletonList("id"));
+        projection.register("db.tb", Collections.singletonList("age"));
+        LazyRecord record = new LazyRecord(serialize(update()), projection);
+        assertTrue(record.isProjected());
+        // after images first, before images are skipped without being decoded
+        assertEquals(Arrays.asList(new Integer(11, "1"), new Integer(11, "21")), record.getAfterImages());
+        assertEquals(Arrays.asList(new Integer(11, "1"), new Integer(11, "20")), record.getBeforeImages());
+        List<Field> fields = (List<Field>) record.getFields();
+        assertEquals(Arrays.asList(new Field("id", 3), new Field("age", 3)), fields);
+    }
+}
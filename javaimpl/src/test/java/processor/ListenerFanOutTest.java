@@ -0,0 +1,161 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import common.UserRecord;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+import recordprocessor.ListenerWorker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static common.Util.sleepMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static processor.TestRecords.consumerRecord;
+
+public class ListenerFanOutTest {
+    @Test
+    public void testSlowListenerDoesNotBlockOthers() throws Exception {
+        runSlowListener(false);
+    }
+
+    // the checkpoint tracker of the partition is created by the offer, before processor thread wraps anything
+    @Test
+    public void testOfferBeforeProcessorStarts() throws Exception {
+        runSlowListener(true);
+    }
+
+    @Test
+    public void testCommittedOffsetOfEachListener() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        // commits only records with an even offset
+        ListenerWorker listenerWorker = new ListenerWorker("even", record -> {
+            if (record.getOffset() % 2 == 0) {
+                record.commit("");
+            }
+        }, 16);
+        WorkThread workThread = new WorkThread(listenerWorker);
+        workThread.start();
+        assertEquals(-1, listenerWorker.getCommittedOffset(tp));
+        CompletableFuture<String> last = null;
+        for (long offset = 1; offset <= 5; offset++) {
+            last = listenerWorker.consumeAsync(new UserRecord(tp, offset, TestRecords.builder(offset, Operation.INSERT, "db.tb").build(), null))
+                    .toCompletableFuture();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (listenerWorker.getCommittedOffset(tp) < 4 && System.currentTimeMillis() < deadline) {
+            sleepMS(1);
+        }
+        assertEquals(4, listenerWorker.getCommittedOffset(tp));
+        assertFalse(last.isDone());
+        assertEquals(-1, listenerWorker.getCommittedOffset(new TopicPartition("t1", 1)));
+        listenerWorker.forget(tp);
+        assertEquals(-1, listenerWorker.getCommittedOffset(tp));
+        workThread.stop();
+    }
+
+    // records left when the worker exits are completed exceptionally instead of never
+    @Test
+    public void testRecordsCompletedWhenWorkerExits() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        ListenerWorker failing = new ListenerWorker("failing", record -> {
+            if (record.getOffset() == 2) {
+                throw new RuntimeException("listener failed");
+            }
+            record.commit("");
+        }, 16);
+        List<CompletableFuture<String>> stages = new ArrayList<>();
+        for (long offset = 1; offset <= 5; offset++) {
+            stages.add(failing.consumeAsync(new UserRecord(tp, offset, TestRecords.builder(offset, Operation.INSERT, "db.tb").build(), null))
+                    .toCompletableFuture());
+        }
+        WorkThread workThread = new WorkThread(failing);
+        workThread.start();
+        CompletableFuture.allOf(stages.get(0)).get(5, TimeUnit.SECONDS);
+        for (int i = 1; i < stages.size(); i++) {
+            assertTrue(awaitExceptionally(stages.get(i)));
+        }
+        workThread.stop();
+
+        // closed before started, the offer blocked by a full queue gives up too
+        ListenerWorker closed = new ListenerWorker("closed", record -> record.commit(""), 1);
+        CompletableFuture<String> queued = closed.consumeAsync(new UserRecord(tp, 1, TestRecords.builder(1, Operation.INSERT, "db.tb").build(), null))
+                .toCompletableFuture();
+        CompletableFuture<CompletableFuture<String>> blocked = CompletableFuture.supplyAsync(() -> closed.consumeAsync(
+                new UserRecord(tp, 2, TestRecords.builder(2, Operation.INSERT, "db.tb").build(), null)).toCompletableFuture());
+        sleepMS(50);
+        closed.close();
+        assertTrue(awaitExceptionally(queued));
+        assertTrue(awaitExceptionally(blocked.get(5, TimeUnit.SECONDS)));
+    }
+
+    private static boolean awaitExceptionally(CompletableFuture<String> stage) throws Exception {
+        try {
+            stage.get(5, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void runSlowListener(boolean offerBeforeStart) throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        List<Long> commits = Collections.synchronizedList(new ArrayList<>());
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.listenerFanOut", "true");
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> commits.add(offset),
+                null, properties);
+        AtomicInteger fastConsumed = new AtomicInteger();
+        CountDownLatch slowBlocked = new CountDownLatch(1);
+        processor.registerRecordListener("fast", record -> {
+            fastConsumed.incrementAndGet();
+            record.commit("");
+        });
+        // blocked on the first record until released
+        processor.registerRecordListener("slow", record -> {
+            try {
+                slowBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record.commit("");
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        if (!offerBeforeStart) {
+            processorThread.start();
+        }
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        for (long offset = 1; offset <= 10; offset++) {
+            records.add(consumerRecord(offset, Operation.INSERT, "db.tb"));
+        }
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+        if (offerBeforeStart) {
+            processorThread.start();
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fastConsumed.get() < 10 && System.currentTimeMillis() < deadline) {
+            sleepMS(1);
+        }
+        assertEquals(10, fastConsumed.get());
+        // the checkpoint is the minimum of both listeners
+        sleepMS(50);
+        assertTrue(commits.isEmpty());
+
+        slowBlocked.countDown();
+        assertEquals(10, processor.drain(Collections.singletonList(tp), 5000).get(tp).getOffset());
+        processorThread.stop();
+    }
+}
@@ -0,0 +1,83 @@
+package processor;
+
+import org.junit.Test;
+import recordgenerator.PollController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PollControllerTest {
+    @Test
+    public void testTimeoutGrowsWhenIdle() {
+        PollController controller = new PollController(10, 500, 8, 256, 1000);
+        assertEquals(10, controller.getPollTimeoutMS());
+        for (int i = 0; i < 10; i++) {
+            controller.onPoll(0, 0, false);
+        }
+        assertEquals(500, controller.getPollTimeoutMS());
+        // checkpoints wait for poll thread to commit them
+        controller.onPoll(0, 0, true);
+        assertEquals(10, controller.getPollTimeoutMS());
+        controller.onPoll(0, 0, false);
+        assertEquals(20, controller.getPollTimeoutMS());
+        controller.onPoll(3, 0, false);
+        assertEquals(10, controller.getPollTimeoutMS());
+        assertFalse(controller.isCatchingUp());
+    }
+
+    @Test
+    public void testDepthFollowsDrainRate() {
+        PollController controller = new PollController(10, 500, 8, 100, 1000);
+        controller.update(0, 0, 0, 2);
+        // 1000 records drained in a second by 2 partitions, 5 batches of 100 each
+        controller.onPoll(500, 0, false);
+        controller.onOffered(1000);
+        controller.update(1000, 0, 0.1, 2);
+        assertTrue(controller.isCatchingUp());
+        assertEquals(1000, controller.getDrainRate(), 0.01);
+        assertEquals(5, controller.getPendingBatchLimit());
+
+        // processor queue nearly full, depth is halved
+        controller.onOffered(1000);
+        controller.update(2000, 0, 0.95, 2);
+        assertEquals(2, controller.getPendingBatchLimit());
+
+        // faster processor, depth is bounded by maxPendingBatches
+        controller.onOffered(100000);
+        controller.update(3000, 0, 0.1, 2);
+        assertEquals(8, controller.getPendingBatchLimit());
+
+        // caught up, records are not prefetched
+        controller.onPoll(1, 0, false);
+        controller.onOffered(1);
+        controller.update(4000, 0, 0, 2);
+        assertFalse(controller.isCatchingUp());
+        assertEquals(1, controller.getPendingBatchLimit());
+
+        // lag from broker means catching up though poll is small
+        controller.setLag(10000);
+        controller.onPoll(1, 0, false);
+        assertTrue(controller.isCatchingUp());
+        assertEquals(10, controller.getPollTimeoutMS());
+    }
+
+    @Test
+    public void testPendingRecordsKeepCatchingUp() {
+        PollController controller = new PollController(10, 500, 8, 100, 1000);
+        controller.update(0, 0, 0, 1);
+        controller.onPoll(100, 0, false);
+        // processor is full, polls without waiting return nothing while batches are pending, lag from broker is not refreshed
+        for (int i = 0; i < 10; i++) {
+            controller.onPoll(0, 300, false);
+        }
+        assertTrue(controller.isCatchingUp());
+        controller.onOffered(500);
+        controller.update(1000, 0, 0.5, 1);
+        assertEquals(5, controller.getPendingBatchLimit());
+
+        // all offered and nothing more to poll
+        controller.onPoll(0, 0, false);
+        assertFalse(controller.isCatchingUp());
+    }
+}
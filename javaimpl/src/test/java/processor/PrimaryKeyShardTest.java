@@ -0,0 +1,83 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Integer;
+import com.alibaba.dts.formats.avro.Operation;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+import recordprocessor.RecordHeader;
+import recordprocessor.RecordSharder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static common.Util.sleepMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static processor.TestRecords.builder;
+import static processor.TestRecords.consumerRecord;
+
+public class PrimaryKeyShardTest {
+    private static final TopicPartition TP = new TopicPartition("t1", 0);
+
+    // row of table db.tb with primary key id, null image is absent
+    private static ConsumerRecord<byte[], byte[]> row(long offset, Operation operation, String beforeId, String afterId) throws IOException {
+        return consumerRecord(offset, builder(offset, operation, "db.tb")
+                .setTags(Collections.singletonMap("pk_uk_info", "{\"PRIMARY\":[\"id\"]}"))
+                .setFields(Arrays.asList(new Field("id", 3)))
+                .setBeforeImages(null == beforeId ? null : Arrays.asList(new Integer(11, beforeId)))
+                .setAfterImages(null == afterId ? null : Arrays.asList(new Integer(11, afterId)))
+                .build());
+    }
+
+    private static int shardOf(RecordSharder sharder, ConsumerRecord<byte[], byte[]> consumerRecord) {
+        return sharder.shardOf(TP, RecordHeader.parse(consumerRecord.value()), consumerRecord.value());
+    }
+
+    @Test
+    public void testKeyChangeKeepsRowOrder() throws Exception {
+        RecordSharder sharder = new RecordSharder(4, "primaryKey");
+        // a new key on another shard than the old one
+        String newKey = null;
+        for (int i = 2; null == newKey; i++) {
+            if (shardOf(sharder, row(1, Operation.INSERT, null, "1")) != shardOf(sharder, row(1, Operation.INSERT, null, String.valueOf(i)))) {
+                newKey = String.valueOf(i);
+            }
+        }
+        ConsumerRecord<byte[], byte[]> insert = row(1, Operation.INSERT, null, "1");
+        ConsumerRecord<byte[], byte[]> update = row(2, Operation.UPDATE, "1", newKey);
+        ConsumerRecord<byte[], byte[]> delete = row(3, Operation.DELETE, newKey, null);
+        assertEquals(RecordSharder.KEY_CHANGED, shardOf(sharder, update));
+        assertNotEquals(RecordSharder.KEY_CHANGED, shardOf(sharder, row(2, Operation.UPDATE, "1", "1")));
+
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.threads", "4");
+        properties.setProperty("stream.processor.shardBy", "primaryKey");
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> { }, null, properties);
+        List<Long> consumed = Collections.synchronizedList(new ArrayList<>());
+        // the old key is slow, a delete of the new key overtakes it unless the key change waits for the shards
+        processor.registerRecordListener("sink", record -> {
+            if (record.getOffset() == 1) {
+                sleepMS(200);
+            }
+            consumed.add(record.getOffset());
+            record.commit("");
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, Arrays.asList(insert, update, delete)));
+        assertEquals(3, processor.drain(Collections.singletonList(TP), 5000).get(TP).getOffset());
+        assertEquals(Arrays.asList(1L, 2L, 3L), consumed);
+        processorThread.stop();
+    }
+}
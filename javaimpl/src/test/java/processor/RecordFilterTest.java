@@ -0,0 +1,72 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import common.Checkpoint;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+import recordprocessor.RecordFilter;
+import recordprocessor.SkippedRecords;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static processor.TestRecords.consumerRecord;
+
+public class RecordFilterTest {
+    @Test
+    public void testTablePatterns() {
+        RecordFilter filter = new RecordFilter("db1.*, *.order_*", "db1.tmp_*", null);
+        assertTrue(filter.isEnabled());
+        assertTrue(filter.accept("db1.user", Operation.INSERT));
+        assertTrue(filter.accept("DB2.order_2020", Operation.UPDATE));
+        assertTrue(filter.accept("db3.public.order_item", Operation.DELETE));
+        assertFalse(filter.accept("db1.tmp_user", Operation.INSERT));
+        assertFalse(filter.accept("db2.user", Operation.INSERT));
+        // decision is cached
+        assertFalse(filter.accept("db2.user", Operation.INSERT));
+        assertTrue(filter.accept(null, Operation.BEGIN));
+    }
+
+    @Test
+    public void testOperations() {
+        RecordFilter filter = new RecordFilter("", "", "heartbeat,BEGIN, COMMIT");
+        assertFalse(filter.accept(null, Operation.HEARTBEAT));
+        assertFalse(filter.accept(null, Operation.BEGIN));
+        assertTrue(filter.accept("db.tb", Operation.INSERT));
+        assertFalse(new RecordFilter(null, null, null).isEnabled());
+    }
+
+    // a run of filtered records at the end of a poll still moves the checkpoint, without reaching listeners
+    @Test
+    public void testSkippedRecordsMoveCheckpoint() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        Properties properties = new Properties();
+        properties.setProperty("stream.commit.intervalMS", "10");
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> { }, null, properties);
+        List<Long> consumed = Collections.synchronizedList(new ArrayList<>());
+        processor.registerRecordListener("commit", record -> {
+            consumed.add(record.getOffset());
+            record.commit("");
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+        List<ConsumerRecord<byte[], byte[]>> records = Arrays.asList(consumerRecord(1, Operation.INSERT, "db.tb"),
+                new SkippedRecords("t1", 0, 5, 500, 1));
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+        Checkpoint checkpoint = processor.drain(Collections.singletonList(tp), 5000).get(tp);
+        assertEquals(5, checkpoint.getOffset());
+        assertEquals(500, checkpoint.getTimeStamp());
+        assertEquals(Collections.singletonList(1L), consumed);
+        processorThread.stop();
+    }
+}
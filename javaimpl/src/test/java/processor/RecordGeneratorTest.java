@@ -0,0 +1,30 @@
+package processor;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordgenerator.RecordGenerator;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordGeneratorTest {
+    @Test
+    public void testParseTopicPartitions() {
+        assertEquals(Collections.singletonList(new TopicPartition("cn_shanghai_11.161.33.41_3306_root", 0)),
+                RecordGenerator.parseTopicPartitions("cn_shanghai_11.161.33.41_3306_root"));
+        assertEquals(Arrays.asList(new TopicPartition("a", 0), new TopicPartition("b", 0), new TopicPartition("b", 2)),
+                RecordGenerator.parseTopicPartitions(" a, b:0 ,,b:2,a:0"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testInvalidPartition() {
+        RecordGenerator.parseTopicPartitions("a:x");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testNoTopic() {
+        RecordGenerator.parseTopicPartitions(" , ");
+    }
+}
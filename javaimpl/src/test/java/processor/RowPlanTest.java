@@ -0,0 +1,107 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.BinaryObject;
+import com.alibaba.dts.formats.avro.DateTime;
+import com.alibaba.dts.formats.avro.Decimal;
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Float;
+import com.alibaba.dts.formats.avro.TextObject;
+import com.alibaba.dts.formats.avro.Timestamp;
+import org.junit.Test;
+import recordprocessor.FieldConverter;
+import recordprocessor.FieldValue;
+import recordprocessor.FieldValueBuffer;
+import recordprocessor.RowPlan;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RowPlanTest {
+    private static final List<Field> MYSQL_FIELDS = Arrays.asList(new Field("id", 8), new Field("amount", 246),
+            new Field("ratio", 5), new Field("updated", 7), new Field("created", 12), new Field("name", 253),
+            new Field("data", 252), new Field("attrs", 245), new Field("missing", 3));
+
+    // some adapters modify the value they convert, so every conversion gets a fresh row
+    private static final Supplier<List<Object>> MYSQL_ROW = () -> Arrays.asList(
+            new com.alibaba.dts.formats.avro.Integer(64, "-42"),
+            new Decimal("12345.67", 10, 2),
+            new Float(0.25, 0, 0),
+            new Timestamp(1560977122L, 1234),
+            new DateTime(2019, 6, 20, 5, 6, 7, 89),
+            new com.alibaba.dts.formats.avro.Character("utf8mb4", ByteBuffer.wrap("订单".getBytes(UTF_8))),
+            new BinaryObject("blob", ByteBuffer.wrap(new byte[]{1, 2, -1})),
+            new TextObject("json", "{\"k\":1}"),
+            null);
+
+    @Test
+    public void testConvertRow() {
+        FieldConverter converter = FieldConverter.getConverter("mysql", null);
+        RowPlan rowPlan = converter.buildRowPlan(MYSQL_FIELDS);
+        assertTrue(rowPlan.getUnsupportedColumns().isEmpty());
+        List<FieldValue> actual = new ArrayList<>();
+        rowPlan.convertRow(MYSQL_ROW.get(), new FieldValueBuffer(16), (column, value) -> actual.add(value.toFieldValue()));
+        assertEquals(MYSQL_FIELDS.size(), actual.size());
+        List<Object> row = MYSQL_ROW.get();
+        for (int i = 0; i < MYSQL_FIELDS.size(); i++) {
+            FieldValue expected = converter.convert(MYSQL_FIELDS.get(i), row.get(i));
+            assertEquals(expected.getEncoding(), actual.get(i).getEncoding());
+            assertArrayEquals(expected.getValue(), actual.get(i).getValue());
+        }
+        row = MYSQL_ROW.get();
+        assertEquals("12345.67", rowPlan.convert(1, row.get(1)).toString());
+        FieldValueBuffer buffer = new FieldValueBuffer();
+        rowPlan.convert(5, row.get(5), buffer);
+        assertEquals("订单", buffer.toString());
+    }
+
+    @Test
+    public void testUnknownType() {
+        List<Field> fields = Arrays.asList(new Field("id", 2), new Field("weird", 4000));
+        RowPlan rowPlan = FieldConverter.getConverter("oracle", null).buildRowPlan(fields);
+        assertTrue(rowPlan.isSupported(0));
+        assertFalse(rowPlan.isSupported(1));
+        assertEquals(Collections.singletonList("weird"), rowPlan.getUnsupportedColumns());
+        assertNull(rowPlan.convert(1, null).getValue());
+        FieldValueBuffer buffer = new FieldValueBuffer();
+        rowPlan.convertRow(Arrays.asList(new Decimal("1.5", 2, 1), null), buffer, (column, value) -> { });
+        try {
+            rowPlan.convertRow(Arrays.asList(new Decimal("1.5", 2, 1), new TextObject("t", "v")), buffer, (column, value) -> { });
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("weird"));
+        }
+        try {
+            FieldConverter.getConverter("oracle", null).convert(fields.get(1), new TextObject("t", "v"));
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("4000"));
+        }
+    }
+
+    @Test
+    public void testDefaultPlan() {
+        FieldConverter upperCase = (field, o) -> {
+            FieldValue fieldValue = new FieldValue();
+            fieldValue.setEncoding("ASCII");
+            fieldValue.setValue(o.toString().toUpperCase().getBytes(UTF_8));
+            return fieldValue;
+        };
+        RowPlan rowPlan = upperCase.buildRowPlan(Collections.singletonList(new Field("c", 1)));
+        assertEquals("ABC", rowPlan.convert(0, "abc").toString());
+        FieldValueBuffer buffer = new FieldValueBuffer();
+        rowPlan.convert(0, "xyz", buffer);
+        assertEquals("XYZ", buffer.toString());
+    }
+}
@@ -0,0 +1,100 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import common.TableSchema;
+import org.junit.Test;
+import recordprocessor.FieldConverter;
+import recordprocessor.SchemaRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SchemaRegistryTest {
+    private static Record record(SourceType sourceType, String objectName, Field... fields) {
+        // a new list of new fields, like the deserializer gives for every record
+        List<Field> copy = new ArrayList<>();
+        for (Field field : fields) {
+            copy.add(new Field(new String(field.getName()), field.getDataTypeNumber()));
+        }
+        return Record.newBuilder()
+                .setVersion(1).setId(1L).setSourceTimestamp(1L).setSourcePosition("0@0")
+                .setSource(new Source(sourceType, "5.7"))
+                .setOperation(Operation.INSERT)
+                .setObjectName(objectName)
+                .setTags(new HashMap<>())
+                .setFields(copy)
+                .setAfterImages(null)
+                .build();
+    }
+
+    @Test
+    public void testFingerprint() {
+        SchemaRegistry registry = new SchemaRegistry();
+        TableSchema schema = registry.lookup(record(SourceType.MySQL, "db.t1", new Field("id", 8), new Field("Aa", 253)));
+        assertSame(schema, registry.lookup(record(SourceType.MySQL, "db.t1", new Field("id", 8), new Field("Aa", 253))));
+        assertEquals(1, registry.getRebuildCount());
+        // same String.hashCode, still another column
+        TableSchema renamed = registry.lookup(record(SourceType.MySQL, "db.t1", new Field("id", 8), new Field("BB", 253)));
+        assertNotSame(schema, renamed);
+        assertEquals(1, renamed.indexOf("BB"));
+        TableSchema retyped = registry.lookup(record(SourceType.MySQL, "db.t1", new Field("id", 3), new Field("BB", 253)));
+        assertNotSame(renamed, retyped);
+        assertNotSame(retyped, registry.lookup(record(SourceType.MySQL, "db.t1", new Field("idB", 3), new Field("B", 253))));
+        assertEquals(4, registry.getRebuildCount());
+        assertEquals(1, registry.size());
+        assertNull(registry.lookup(Record.newBuilder(record(SourceType.MySQL, "db.t1")).setFields(null).build()));
+    }
+
+    @Test
+    public void testInvalidate() {
+        SchemaRegistry registry = new SchemaRegistry();
+        TableSchema t1 = registry.lookup(record(SourceType.MySQL, "db1.t1", new Field("id", 8)));
+        registry.lookup(record(SourceType.MySQL, "db1.t2", new Field("id", 8)));
+        registry.lookup(record(SourceType.MySQL, "db2.t1", new Field("id", 8)));
+        registry.invalidate("db1.t1");
+        assertEquals(2, registry.size());
+        assertNotSame(t1, registry.lookup(record(SourceType.MySQL, "db1.t1", new Field("id", 8))));
+        registry.lookup(record(SourceType.MySQL, "db10.t1", new Field("id", 8)));
+        registry.invalidate("db1");
+        assertEquals(2, registry.size());
+        // tables cached again after the database ddl are dropped by the next one
+        registry.lookup(record(SourceType.MySQL, "db1.t2", new Field("id", 8)));
+        registry.invalidate("db1");
+        assertEquals(2, registry.size());
+        registry.invalidate("db2.t1");
+        registry.invalidate("db10");
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testInternedFieldsAndConverters() {
+        SchemaRegistry registry = new SchemaRegistry();
+        Record record = record(SourceType.MySQL, "db.orders", new Field("id", 8), new Field("note", 253));
+        TableSchema orders = registry.lookup(record);
+        TableSchema users = registry.lookup(record(SourceType.MySQL, "db.users", new Field("id", 8)));
+        assertSame(orders.getFields().get(0).getName(), users.getFields().get(0).getName());
+        assertFalse(orders.getFields().get(0) == ((List<Field>) record.getFields()).get(0));
+
+        FieldConverter fieldConverter = FieldConverter.getConverter("mysql", null);
+        com.alibaba.dts.formats.avro.Integer id = new com.alibaba.dts.formats.avro.Integer(64, "42");
+        assertTrue(null != orders.getRowPlan());
+        assertEquals(fieldConverter.convert(orders.getFields().get(0), id).toString(), orders.getRowPlan().convert(0, id).toString());
+        // no converter for the source, schema is still usable
+        TableSchema other = registry.lookup(record(SourceType.MongoDB, "db.c1", new Field("id", 8)));
+        assertNull(other.getRowPlan());
+        assertEquals(Arrays.asList("id"), Arrays.asList(other.getFields().get(0).getName()));
+    }
+}
@@ -0,0 +1,43 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Avro encoded records of partition t1:0 for processor tests, id and source timestamp are the offset.
+ */
+public class TestRecords {
+    private TestRecords() {
+    }
+
+    public static Record.Builder builder(long offset, Operation operation, String objectName) {
+        return Record.newBuilder()
+                .setVersion(1).setId(offset).setSourceTimestamp(offset).setSourcePosition("0@0").setSourceTxid("tx")
+                .setSource(new Source(SourceType.MySQL, "5.7"))
+                .setOperation(operation)
+                .setObjectName(objectName)
+                .setTags(new HashMap<>());
+    }
+
+    public static ConsumerRecord<byte[], byte[]> consumerRecord(long offset, Operation operation, String objectName) throws IOException {
+        return consumerRecord(offset, builder(offset, operation, objectName).build());
+    }
+
+    public static ConsumerRecord<byte[], byte[]> consumerRecord(long offset, Record record) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        new SpecificDatumWriter<>(Record.class).write(record, encoder);
+        encoder.flush();
+        return new ConsumerRecord<>("t1", 0, offset, null, out.toByteArray());
+    }
+}
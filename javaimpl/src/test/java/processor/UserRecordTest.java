@@ -0,0 +1,93 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.DateTime;
+import com.alibaba.dts.formats.avro.Decimal;
+import com.alibaba.dts.formats.avro.Field;
+import com.alibaba.dts.formats.avro.Float;
+import com.alibaba.dts.formats.avro.Operation;
+import com.alibaba.dts.formats.avro.Record;
+import com.alibaba.dts.formats.avro.Source;
+import com.alibaba.dts.formats.avro.SourceType;
+import com.alibaba.dts.formats.avro.Timestamp;
+import com.alibaba.dts.formats.avro.TimestampWithTimeZone;
+import common.RowImage;
+import common.TableSchema;
+import common.UserRecord;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UserRecordTest {
+    private static final List<Field> FIELDS = Arrays.asList(new Field("id", 8), new Field("amount", 246), new Field("ratio", 5),
+            new Field("name", 253), new Field("created", 12), new Field("updated", 7), new Field("note", 253));
+
+    private static UserRecord userRecord(SourceType sourceType, List<Field> fields, List<Object> after) {
+        Record record = Record.newBuilder()
+                .setVersion(1).setId(1L).setSourceTimestamp(1L).setSourcePosition("0@0")
+                .setSource(new Source(sourceType, "5.7"))
+                .setOperation(Operation.INSERT)
+                .setObjectName("db.orders")
+                .setTags(new HashMap<>())
+                .setFields(fields)
+                .setAfterImages(after)
+                .build();
+        return new UserRecord(null, 0, record, null);
+    }
+
+    @Test
+    public void testTypedAccessors() {
+        UserRecord record = userRecord(SourceType.MySQL, FIELDS, Arrays.asList(
+                new com.alibaba.dts.formats.avro.Integer(64, "9007199254740993"),
+                new Decimal("12345.67", 10, 2),
+                new Float(0.25, 0, 0),
+                new com.alibaba.dts.formats.avro.Character("utf8mb4", ByteBuffer.wrap("订单".getBytes(UTF_8))),
+                new DateTime(2019, 6, 20, 10, 25, 22, 123456),
+                new Timestamp(1560977122L, 500),
+                null));
+        assertNull(record.getBeforeImage());
+        RowImage after = record.getAfterImage();
+        assertEquals(9007199254740993L, after.getLong("id"));
+        assertEquals(new BigDecimal("12345.67"), after.getBigDecimal("amount"));
+        assertEquals(12345.67, after.getDouble(1), 0);
+        assertEquals(0.25, after.getDouble("ratio"), 0);
+        assertEquals("订单", after.getString("name"));
+        assertArrayEquals("订单".getBytes(UTF_8), after.getBytes("name"));
+        assertEquals(1561026322123456L, after.getEpochMicros("created"));
+        assertEquals(1560977122000500L, after.getEpochMicros("updated"));
+        assertTrue(after.isNull("note"));
+        assertNull(after.getBigDecimal("note"));
+    }
+
+    @Test
+    public void testTimeZoneAndFraction() {
+        List<Field> fields = Arrays.asList(new Field("created", 181), new Field("updated", 180));
+        UserRecord record = userRecord(SourceType.Oracle, fields, Arrays.asList(
+                new TimestampWithTimeZone(new DateTime(2019, 6, 20, 18, 25, 22, null), "+08:00"),
+                new DateTime(2019, 6, 20, 10, 25, 22, 123456789)));
+        assertEquals(1561026322000000L, record.getAfterImage().getEpochMicros(0));
+        assertEquals(1561026322123456L, record.getAfterImage().getEpochMicros("updated"));
+    }
+
+    @Test
+    public void testSchemaCache() {
+        TableSchema first = userRecord(SourceType.MySQL, FIELDS, null).getTableSchema();
+        assertSame(first, userRecord(SourceType.MySQL, FIELDS, null).getTableSchema());
+        assertEquals(3, first.indexOf("name"));
+        assertEquals(-1, first.indexOf("absent"));
+        // ddl changed the columns
+        TableSchema altered = userRecord(SourceType.MySQL, FIELDS.subList(0, 2), null).getTableSchema();
+        assertEquals(2, altered.size());
+        assertSame(altered, userRecord(SourceType.MySQL, FIELDS.subList(0, 2), null).getTableSchema());
+    }
+}
@@ -0,0 +1,72 @@
+package processor;
+
+import com.alibaba.dts.formats.avro.Operation;
+import common.ThreadFactories;
+import common.WorkThread;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import recordprocessor.EtlRecordProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static common.Util.sleepMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static processor.TestRecords.consumerRecord;
+
+public class VirtualShardTest {
+    @Test
+    public void testBlockingListenerOnVirtualShards() throws Exception {
+        TopicPartition tp = new TopicPartition("t1", 0);
+        Properties properties = new Properties();
+        properties.setProperty("stream.processor.threads", "500");
+        properties.setProperty("stream.processor.threadMode", "virtual");
+        properties.setProperty("stream.commit.intervalMS", "10");
+        if (!ThreadFactories.isVirtualAvailable()) {
+            try {
+                new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> { }, null, properties);
+                fail("virtual mode should need JDK 21");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("jdk21"));
+            }
+            return;
+        }
+        EtlRecordProcessor processor = new EtlRecordProcessor((topicPartition, timestamp, offset, metadata) -> { }, null, properties);
+        Map<String, Long> lastOffsets = new ConcurrentHashMap<>();
+        AtomicBoolean outOfOrder = new AtomicBoolean(false);
+        AtomicBoolean platformThread = new AtomicBoolean(false);
+        // blocks like a sink writing to a remote store
+        processor.registerRecordListener("blocking", record -> {
+            if (!Thread.currentThread().getName().startsWith("record-shard-")) {
+                platformThread.set(true);
+            }
+            sleepMS(20);
+            Long last = lastOffsets.put(record.getRecord().getObjectName().toString(), record.getOffset());
+            if (null != last && last > record.getOffset()) {
+                outOfOrder.set(true);
+            }
+            record.commit("");
+        });
+        WorkThread processorThread = new WorkThread(processor);
+        processorThread.start();
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        for (long offset = 1; offset <= 2000; offset++) {
+            records.add(consumerRecord(offset, Operation.INSERT, "db.tb" + offset % 200));
+        }
+        assertTrue(processor.offer(1000, TimeUnit.MILLISECONDS, records));
+        assertEquals(2000, processor.drain(Collections.singletonList(tp), 30000).get(tp).getOffset());
+        assertFalse(platformThread.get());
+        assertFalse(outOfOrder.get());
+        processorThread.stop();
+    }
+}
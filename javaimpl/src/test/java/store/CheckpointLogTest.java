@@ -0,0 +1,79 @@
+package store;
+
+import common.Checkpoint;
+import common.CheckpointLog;
+import common.Util;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointLogTest {
+    @Test
+    public void testReplay() {
+        String fileName = "checkpointLog";
+        Util.deleteFile(fileName);
+        TopicPartition tp0 = new TopicPartition("t1", 0);
+        TopicPartition tp1 = new TopicPartition("t1", 1);
+        CheckpointLog checkpointLog = new CheckpointLog(fileName, 4096);
+        checkpointLog.append("aa", tp0, new Checkpoint(tp0, 100, 10, "100"));
+        int position = checkpointLog.position();
+        // a known key only takes a fixed width record
+        checkpointLog.append("aa", tp0, new Checkpoint(tp0, 101, 11, "101"));
+        assertEquals(32, checkpointLog.position() - position);
+        checkpointLog.append("aa", tp1, new Checkpoint(tp1, 102, 12, null));
+        checkpointLog.append("bb", tp0, new Checkpoint(tp0, 103, 13, "103|meta"));
+        checkpointLog.close();
+
+        CheckpointLog another = new CheckpointLog(fileName, 4096);
+        Checkpoint checkpoint = another.getCheckpoints().get("aa").get(tp0);
+        assertTrue(checkpoint.getOffset() == 11 && checkpoint.getTimeStamp() == 101 && "101".equals(checkpoint.getInfo()));
+        assertNull(another.getCheckpoints().get("aa").get(tp1).getInfo());
+        assertEquals("103|meta", another.getCheckpoints().get("bb").get(tp0).getInfo());
+        another.close();
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testCompact() {
+        String fileName = "checkpointLogCompact";
+        Util.deleteFile(fileName);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointLog checkpointLog = new CheckpointLog(fileName, 4096);
+        for (int i = 0; i < 1000; i++) {
+            checkpointLog.append("aa", tp, new Checkpoint(tp, i, i, String.valueOf(i)));
+        }
+        assertTrue(checkpointLog.getCompactCount() > 0);
+        checkpointLog.close();
+        assertEquals(999, new CheckpointLog(fileName, 4096).getCheckpoints().get("aa").get(tp).getOffset());
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testTornAppend() throws Exception {
+        String fileName = "checkpointLogTorn";
+        Util.deleteFile(fileName);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        CheckpointLog checkpointLog = new CheckpointLog(fileName, 4096);
+        checkpointLog.append("aa", tp, new Checkpoint(tp, 1, 1, "1"));
+        int position = checkpointLog.position();
+        checkpointLog.append("aa", tp, new Checkpoint(tp, 2, 2, "2"));
+        checkpointLog.close();
+        // break the offset of the last record
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.seek(position + 8);
+            file.writeLong(3);
+        }
+
+        checkpointLog = new CheckpointLog(fileName, 4096);
+        assertEquals(1, checkpointLog.getCheckpoints().get("aa").get(tp).getOffset());
+        checkpointLog.append("aa", tp, new Checkpoint(tp, 4, 4, "4"));
+        checkpointLog.close();
+        assertEquals(4, new CheckpointLog(fileName, 4096).getCheckpoints().get("aa").get(tp).getOffset());
+        Util.deleteFile(fileName);
+    }
+}
@@ -3,10 +3,17 @@ package store;
 import metastore.LocalFileMetaStore;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
+import common.AtomicFileStore;
 import common.Checkpoint;
 import common.Util;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
 
 public class LocalFileMetaStoreTest {
     @Test
@@ -38,4 +45,60 @@ public class LocalFileMetaStoreTest {
         assertTrue(null != ccCheckpoint && ccCheckpoint.getOffset() == 44 && ccCheckpoint.getTimeStamp() == 44);
         Util.deleteFile(fileName);
     }
+
+    @Test
+    public void testStoreCheckpointsOfPartitions() {
+        String fileName = "fileStoreBatch";
+        Util.deleteFile(fileName);
+        LocalFileMetaStore localFileStore = new LocalFileMetaStore(fileName);
+        localFileStore.serializeTo(new TopicPartition("t1", 0), "aa", new Checkpoint(new TopicPartition("t1", 0), 11, 11, ""));
+        Map<TopicPartition, Checkpoint> checkpoints = new HashMap<>();
+        checkpoints.put(new TopicPartition("t1", 1), new Checkpoint(new TopicPartition("t1", 1), 22, 22, ""));
+        checkpoints.put(new TopicPartition("t2", 0), new Checkpoint(new TopicPartition("t2", 0), 33, 33, ""));
+        localFileStore.serializeTo(checkpoints, "aa");
+
+        LocalFileMetaStore anotherStore = new LocalFileMetaStore(fileName);
+        assertEquals(11, anotherStore.deserializeFrom(new TopicPartition("t1", 0), "aa").getOffset());
+        assertEquals(22, anotherStore.deserializeFrom(new TopicPartition("t1", 1), "aa").getOffset());
+        assertEquals(33, anotherStore.deserializeFrom(new TopicPartition("t2", 0), "aa").getOffset());
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testAsyncWrite() throws Exception {
+        String fileName = "fileStoreAsync";
+        Util.deleteFile(fileName);
+        LocalFileMetaStore localFileStore = new LocalFileMetaStore(fileName, true);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        for (int i = 1; i <= 100; i++) {
+            localFileStore.serializeTo(Collections.singletonMap(tp, new Checkpoint(tp, i, i, "")), "aa");
+        }
+        // written checkpoint is the latest one
+        localFileStore.serializeTo(Collections.singletonMap(tp, new Checkpoint(tp, 101, 101, "")), "aa").get();
+        assertEquals(101, new LocalFileMetaStore(fileName).deserializeFrom(tp, "aa").getOffset());
+
+        // checkpoint stored before close is written by close
+        localFileStore.serializeTo(Collections.singletonMap(tp, new Checkpoint(tp, 102, 102, "")), "aa");
+        localFileStore.close();
+        assertEquals(102, new LocalFileMetaStore(fileName).deserializeFrom(tp, "aa").getOffset());
+        assertNull(new LocalFileMetaStore(fileName).deserializeFrom(tp, "bb"));
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testImportJsonFile() {
+        String fileName = "fileStoreJson";
+        Util.deleteFile(fileName);
+        Util.deleteFile(fileName + ".json.bak");
+        new AtomicFileStore(fileName).updateContent(Collections.singletonList(
+                "{\"groupID\":\"aa\",\"streamCheckpoint\":[{\"topic\":\"t1\",\"partition\":0,\"offset\":11,\"timestamp\":12,\"info\":\"12\"}]}"));
+        LocalFileMetaStore localFileStore = new LocalFileMetaStore(fileName);
+        Checkpoint checkpoint = localFileStore.deserializeFrom(new TopicPartition("t1", 0), "aa");
+        assertTrue(null != checkpoint && checkpoint.getOffset() == 11 && checkpoint.getTimeStamp() == 12);
+        assertTrue(Util.checkFileExists(fileName + ".json.bak"));
+        localFileStore.close();
+        assertEquals(11, new LocalFileMetaStore(fileName).deserializeFrom(new TopicPartition("t1", 0), "aa").getOffset());
+        Util.deleteFile(fileName);
+        Util.deleteFile(fileName + ".json.bak");
+    }
 }
@@ -0,0 +1,123 @@
+package store;
+
+import common.Checkpoint;
+import common.Util;
+import metastore.MappedMetaStore;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedMetaStoreTest {
+    @Test
+    public void testMappedStore() {
+        String fileName = "mappedStore";
+        Util.deleteFile(fileName);
+        MappedMetaStore store = new MappedMetaStore(fileName);
+        TopicPartition t1 = new TopicPartition("t1", 0);
+        assertNull(store.deserializeFrom(t1, "aa"));
+        store.serializeTo(t1, "aa", new Checkpoint(t1, 11, 11, "11"));
+        store.serializeTo(t1, "aa", new Checkpoint(t1, 33, 33, "file:33"));
+        Map<TopicPartition, Checkpoint> checkpoints = new HashMap<>();
+        checkpoints.put(new TopicPartition("t2", 0), new Checkpoint(new TopicPartition("t2", 0), 22, 22, "22"));
+        checkpoints.put(new TopicPartition("t2", 1), new Checkpoint(new TopicPartition("t2", 1), 44, 44, null));
+        store.serializeTo(checkpoints, null);
+        store.close();
+
+        MappedMetaStore anotherStore = new MappedMetaStore(fileName);
+        assertNull(anotherStore.deserializeFrom(t1, "xxx"));
+        Checkpoint checkpoint = anotherStore.deserializeFrom(t1, "aa");
+        assertTrue(checkpoint.getOffset() == 33 && checkpoint.getTimeStamp() == 33 && "file:33".equals(checkpoint.getInfo()));
+        checkpoint = anotherStore.deserializeFrom(new TopicPartition("t2", 0), "");
+        assertTrue(checkpoint.getOffset() == 22 && "22".equals(checkpoint.getInfo()));
+        checkpoint = anotherStore.deserializeFrom(new TopicPartition("t2", 1), null);
+        assertTrue(checkpoint.getOffset() == 44 && null == checkpoint.getInfo());
+        anotherStore.close();
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testTornWriteKeepsLastCheckpoint() throws Exception {
+        String fileName = "mappedStoreTorn";
+        Util.deleteFile(fileName);
+        MappedMetaStore store = new MappedMetaStore(fileName, 4, true);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        store.serializeTo(tp, "aa", new Checkpoint(tp, 1, 1, "1"));
+        store.serializeTo(tp, "aa", new Checkpoint(tp, 2, 2, "2"));
+        store.close();
+
+        // break the offset of the latest copy: header(64) + key(128), copy of sequence 2 is the first one
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.seek(64 + 128 + 8);
+            file.writeLong(999);
+        }
+        MappedMetaStore anotherStore = new MappedMetaStore(fileName, 4, true);
+        assertEquals(1, anotherStore.deserializeFrom(tp, "aa").getOffset());
+        // the broken copy is overwritten by the next store
+        anotherStore.serializeTo(tp, "aa", new Checkpoint(tp, 3, 3, "3"));
+        anotherStore.close();
+        assertEquals(3, new MappedMetaStore(fileName, 4, true).deserializeFrom(tp, "aa").getOffset());
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testCorruptInfoRejected() throws Exception {
+        String fileName = "mappedStoreInfo";
+        Util.deleteFile(fileName);
+        MappedMetaStore store = new MappedMetaStore(fileName, 4, true);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        store.serializeTo(tp, "aa", new Checkpoint(tp, 1, 1, "info1"));
+        store.serializeTo(tp, "aa", new Checkpoint(tp, 2, 2, "info2"));
+        store.close();
+
+        // break the first info byte of the latest copy: header(64) + key(128) + info at 32
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.seek(64 + 128 + 32);
+            file.writeByte('X');
+        }
+        MappedMetaStore anotherStore = new MappedMetaStore(fileName, 4, true);
+        Checkpoint checkpoint = anotherStore.deserializeFrom(tp, "aa");
+        assertTrue(checkpoint.getOffset() == 1 && "info1".equals(checkpoint.getInfo()));
+        anotherStore.close();
+        Util.deleteFile(fileName);
+    }
+
+    @Test
+    public void testLongInfoTruncated() {
+        String fileName = "mappedStoreLongInfo";
+        Util.deleteFile(fileName);
+        MappedMetaStore store = new MappedMetaStore(fileName, 4, true);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        // 31 ascii bytes and a 3 byte character, cut before the character
+        String info = "0123456789012345678901234567890\u4e2d";
+        store.serializeTo(tp, "aa", new Checkpoint(tp, 5, 5, info));
+        assertEquals(info, store.deserializeFrom(tp, "aa").getInfo());
+        store.close();
+
+        MappedMetaStore anotherStore = new MappedMetaStore(fileName, 4, true);
+        Checkpoint checkpoint = anotherStore.deserializeFrom(tp, "aa");
+        assertTrue(checkpoint.getOffset() == 5 && info.substring(0, 31).equals(checkpoint.getInfo()));
+        anotherStore.close();
+        Util.deleteFile(fileName);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSlotsUsedUp() {
+        String fileName = "mappedStoreFull";
+        Util.deleteFile(fileName);
+        MappedMetaStore store = new MappedMetaStore(fileName, 1, false);
+        try {
+            store.serializeTo(new TopicPartition("t1", 0), "aa", new Checkpoint(new TopicPartition("t1", 0), 1, 1, "1"));
+            store.serializeTo(new TopicPartition("t1", 1), "aa", new Checkpoint(new TopicPartition("t1", 1), 1, 1, "1"));
+        } finally {
+            store.close();
+            Util.deleteFile(fileName);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package store;
+
+import common.Checkpoint;
+import metastore.MetaStore;
+import metastore.MetaStoreCenter;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.apache.kafka.common.metrics.Metrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MetaStoreCenterTest {
+    // keeps the checkpoint of every partition, fails when told to
+    private static class MemoryStore implements MetaStore<Checkpoint> {
+        final Map<TopicPartition, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+        volatile boolean fail = false;
+
+        @Override
+        public Future<Checkpoint> serializeTo(TopicPartition topicPartition, String group, Checkpoint value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KafkaFuture<Void> serializeTo(Map<TopicPartition, Checkpoint> values, String group) {
+            KafkaFutureImpl<Void> ret = new KafkaFutureImpl<>();
+            if (fail) {
+                ret.completeExceptionally(new RuntimeException("MemoryStore: failed"));
+            } else {
+                checkpoints.putAll(values);
+                ret.complete(null);
+            }
+            return ret;
+        }
+
+        @Override
+        public Checkpoint deserializeFrom(TopicPartition topicPartition, String group) {
+            return checkpoints.get(topicPartition);
+        }
+    }
+
+    @Test
+    public void testParallelCommits() throws Exception {
+        MetaStoreCenter center = new MetaStoreCenter(new Metrics(), 4);
+        MemoryStore store = new MemoryStore();
+        center.registerStore("memory", store);
+        List<Thread> threads = new ArrayList<>();
+        // every thread commits its own partition, partitions share stripes
+        for (int t = 0; t < 8; t++) {
+            TopicPartition tp = new TopicPartition("t1", t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    center.store(Collections.singletonMap(tp, new Checkpoint(tp, i, i, "")), "aa");
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int t = 0; t < 8; t++) {
+            assertEquals(999, center.seek("memory", new TopicPartition("t1", t), "aa").getOffset());
+        }
+        assertEquals(8000, center.getStoreStats().get("memory").getCommitCount());
+    }
+
+    @Test
+    public void testFailedStore() throws Exception {
+        MetaStoreCenter center = new MetaStoreCenter(new Metrics(), 4);
+        MemoryStore good = new MemoryStore();
+        MemoryStore bad = new MemoryStore();
+        bad.fail = true;
+        center.registerStore("good", good);
+        center.registerStore("bad", bad);
+        TopicPartition tp = new TopicPartition("t1", 0);
+        try {
+            center.store(Collections.singletonMap(tp, new Checkpoint(tp, 1, 1, "")), "aa").get();
+            fail("combined future should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("MemoryStore"));
+        }
+        assertEquals(1, good.deserializeFrom(tp, "aa").getOffset());
+        assertEquals(1, center.getStoreStats().get("bad").getFailedCount());
+        assertEquals(0, center.getStoreStats().get("good").getFailedCount());
+
+        // a store registered again keeps the stats of the name
+        center.registerStore("bad", new MemoryStore());
+        center.store(Collections.singletonMap(tp, new Checkpoint(tp, 2, 2, "")), "aa").get();
+        assertEquals(2, center.getStoreStats().get("bad").getCommitCount());
+        assertEquals(1, center.getStoreStats().get("bad").getFailedCount());
+    }
+}